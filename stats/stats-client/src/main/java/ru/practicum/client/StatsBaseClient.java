@@ -3,10 +3,16 @@ package ru.practicum.client;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.HitBatchResultDto;
+import ru.practicum.dto.HitCodec;
 import ru.practicum.dto.StatsViewDto;
 
 import java.util.Collections;
@@ -18,7 +24,8 @@ import static java.util.Objects.isNull;
 /**
  * Класс StatsStatsBaseClient представляет собой клиент для работы со статистическими данными.
  * Он содержит следующие поля: restTemplate (шаблон для отправки HTTP-запросов), serverUrl (URL сервера статистики),
- * formatter (формат даты и времени).
+ * formatter (формат даты и времени), binaryHits (отправлять ли события в двоичном формате HitCodec;
+ * свойство stats-server.binary-hits, по умолчанию true).
  * Класс используется для получения статистических данных с сервера статистики.
  */
 @Service
@@ -27,6 +34,8 @@ public class StatsBaseClient {
     final RestTemplate restTemplate = new RestTemplate();
     @Value("${stats-server.url}")
     private String statsServerUrl;
+    @Value("${stats-server.binary-hits:true}")
+    private volatile boolean binaryHits;
 
     /**
      * Этот метод отправляет запрос к эндпоинту для записи информации о запросе.
@@ -34,10 +43,30 @@ public class StatsBaseClient {
      * Метод использует RestTemplate для отправки POST-запроса к указанной конечной точке.
      */
     public void postHit(EndpointHitDto hit) {
+        if (binaryHits && postBinary("/hit", List.of(hit), String.class) != null) {
+            return;
+        }
         HttpEntity<EndpointHitDto> requestEntity = new HttpEntity<>(hit);
         restTemplate.exchange(statsServerUrl + "/hit", HttpMethod.POST, requestEntity, String.class).getBody();
     }
 
+    /**
+     * Этот метод отправляет пакет запросов к эндпоинту пакетной записи одним HTTP-запросом.
+     * Он принимает список объектов типа EndpointHitDto и возвращает количество сохранённых записей
+     * вместе с описанием записей, которые сервер статистики отклонил.
+     */
+    public HitBatchResultDto postHits(List<EndpointHitDto> hits) {
+        if (binaryHits) {
+            ResponseEntity<HitBatchResultDto> response = postBinary("/hit/batch", hits, HitBatchResultDto.class);
+            if (response != null) {
+                return response.getBody();
+            }
+        }
+        HttpEntity<List<EndpointHitDto>> requestEntity = new HttpEntity<>(hits);
+        return restTemplate.exchange(statsServerUrl + "/hit/batch", HttpMethod.POST, requestEntity,
+                HitBatchResultDto.class).getBody();
+    }
+
     /**
      * Этот метод используется для получения статистических данных за определённый период времени по указанным URI.
      * Он принимает параметры start и end типа String, которые задают временной диапазон для выборки данных,
@@ -57,4 +86,20 @@ public class StatsBaseClient {
                 "&uris={uris}&unique={unique}", StatsViewDto[].class, parameters);
         return isNull(result) ? Collections.emptyList() : List.of(result);
     }
+
+    /**
+     * Этот метод отправляет события в двоичном формате HitCodec. Если сервер статистики не поддерживает этот
+     * формат (ответ 415), клиент переходит на JSON и возвращает null, чтобы вызывающий метод повторил запрос.
+     */
+    private <T> ResponseEntity<T> postBinary(String path, List<EndpointHitDto> hits, Class<T> responseType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(HitCodec.MEDIA_TYPE));
+        try {
+            return restTemplate.exchange(statsServerUrl + path, HttpMethod.POST,
+                    new HttpEntity<>(HitCodec.encode(hits), headers), responseType);
+        } catch (HttpClientErrorException.UnsupportedMediaType e) {
+            binaryHits = false;
+            return null;
+        }
+    }
 }
@@ -0,0 +1,21 @@
+package ru.practicum.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Класс представляет собой DTO (Data Transfer Object) с описанием записи пакета, которую не удалось сохранить.
+ * Он содержит следующие поля:
+ * - index (порядковый номер записи в пакете, начиная с нуля).
+ * - reason (причина, по которой запись была отклонена).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class HitBatchErrorDto {
+    private Integer index;
+    private String reason;
+}
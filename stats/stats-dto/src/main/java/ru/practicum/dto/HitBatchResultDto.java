@@ -0,0 +1,26 @@
+package ru.practicum.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Класс представляет собой DTO (Data Transfer Object) с результатом пакетного сохранения запросов.
+ * Он содержит следующие поля:
+ * - saved (количество сохранённых записей).
+ * - failed (список записей, которые не удалось сохранить, с указанием причины).
+ * - suppressed (номера записей, отброшенных как повторы ранее записанных событий).
+ * Каждая запись пакета учтена ровно в одном из полей.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class HitBatchResultDto {
+    private Integer saved;
+    private List<HitBatchErrorDto> failed;
+    private List<Integer> suppressed;
+}
@@ -0,0 +1,194 @@
+package ru.practicum.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Компактное двоичное представление списка EndpointHitDto для /hit и /hit/batch (тип содержимого MEDIA_TYPE).
+ * Формат: байт версии, количество событий (varint), затем для каждого события строки app, uri и ip и время.
+ * Строка записывается длиной в байтах UTF-8, увеличенной на единицу (varint; 0 означает null), и самими байтами.
+ * Время записывается количеством миллисекунд от 1970-01-01T00:00 без учёта часового пояса (LocalDateTime
+ * переводится в число как время UTC и обратно), в zigzag-кодировке, увеличенным на единицу (0 означает null).
+ * Поле id не передаётся. При разборе одинаковые подряд значения поля возвращаются одним объектом строки.
+ */
+public final class HitCodec {
+    public static final String MEDIA_TYPE = "application/x-ewm-hits";
+    private static final byte VERSION = 1;
+
+    private HitCodec() {
+    }
+
+    /**
+     * Метод кодирует список событий.
+     *
+     * @param hits события; элементы не должны быть null.
+     */
+    public static byte[] encode(List<EndpointHitDto> hits) {
+        Writer writer = new Writer(16 + hits.size() * 48);
+        writer.write(VERSION);
+        writer.writeVarLong(hits.size());
+        for (EndpointHitDto hit : hits) {
+            writer.writeString(hit.getApp());
+            writer.writeString(hit.getUri());
+            writer.writeString(hit.getIp());
+            LocalDateTime timestamp = hit.getTimestamp();
+            writer.writeVarLong(timestamp == null ? 0
+                    : zigzag(timestamp.toInstant(ZoneOffset.UTC).toEpochMilli()) + 1);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Метод разбирает список событий.
+     *
+     * @param data события в формате encode.
+     * @throws IllegalArgumentException если данные не соответствуют формату.
+     */
+    public static List<EndpointHitDto> decode(byte[] data) {
+        Reader reader = new Reader(data);
+        if (reader.readByte() != VERSION) {
+            throw new IllegalArgumentException("Неизвестная версия формата событий");
+        }
+        long count = reader.readVarLong();
+        if (count < 0 || count > data.length) {
+            throw new IllegalArgumentException("Неверное количество событий " + count);
+        }
+        List<EndpointHitDto> hits = new ArrayList<>((int) count);
+        Field app = new Field();
+        Field uri = new Field();
+        Field ip = new Field();
+        for (long i = 0; i < count; i++) {
+            String appValue = reader.readString(app);
+            String uriValue = reader.readString(uri);
+            String ipValue = reader.readString(ip);
+            long time = reader.readVarLong();
+            LocalDateTime timestamp = null;
+            if (time != 0) {
+                long millis = unzigzag(time - 1);
+                timestamp = LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                        (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+            }
+            hits.add(new EndpointHitDto(null, appValue, uriValue, ipValue, timestamp));
+        }
+        if (reader.position != data.length) {
+            throw new IllegalArgumentException("Лишние данные после последнего события");
+        }
+        return hits;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+        private byte[] data;
+        private int size;
+
+        private Writer(int capacity) {
+            data = new byte[capacity];
+        }
+
+        private void write(int b) {
+            ensureCapacity(1);
+            data[size++] = (byte) b;
+        }
+
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                data[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                write(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, data, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * Предыдущее значение поля и его положение в данных.
+     */
+    private static final class Field {
+        private String value;
+        private int from;
+        private int to;
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        private Reader(byte[] data) {
+            this.data = data;
+        }
+
+        private byte readByte() {
+            if (position >= data.length) {
+                throw new IllegalArgumentException("Неожиданный конец данных");
+            }
+            return data[position++];
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Слишком длинное число");
+        }
+
+        /**
+         * Метод читает строку поля; если её байты совпадают с байтами предыдущего значения поля, возвращается
+         * предыдущий объект строки.
+         */
+        private String readString(Field field) {
+            long length = readVarLong() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > data.length - position) {
+                throw new IllegalArgumentException("Неожиданный конец данных");
+            }
+            int from = position;
+            position += (int) length;
+            if (field.value == null || !Arrays.equals(data, from, position, data, field.from, field.to)) {
+                field.value = new String(data, from, (int) length, StandardCharsets.UTF_8);
+            }
+            field.from = from;
+            field.to = position;
+            return field.value;
+        }
+    }
+}
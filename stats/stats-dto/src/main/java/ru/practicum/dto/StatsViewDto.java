@@ -3,6 +3,7 @@ package ru.practicum.dto;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 /**
  * Класс представляет собой DTO (Data Transfer Object) для хранения статистических данных.
@@ -14,6 +15,7 @@ import lombok.Data;
 
 @Data
 @AllArgsConstructor
+@NoArgsConstructor
 @Builder
 public class StatsViewDto {
     private String app;
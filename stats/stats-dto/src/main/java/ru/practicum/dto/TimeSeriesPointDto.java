@@ -0,0 +1,21 @@
+package ru.practicum.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Класс представляет собой DTO (Data Transfer Object) для хранения одного интервала временного ряда статистики.
+ * Он содержит следующие поля:
+ * - bucket (начало интервала в формате yyyy-MM-dd HH:mm:ss).
+ * - hits (количество обращений за интервал).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TimeSeriesPointDto {
+    private String bucket;
+    private Long hits;
+}
@@ -0,0 +1,111 @@
+package ru.practicum.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Проверка двоичного формата событий HitCodec: кодирование и разбор без потерь и отказ на повреждённых данных.
+ */
+class HitCodecTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 6, 1, 12, 30, 15, 123_000_000);
+
+    @Test
+    void hitsSurviveRoundTrip() {
+        List<EndpointHitDto> hits = List.of(
+                hit("ewm-main-service", "/events/1", "192.168.0.1", TIME),
+                hit("ewm-main-service", "/события/2?q=a&b=+", "2001:db8::1", TIME.plusDays(1)),
+                hit("x", "", "10.0.0.1", LocalDateTime.of(2262, 4, 11, 23, 47, 16)));
+
+        assertEquals(hits, HitCodec.decode(HitCodec.encode(hits)));
+    }
+
+    @Test
+    void emptyListSurvivesRoundTrip() {
+        assertEquals(List.of(), HitCodec.decode(HitCodec.encode(List.of())));
+    }
+
+    @Test
+    void nullFieldsSurviveRoundTripAndIdIsNotSent() {
+        EndpointHitDto withId = new EndpointHitDto(42L, "ewm-main-service", "/events", "10.0.0.1", TIME);
+        List<EndpointHitDto> hits = List.of(hit(null, null, null, null), withId, hit("app", null, "10.0.0.2", null));
+
+        List<EndpointHitDto> decoded = HitCodec.decode(HitCodec.encode(hits));
+
+        assertEquals(List.of(hit(null, null, null, null), hit("ewm-main-service", "/events", "10.0.0.1", TIME),
+                hit("app", null, "10.0.0.2", null)), decoded);
+        assertNull(decoded.get(1).getId());
+    }
+
+    @Test
+    void timesBeforeEpochSurviveRoundTrip() {
+        List<EndpointHitDto> hits = List.of(
+                hit("a", "/", "1.1.1.1", LocalDateTime.of(1970, 1, 1, 0, 0)),
+                hit("a", "/", "1.1.1.1", LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_000_000)),
+                hit("a", "/", "1.1.1.1", LocalDateTime.of(1969, 12, 31, 23, 59, 59, 1_000_000)),
+                hit("a", "/", "1.1.1.1", LocalDateTime.of(1900, 2, 28, 13, 0, 0, 500_000_000)),
+                hit("a", "/", "1.1.1.1", LocalDateTime.of(1, 1, 1, 0, 0)));
+
+        assertEquals(hits, HitCodec.decode(HitCodec.encode(hits)));
+    }
+
+    @Test
+    void repeatedValuesAreDecodedAsOneString() {
+        List<EndpointHitDto> hits = List.of(
+                hit("ewm-main-service", "/events/1", "10.0.0.1", TIME),
+                hit("ewm-main-service", "/events/1", "10.0.0.2", TIME),
+                hit("ewm-main-service", "/events/2", "10.0.0.2", TIME),
+                hit("ewm-main-service", null, "10.0.0.2", TIME),
+                hit("ewm-main-service", "/events/2", "10.0.0.2", TIME));
+
+        List<EndpointHitDto> decoded = HitCodec.decode(HitCodec.encode(hits));
+
+        assertEquals(hits, decoded);
+        assertSame(decoded.get(0).getApp(), decoded.get(4).getApp());
+        assertSame(decoded.get(0).getUri(), decoded.get(1).getUri());
+        assertNotSame(decoded.get(1).getUri(), decoded.get(2).getUri());
+        assertSame(decoded.get(1).getIp(), decoded.get(2).getIp());
+        assertSame(decoded.get(2).getUri(), decoded.get(4).getUri());
+    }
+
+    @Test
+    void truncatedDataIsRejected() {
+        byte[] data = HitCodec.encode(List.of(hit("ewm-main-service", "/events/1", "192.168.0.1", TIME),
+                hit("ewm-main-service", "/events/2", "192.168.0.2", null)));
+
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IllegalArgumentException.class, () -> HitCodec.decode(truncated), "Длина " + length);
+        }
+    }
+
+    @Test
+    void trailingBytesAreRejected() {
+        byte[] data = HitCodec.encode(List.of(hit("ewm-main-service", "/events/1", "192.168.0.1", TIME)));
+        byte[] extended = Arrays.copyOf(data, data.length + 1);
+
+        assertThrows(IllegalArgumentException.class, () -> HitCodec.decode(extended));
+    }
+
+    @Test
+    void unknownVersionAndImpossibleCountAreRejected() {
+        byte[] data = HitCodec.encode(List.of(hit("a", "/", "1.1.1.1", TIME)));
+        byte[] version = data.clone();
+        version[0] = 2;
+
+        assertThrows(IllegalArgumentException.class, () -> HitCodec.decode(version));
+        assertThrows(IllegalArgumentException.class, () -> HitCodec.decode(new byte[]{1, 100}));
+    }
+
+    private static EndpointHitDto hit(String app, String uri, String ip, LocalDateTime timestamp) {
+        return new EndpointHitDto(null, app, uri, ip, timestamp);
+    }
+}
@@ -0,0 +1,150 @@
+package ru.practicum.column;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.segment.HitAggregator;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение подсчёта статистики запросом к таблице statistics и чтением колоночных сегментов в памяти.
+ * Данные читаются из базы данных bench.url (по умолчанию локальный PostgreSQL), диапазон запроса — средние
+ * 80% времени событий, чтобы каждый сегмент проверялся по времени построчно.
+ * Запуск:
+ * mvn -P bench,vector -pl stats/stats-server -am compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp stats/stats-server/target/classes:$(cat stats/stats-server/target/cp.txt) org.openjdk.jmh.Main
+ * ColumnScanBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ColumnScanBenchmark {
+    private static final String SQL = "SELECT app_id, uri_id, %s AS hits FROM statistics " +
+            "WHERE \"creation date\" BETWEEN ? AND ? GROUP BY app_id, uri_id";
+
+    @Param({"false", "true"})
+    private boolean unique;
+    @Param("65536")
+    private int segmentSize;
+
+    private Connection connection;
+    private final List<ColumnSegment> segments = new ArrayList<>();
+    private int[] groups;
+    private long from;
+    private long to;
+    private ForkJoinPool pool;
+    private RangeScan vectorScan;
+
+    @Setup
+    public void setup() throws Exception {
+        connection = DriverManager.getConnection(System.getProperty("bench.url", "jdbc:postgresql://localhost:5432/postgres"),
+                System.getProperty("bench.user", "postgres"), System.getProperty("bench.password", "postgres"));
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        int maxUriId = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT app_id, uri_id, host(ip) AS ip, \"creation date\" " +
+                     "FROM statistics")) {
+            ColumnSegment segment = null;
+            while (rs.next()) {
+                long second = rs.getTimestamp("creation date").toLocalDateTime().toEpochSecond(ZoneOffset.UTC);
+                if (segment == null || segment.isFull()) {
+                    segment = new ColumnSegment(segmentSize);
+                    segments.add(segment);
+                }
+                segment.append(second, rs.getInt("app_id"), rs.getInt("uri_id"), ip(rs.getString("ip")));
+                min = Math.min(min, second);
+                max = Math.max(max, second);
+                maxUriId = Math.max(maxUriId, rs.getInt("uri_id"));
+            }
+        }
+        if (segments.isEmpty()) {
+            throw new IllegalStateException("Таблица statistics пуста");
+        }
+        groups = new int[maxUriId + 1];
+        Arrays.setAll(groups, id -> id);
+        from = min + (max - min) / 10;
+        to = max - (max - min) / 10;
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        vectorScan = ColumnScan.loadVectorScan();
+        if (vectorScan == null) {
+            throw new IllegalStateException("Векторное чтение недоступно, соберите бенчмарк с профилем vector");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long sql() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(String.format(SQL,
+                unique ? "COUNT(DISTINCT ip)" : "COUNT(*)"))) {
+            statement.setTimestamp(1, Timestamp.valueOf(LocalDateTime.ofEpochSecond(from, 0, ZoneOffset.UTC)));
+            statement.setTimestamp(2, Timestamp.valueOf(LocalDateTime.ofEpochSecond(to - 1, 0, ZoneOffset.UTC)));
+            long hits = 0;
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    hits += rs.getLong("hits");
+                }
+            }
+            return hits;
+        }
+    }
+
+    @Benchmark
+    public HitAggregator scalar() {
+        return ColumnScan.scan(segments, from, to, groups, unique, null, null);
+    }
+
+    @Benchmark
+    public HitAggregator vector() {
+        return ColumnScan.scan(segments, from, to, groups, unique, vectorScan, null);
+    }
+
+    @Benchmark
+    public HitAggregator parallel() {
+        return ColumnScan.scan(segments, from, to, groups, unique, null, pool);
+    }
+
+    @Benchmark
+    public HitAggregator parallelVector() {
+        return ColumnScan.scan(segments, from, to, groups, unique, vectorScan, pool);
+    }
+
+    private static long ip(String ip) throws Exception {
+        byte[] address = InetAddress.getByName(ip).getAddress();
+        ByteBuffer buffer = ByteBuffer.wrap(address);
+        return address.length == 4 ? buffer.getInt() & 0xffffffffL : buffer.getLong() ^ buffer.getLong();
+    }
+}
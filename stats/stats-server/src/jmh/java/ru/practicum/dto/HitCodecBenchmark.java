@@ -0,0 +1,87 @@
+package ru.practicum.dto;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение кодирования и разбора пачки событий в JSON (как в /hit/batch) и в формате HitCodec.
+ * События похожи на поток ewm-main-service: одно приложение, несколько сотен URI, время по возрастанию.
+ * Размеры пачки в байтах выводятся при подготовке данных.
+ * Запуск:
+ * mvn -P bench -pl stats/stats-server -am compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp stats/stats-server/target/classes:$(cat stats/stats-server/target/cp.txt) org.openjdk.jmh.Main
+ * HitCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitCodecBenchmark {
+    private static final TypeReference<List<EndpointHitDto>> LIST = new TypeReference<>() {
+    };
+
+    @Param("1000")
+    private int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private List<EndpointHitDto> hits;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        Random random = new Random(42);
+        LocalDateTime time = LocalDateTime.of(2024, 6, 1, 12, 0);
+        hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            time = time.plusSeconds(random.nextInt(3));
+            hits.add(new EndpointHitDto(null, "ewm-main-service", "/events/" + random.nextInt(500),
+                    "192.168." + random.nextInt(256) + "." + random.nextInt(256), time));
+        }
+        json = objectMapper.writeValueAsBytes(hits);
+        binary = HitCodec.encode(hits);
+        System.out.printf("%nJSON: %d байт, HitCodec: %d байт%n", json.length, binary.length);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(hits);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return HitCodec.encode(hits);
+    }
+
+    @Benchmark
+    public List<EndpointHitDto> decodeJson() throws IOException {
+        return objectMapper.readValue(json, LIST);
+    }
+
+    @Benchmark
+    public List<EndpointHitDto> decodeBinary() {
+        return HitCodec.decode(binary);
+    }
+}
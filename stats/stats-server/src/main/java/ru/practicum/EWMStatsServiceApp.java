@@ -2,11 +2,13 @@ package ru.practicum;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Класс представляет собой приложение, которое запускает Spring Boot.
  */
 @SpringBootApplication
+@EnableScheduling
 public class EWMStatsServiceApp {
     public static void main(String[] args) {
         SpringApplication.run(EWMStatsServiceApp.class, args);
@@ -0,0 +1,90 @@
+package ru.practicum.column;
+
+import ru.practicum.segment.HitAggregator;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Чтение набора сегментов в памяти. Если задан пул ForkJoinPool, сегменты делятся пополам до одного сегмента
+ * на задачу, каждая задача считает обращения в собственный HitAggregator, а результаты объединяются при
+ * возврате из задач.
+ */
+final class ColumnScan {
+    private ColumnScan() {
+    }
+
+    /**
+     * Метод считает обращения по сегментам за полуоткрытый диапазон [from, to) секунд.
+     *
+     * @param groups номер группы для каждого ключа URI или -1, если URI не учитывается.
+     * @param pool   пул для параллельного чтения или null для чтения в текущем потоке.
+     */
+    static HitAggregator scan(List<ColumnSegment> segments, long from, long to, int[] groups, boolean unique,
+                              RangeScan rangeScan, ForkJoinPool pool) {
+        Task task = new Task(segments, 0, segments.size(), from, to, groups, unique, rangeScan);
+        if (pool == null || segments.size() < 2) {
+            return task.compute();
+        }
+        return pool.invoke(task);
+    }
+
+    /**
+     * Метод загружает векторную проверку времени VectorScan. Класс есть только в сборке с профилем Maven vector
+     * и работает только в JVM, запущенной с модулем jdk.incubator.vector, поэтому загружается по имени.
+     *
+     * @return векторная проверка времени или null, если она недоступна.
+     */
+    static RangeScan loadVectorScan() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (RangeScan) Class.forName("ru.practicum.column.VectorScan").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static final class Task extends RecursiveTask<HitAggregator> {
+        private final List<ColumnSegment> segments;
+        private final int start;
+        private final int end;
+        private final long from;
+        private final long to;
+        private final int[] groups;
+        private final boolean unique;
+        private final RangeScan rangeScan;
+
+        Task(List<ColumnSegment> segments, int start, int end, long from, long to, int[] groups, boolean unique,
+             RangeScan rangeScan) {
+            this.segments = segments;
+            this.start = start;
+            this.end = end;
+            this.from = from;
+            this.to = to;
+            this.groups = groups;
+            this.unique = unique;
+            this.rangeScan = rangeScan;
+        }
+
+        @Override
+        protected HitAggregator compute() {
+            if (end - start > 1 && getPool() != null) {
+                int middle = (start + end) >>> 1;
+                Task left = new Task(segments, start, middle, from, to, groups, unique, rangeScan);
+                left.fork();
+                HitAggregator result = new Task(segments, middle, end, from, to, groups, unique, rangeScan)
+                        .compute();
+                result.merge(left.join());
+                return result;
+            }
+            HitAggregator aggregator = new HitAggregator(groups, unique);
+            for (int i = start; i < end; i++) {
+                segments.get(i).scan(from, to, aggregator, rangeScan);
+            }
+            return aggregator;
+        }
+    }
+}
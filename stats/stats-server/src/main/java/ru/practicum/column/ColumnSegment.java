@@ -0,0 +1,109 @@
+package ru.practicum.column;
+
+import ru.practicum.segment.HitAggregator;
+
+/**
+ * Сегмент событий в памяти, хранящий каждое поле отдельным массивом примитивов: ключ приложения, ключ URI,
+ * IP-адрес и секунду события. Чтение проходит массивы подряд без создания объектов, а проверка времени
+ * выполняется по отдельному массиву секунд, что позволяет сравнивать время векторными инструкциями.
+ * Запись выполняется одним потоком под блокировкой ColumnStore; чтение возможно параллельно с записью
+ * и видит события, опубликованные до начала чтения. Заполненный сегмент больше не изменяется.
+ */
+final class ColumnSegment {
+    private final int[] appIds;
+    private final int[] uriIds;
+    private final long[] ips;
+    private final long[] seconds;
+    private volatile int size;
+    private volatile long minSecond = Long.MAX_VALUE;
+    private volatile long maxSecond = Long.MIN_VALUE;
+
+    ColumnSegment(int capacity) {
+        appIds = new int[capacity];
+        uriIds = new int[capacity];
+        ips = new long[capacity];
+        seconds = new long[capacity];
+    }
+
+    /**
+     * Метод дописывает событие в конец сегмента. Вызывающий код должен удерживать блокировку записи.
+     *
+     * @return false, если сегмент заполнен.
+     */
+    boolean append(long second, int appId, int uriId, long ip) {
+        int index = size;
+        if (index >= seconds.length) {
+            return false;
+        }
+        appIds[index] = appId;
+        uriIds[index] = uriId;
+        ips[index] = ip;
+        seconds[index] = second;
+        if (second < minSecond) {
+            minSecond = second;
+        }
+        if (second > maxSecond) {
+            maxSecond = second;
+        }
+        size = index + 1;
+        return true;
+    }
+
+    /**
+     * Метод передаёт подсчёту события с временем в полуоткрытом диапазоне [from, to) секунд.
+     *
+     * @param rangeScan альтернативная проверка времени (например, векторная) или null для проверки по одному.
+     */
+    void scan(long from, long to, HitAggregator aggregator, RangeScan rangeScan) {
+        int total = size;
+        if (total == 0 || maxSecond < from || minSecond >= to) {
+            return;
+        }
+        if (minSecond >= from && maxSecond < to) {
+            for (int i = 0; i < total; i++) {
+                aggregator.visit(appIds[i], uriIds[i], 0, ips[i]);
+            }
+            return;
+        }
+        if (rangeScan != null) {
+            rangeScan.scan(this, total, from, to, aggregator);
+            return;
+        }
+        scan(0, total, from, to, aggregator);
+    }
+
+    /**
+     * Метод проверяет время событий с номерами [start, end) по одному и передаёт подсчёту подходящие.
+     */
+    void scan(int start, int end, long from, long to, HitAggregator aggregator) {
+        for (int i = start; i < end; i++) {
+            long second = seconds[i];
+            if (second >= from && second < to) {
+                aggregator.visit(appIds[i], uriIds[i], 0, ips[i]);
+            }
+        }
+    }
+
+    /**
+     * Метод передаёт подсчёту событие с номером index без проверки времени.
+     */
+    void visit(int index, HitAggregator aggregator) {
+        aggregator.visit(appIds[index], uriIds[index], 0, ips[index]);
+    }
+
+    long[] seconds() {
+        return seconds;
+    }
+
+    boolean isFull() {
+        return size >= seconds.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long maxSecond() {
+        return maxSecond;
+    }
+}
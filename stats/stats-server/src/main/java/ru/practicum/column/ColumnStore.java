@@ -0,0 +1,246 @@
+package ru.practicum.column;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.EndpointHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.UriFilter;
+import ru.practicum.repository.StatsRepository;
+import ru.practicum.segment.HitAggregator;
+import ru.practicum.service.HitListener;
+import ru.practicum.service.StatsDictionary;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Необработанные события последних stats.columnar.retention-hours часов в памяти в колоночном виде.
+ * События хранятся сегментами ColumnSegment по stats.columnar.segment-size записей; при старте они читаются
+ * из таблицы statistics, затем пополняются слушателем HitListener. Хранилище содержит все события со временем
+ * не раньше горизонта, поэтому отвечает на запросы, начинающиеся не раньше горизонта, без обращения к базе
+ * данных. Сегменты читаются параллельно в собственном пуле ForkJoinPool.
+ * IPv4-адрес хранится числом, IPv6-адресам назначаются номера за пределами диапазона IPv4. Для каждого
+ * IPv6-адреса считается, в скольких сегментах он встречается, и адрес забывается, когда вытеснены все такие
+ * сегменты, поэтому словарь IPv6-адресов не растёт дольше срока хранения событий.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnExpression("${stats.columnar.enabled:false} and '${stats.storage:jdbc}' == 'jdbc'")
+public class ColumnStore implements HitListener {
+    private static final long IPV6_BASE = 1L << 32;
+
+    private final StatsRepository statsRepository;
+    private final StatsDictionary dictionary;
+    private final PlatformTransactionManager transactionManager;
+    @Value("${stats.columnar.retention-hours:24}")
+    private int retentionHours;
+    @Value("${stats.columnar.segment-size:65536}")
+    private int segmentSize;
+    @Value("${stats.columnar.max-segments:256}")
+    private int maxSegments;
+    @Value("${stats.columnar.parallelism:0}")
+    private int parallelism;
+    @Value("${stats.columnar.vector.enabled:false}")
+    private boolean vectorEnabled;
+
+    private final List<ColumnSegment> segments = new CopyOnWriteArrayList<>();
+    private final Map<Ipv6, Ipv6Id> ipv6 = new HashMap<>();
+    private final Map<ColumnSegment, Set<Ipv6>> segmentIpv6 = new IdentityHashMap<>();
+    private long nextIpv6 = IPV6_BASE;
+    private volatile long horizon;
+    private ForkJoinPool pool;
+    private RangeScan vectorScan;
+
+    @PostConstruct
+    void rebuild() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        vectorScan = vectorEnabled ? ColumnScan.loadVectorScan() : null;
+        if (vectorEnabled && vectorScan == null) {
+            log.warn("Векторное чтение недоступно: соберите сервис с профилем Maven vector и запустите JVM " +
+                    "с --add-modules jdk.incubator.vector; используется скалярное чтение");
+        }
+        LocalDateTime from = LocalDateTime.now().minusHours(retentionHours);
+        horizon = toSecond(from);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.executeWithoutResult(status -> statsRepository.scan(from, this::append));
+        log.info("Колоночное хранилище событий восстановлено: {} событий, {} сегментов, потоков чтения {}, " +
+                "векторное чтение {}", segments.stream().mapToLong(ColumnSegment::size).sum(), segments.size(),
+                threads, vectorScan != null);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    public synchronized void onHits(List<EndpointHit> hits) {
+        long current = toSecond(LocalDateTime.now().minusHours(retentionHours));
+        if (current > horizon) {
+            horizon = current;
+            for (ColumnSegment segment : segments) {
+                if (segment.isFull() && segment.maxSecond() < current) {
+                    segments.remove(segment);
+                    release(segment);
+                }
+            }
+        }
+        hits.forEach(this::append);
+    }
+
+    /**
+     * Метод проверяет, хранятся ли в памяти события, начиная с момента from.
+     */
+    public boolean covers(LocalDateTime from) {
+        return toSecond(from) >= horizon;
+    }
+
+    /**
+     * Метод считает обращения за полуоткрытый диапазон [from, to).
+     *
+     * @param from    начало диапазона (включительно).
+     * @param to      конец диапазона (не включительно).
+     * @param filter  условие отбора URI.
+     * @param grouped объединять ли URI, подходящие под префикс, по UriFilter.group.
+     * @param unique  считать ли только уникальные IP-адреса.
+     * @return количество обращений по парам (app, uri) или null, если диапазон начинается раньше горизонта.
+     */
+    public Map<HitKey, Long> count(LocalDateTime from, LocalDateTime to, UriFilter filter, boolean grouped,
+                                   boolean unique) {
+        long fromSecond = toSecond(from);
+        if (fromSecond < horizon) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        int[] groups = groups(filter, grouped, names);
+        HitAggregator aggregator = ColumnScan.scan(List.copyOf(segments), fromSecond, toSecond(to), groups, unique,
+                vectorScan, pool);
+        Map<HitKey, Long> result = new HashMap<>();
+        aggregator.forEach((appId, group, hits) ->
+                result.put(new HitKey(dictionary.app(appId), names.get(group)), hits));
+        return result;
+    }
+
+    /**
+     * Метод назначает каждому ключу URI словаря номер группы результата: -1 для URI, не подходящих под условие,
+     * иначе номер URI или его группы в списке names.
+     */
+    private int[] groups(UriFilter filter, boolean grouped, List<String> names) {
+        Map<Integer, String> uris = new HashMap<>();
+        dictionary.forEachUri(uris::put);
+        int[] groups = new int[uris.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1];
+        Arrays.fill(groups, -1);
+        Map<String, Integer> numbers = new HashMap<>();
+        uris.forEach((id, uri) -> {
+            if (filter.matches(uri)) {
+                groups[id] = numbers.computeIfAbsent(grouped ? filter.group(uri) : uri, name -> {
+                    names.add(name);
+                    return names.size() - 1;
+                });
+            }
+        });
+        return groups;
+    }
+
+    private synchronized void append(EndpointHit hit) {
+        long second = toSecond(hit.getTimestamp());
+        if (second < horizon) {
+            return;
+        }
+        ColumnSegment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active == null || active.isFull()) {
+            active = new ColumnSegment(segmentSize);
+            segments.add(active);
+            if (segments.size() > maxSegments) {
+                // Вытесняемый сегмент может содержать события любого времени, поэтому горизонт сдвигается за самое
+                // позднее из них: все события после горизонта по-прежнему остаются в памяти.
+                ColumnSegment evicted = segments.remove(0);
+                release(evicted);
+                horizon = Math.max(horizon, evicted.maxSecond() + 1);
+                log.info("Колоночное хранилище заполнено, горизонт сдвинут на {}",
+                        LocalDateTime.ofEpochSecond(horizon, 0, ZoneOffset.UTC));
+            }
+        }
+        active.append(second, hit.getAppId(), hit.getUriId(), ip(hit.getIp(), active));
+    }
+
+    /**
+     * Метод забывает IPv6-адреса, которые встречались только в удалённом сегменте.
+     */
+    private void release(ColumnSegment segment) {
+        Set<Ipv6> keys = segmentIpv6.remove(segment);
+        if (keys == null) {
+            return;
+        }
+        for (Ipv6 key : keys) {
+            Ipv6Id id = ipv6.get(key);
+            if (--id.segments == 0) {
+                ipv6.remove(key);
+            }
+        }
+    }
+
+    private long ip(String ip, ColumnSegment segment) {
+        byte[] address;
+        try {
+            address = InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Некорректный ip " + ip, e);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(address);
+        if (address.length == 4) {
+            return buffer.getInt() & 0xffffffffL;
+        }
+        Ipv6 key = new Ipv6(buffer.getLong(), buffer.getLong());
+        Ipv6Id id = ipv6.computeIfAbsent(key, k -> new Ipv6Id(nextIpv6++));
+        if (segmentIpv6.computeIfAbsent(segment, s -> new HashSet<>()).add(key)) {
+            id.segments++;
+        }
+        return id.value;
+    }
+
+    private static long toSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private record Ipv6(long high, long low) {
+    }
+
+    /**
+     * Номер IPv6-адреса и количество сегментов, в которых он встречается. Номера не используются повторно,
+     * поэтому адрес, забытый и встреченный снова, не совпадёт с другим адресом.
+     */
+    private static final class Ipv6Id {
+        private final long value;
+        private int segments;
+
+        private Ipv6Id(long value) {
+            this.value = value;
+        }
+    }
+}
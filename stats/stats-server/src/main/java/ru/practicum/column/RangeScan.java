@@ -0,0 +1,15 @@
+package ru.practicum.column;
+
+import ru.practicum.segment.HitAggregator;
+
+/**
+ * Проверка времени событий сегмента, которую ColumnSegment может передать альтернативной реализации,
+ * например векторной VectorScan.
+ */
+interface RangeScan {
+    /**
+     * Метод передаёт подсчёту события сегмента с номерами [0, total) и временем в полуоткрытом диапазоне
+     * [from, to) секунд.
+     */
+    void scan(ColumnSegment segment, int total, long from, long to, HitAggregator aggregator);
+}
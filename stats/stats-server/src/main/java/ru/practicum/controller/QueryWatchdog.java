@@ -0,0 +1,122 @@
+package ru.practicum.controller;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.repository.QueryContext;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отмена запросов статистики, клиент которых отключился. Сервлет-контейнер узнаёт об отключении клиента только
+ * при записи в ответ, поэтому, пока запрос ещё ничего не записал, раз в stats.query.heartbeat-ms миллисекунд
+ * в ответ отправляется пробел (пробелы перед JSON допустимы). Если отправка не удалась, запросы чтения
+ * обращения отменяются через QueryContext и соединение с базой данных сразу возвращается в пул.
+ * Первый пробел фиксирует ответ со статусом 200: если запрос, работающий дольше stats.query.heartbeat-ms,
+ * затем завершится ошибкой, клиент получит оборванный ответ вместо статуса ошибки. Поэтому через наблюдение
+ * проходят только запросы, читающие необработанные события, и потоковые запросы, а их параметры и стоимость
+ * проверяются до начала ответа; остальные запросы статистики отвечают по готовому результату.
+ */
+@Slf4j
+@Component
+public class QueryWatchdog {
+    @Value("${stats.query.heartbeat-ms:2000}")
+    private long heartbeatMs;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("stats-query-watchdog")
+                .daemon().factory());
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Метод записывает ответ, отменяя запросы чтения, если клиент отключился до их завершения.
+     *
+     * @param outputStream поток ответа.
+     * @param body         запись ответа; запросы к базе данных выполняются в потоке вызова.
+     */
+    public void write(OutputStream outputStream, StreamingResponseBody body) throws IOException {
+        QueryContext context = new QueryContext();
+        HeartbeatOutputStream out = new HeartbeatOutputStream(outputStream);
+        ScheduledFuture<?> heartbeat = scheduler.scheduleWithFixedDelay(() -> {
+            if (!out.heartbeat()) {
+                log.info("Клиент отключился, запрос статистики отменён");
+                context.cancel();
+            }
+        }, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        try {
+            context.run(() -> body.writeTo(out));
+        } catch (RuntimeException | IOException e) {
+            if (!context.isCancelled()) {
+                throw e;
+            }
+            log.debug("Запрос отменённого обращения завершился ошибкой: {}", e.getMessage());
+        } finally {
+            heartbeat.cancel(false);
+        }
+    }
+
+    /**
+     * Поток ответа, в который до первой записи ответа можно отправлять пробелы. Записи из потока запроса
+     * и потока отправки пробелов упорядочены блокировкой потока.
+     */
+    private static final class HeartbeatOutputStream extends FilterOutputStream {
+        private boolean written;
+
+        private HeartbeatOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            written = true;
+            out.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            written = true;
+            out.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Метод отправляет клиенту пробел, если ответ ещё не записывался.
+         *
+         * @return false, если отправить пробел не удалось; после этого пробелы больше не отправляются.
+         */
+        private synchronized boolean heartbeat() {
+            if (written) {
+                return true;
+            }
+            try {
+                out.write(' ');
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                written = true;
+                return false;
+            }
+        }
+    }
+}
@@ -1,14 +1,43 @@
 package ru.practicum.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.dao.TransientDataAccessResourceException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.TransactionTimedOutException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.DisconnectedClientHelper;
 import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.HitBatchResultDto;
+import ru.practicum.dto.HitCodec;
 import ru.practicum.dto.StatsViewDto;
+import ru.practicum.dto.TimeSeriesPointDto;
+import ru.practicum.exception.BadParametersException;
+import ru.practicum.model.StatsPrecision;
+import ru.practicum.service.LiveStatsBroadcaster;
 import ru.practicum.service.StatsService;
+import ru.practicum.sketch.HyperLogLog;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Контроллер StatsController для работы со статистикой.
@@ -17,7 +46,14 @@ import java.util.List;
 @RestController
 @RequiredArgsConstructor
 public class StatsController {
+    private static final String ERROR_BOUND_HEADER = "X-Stats-Error-Bound";
+
     private final StatsService service;
+    private final LiveStatsBroadcaster broadcaster;
+    private final QueryWatchdog watchdog;
+    private final ObjectMapper objectMapper;
+    @Value("${stats.ingest.max-batch-size:10000}")
+    private int maxBatchSize;
 
     /**
      * Метод для сохранения события в статистике
@@ -33,22 +69,283 @@ public class StatsController {
     }
 
     /**
-     * Метод для получения общей статистики
+     * Метод для сохранения события, переданного в двоичном формате HitCodec (Content-Type: HitCodec.MEDIA_TYPE).
+     *
+     * @param body список из одного события в формате HitCodec
+     */
+    @ResponseStatus(HttpStatus.CREATED)
+    @PostMapping(value = "/hit", consumes = HitCodec.MEDIA_TYPE)
+    public String saveBinaryEvent(@RequestBody byte[] body) {
+        List<EndpointHitDto> events = decode(body);
+        if (events.size() != 1) {
+            throw new BadParametersException("Ожидалось одно событие, получено " + events.size());
+        }
+        log.info("Получено событие для сохранения {}", events.get(0));
+        service.saveEvent(events.get(0));
+        return "Информация сохранена";
+    }
+
+    /**
+     * Метод для пакетного сохранения событий, переданных JSON-массивом
+     *
+     * @param events список событий, которые необходимо сохранить
+     */
+    @ResponseStatus(HttpStatus.CREATED)
+    @PostMapping(value = "/hit/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public HitBatchResultDto saveEvents(@RequestBody List<EndpointHitDto> events) {
+        log.info("Получен пакет из {} событий для сохранения", events.size());
+        return service.saveEvents(events);
+    }
+
+    /**
+     * Метод для пакетного сохранения событий, переданных в формате NDJSON (одно событие на строку).
+     * Строки, которые не удалось разобрать, попадают в список ошибок и не прерывают сохранение пакета.
+     * Тело читается построчно, и чтение прекращается ответом 400, как только событий становится больше
+     * stats.ingest.max-batch-size, поэтому слишком большой пакет не накапливается в памяти.
+     *
+     * @param request запрос, тело которого содержит события
+     */
+    @ResponseStatus(HttpStatus.CREATED)
+    @PostMapping(value = "/hit/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public HitBatchResultDto saveEventStream(HttpServletRequest request) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(EndpointHitDto.class);
+        List<EndpointHitDto> events = new ArrayList<>();
+        try (BufferedReader lines = request.getReader()) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (events.size() == maxBatchSize) {
+                    throw new BadParametersException("Размер пакета превышает " + maxBatchSize);
+                }
+                try {
+                    events.add(reader.readValue(line));
+                } catch (JsonProcessingException e) {
+                    events.add(null);
+                }
+            }
+        }
+        log.info("Получен NDJSON-пакет из {} событий для сохранения", events.size());
+        return service.saveEvents(events);
+    }
+
+    /**
+     * Метод для пакетного сохранения событий, переданных в двоичном формате HitCodec
+     * (Content-Type: HitCodec.MEDIA_TYPE). Время событий передаётся числом, поэтому разбор пакета не требует
+     * разбора строк дат.
+     *
+     * @param body события в формате HitCodec
+     */
+    @ResponseStatus(HttpStatus.CREATED)
+    @PostMapping(value = "/hit/batch", consumes = HitCodec.MEDIA_TYPE)
+    public HitBatchResultDto saveBinaryEvents(@RequestBody byte[] body) {
+        List<EndpointHitDto> events = decode(body);
+        log.info("Получен двоичный пакет из {} событий для сохранения", events.size());
+        return service.saveEvents(events);
+    }
+
+    /**
+     * Метод для получения общей статистики. Если клиент отключится, не дождавшись ответа, запрос к базе данных
+     * отменяется.
      *
-     * @param start  начало временного диапазона, за который требуется статистика.
-     * @param end    конец временного диапазона, за который требуется статистика.
-     * @param uris   список URI, по которым требуется собрать статистику. Если параметр не указан, собираются данные по
-     *               всем URI.
-     * @param unique определяет, нужно ли выводить уникальные значения. Если он равен false (по умолчанию), выводятся
-     *               все значения.
+     * @param start     начало временного диапазона, за который требуется статистика.
+     * @param end       конец временного диапазона, за который требуется статистика.
+     * @param uris      список URI, по которым требуется собрать статистику. Если параметр не указан, собираются
+     *                  данные по всем URI. Значение с * в конце, например /events/*, отбирает все URI с этим
+     *                  префиксом.
+     * @param unique    определяет, нужно ли выводить уникальные значения. Если он равен false (по умолчанию),
+     *                  выводятся все значения.
+     * @param precision точность подсчёта уникальных значений: exact (по умолчанию) или approx. В режиме approx
+     *                  относительная стандартная ошибка оценки возвращается в заголовке X-Stats-Error-Bound.
+     * @param groupBySegment если true, URI, подходящие под шаблон с *, объединяются по первому сегменту пути
+     *                       после префикса: /events/1/comments и /events/1 дают одну строку /events/1.
      */
-    @ResponseStatus(HttpStatus.OK)
     @GetMapping("/stats")
-    public List<StatsViewDto> getStatistics(@RequestParam String start, @RequestParam String end,
-                                            @RequestParam(required = false) List<String> uris,
-                                            @RequestParam(defaultValue = "false") Boolean unique) {
+    public ResponseEntity<StreamingResponseBody> getStatistics(@RequestParam String start, @RequestParam String end,
+                                                               @RequestParam(required = false) List<String> uris,
+                                                               @RequestParam(defaultValue = "false") Boolean unique,
+                                                               @RequestParam(defaultValue = "exact")
+                                                               String precision,
+                                                               @RequestParam(defaultValue = "false")
+                                                               Boolean groupBySegment) {
         log.info("Получен запрос на получение статистики с параметрами: start={}, end={}," +
-                " uris={}, unique={}", start, end, uris, unique);
-        return service.getStatistics(start, end, uris, unique);
+                " uris={}, unique={}, precision={}, groupBySegment={}", start, end, uris, unique, precision,
+                groupBySegment);
+        StatsPrecision parsedPrecision = StatsPrecision.from(precision);
+        if (service.prepareStatistics(start, end, uris, unique, parsedPrecision, groupBySegment)) {
+            return respond(parsedPrecision, unique, watch(consumer -> service.getStatistics(start, end, uris,
+                    unique, parsedPrecision, groupBySegment).forEach(consumer)));
+        }
+        List<StatsViewDto> result = service.getStatistics(start, end, uris, unique, parsedPrecision,
+                groupBySegment);
+        return respond(parsedPrecision, unique, out -> writeRows(out, result::forEach));
+    }
+
+    /**
+     * Метод для получения самых посещаемых URI за период.
+     *
+     * @param start     начало временного диапазона.
+     * @param end       конец временного диапазона.
+     * @param limit     количество строк в ответе (по умолчанию 10).
+     * @param prefix    префикс URI, например /events/. Если параметр не указан, учитываются все URI.
+     * @param unique    определяет, нужно ли считать только уникальные IP-адреса.
+     * @param precision точность: exact (по умолчанию) или approx — непрерывно обновляемый рейтинг в памяти.
+     */
+    @GetMapping("/stats/top")
+    public List<StatsViewDto> getTop(@RequestParam String start, @RequestParam String end,
+                                     @RequestParam(defaultValue = "10") Integer limit,
+                                     @RequestParam(required = false) String prefix,
+                                     @RequestParam(defaultValue = "false") Boolean unique,
+                                     @RequestParam(defaultValue = "exact") String precision) {
+        log.info("Получен запрос рейтинга посещаемости с параметрами: start={}, end={}, limit={}, prefix={}," +
+                " unique={}, precision={}", start, end, limit, prefix, unique, precision);
+        return service.getTop(start, end, limit, prefix, unique, StatsPrecision.from(precision));
+    }
+
+    /**
+     * Метод для получения самых посещаемых URI за скользящее окно последних минут. Ответ строится по счётчикам
+     * в памяти сервиса и не читает базу данных.
+     *
+     * @param window длина окна: число и единица s, m или h, например 5m, 15m или 1h (по умолчанию 15m).
+     * @param limit  количество строк в ответе (по умолчанию 10).
+     * @param prefix префикс URI, например /events/. Если параметр не указан, учитываются все URI.
+     */
+    @GetMapping("/stats/trending")
+    public List<StatsViewDto> getTrending(@RequestParam(defaultValue = "15m") String window,
+                                          @RequestParam(defaultValue = "10") Integer limit,
+                                          @RequestParam(required = false) String prefix) {
+        log.info("Получен запрос рейтинга за скользящее окно с параметрами: window={}, limit={}, prefix={}",
+                window, limit, prefix);
+        return service.getTrending(window, limit, prefix);
+    }
+
+    /**
+     * Метод для получения временного ряда обращений к URI: количества обращений за каждый интервал длины bucket
+     * в пределах периода, в порядке возрастания времени, включая интервалы без обращений.
+     *
+     * @param uri    URI, по которому строится ряд. Значение с * в конце, например /events/*, суммирует все URI
+     *               с этим префиксом.
+     * @param start  начало временного диапазона.
+     * @param end    конец временного диапазона.
+     * @param bucket длина интервала: 1m, 1h (по умолчанию) или 1d. Количество интервалов ограничено
+     *               параметром stats.timeseries.max-buckets.
+     * @param unique определяет, нужно ли считать только уникальные IP-адреса в каждом интервале.
+     */
+    @GetMapping("/stats/timeseries")
+    public List<TimeSeriesPointDto> getTimeSeries(@RequestParam String uri, @RequestParam String start,
+                                                  @RequestParam String end,
+                                                  @RequestParam(defaultValue = "1h") String bucket,
+                                                  @RequestParam(defaultValue = "false") Boolean unique) {
+        log.info("Получен запрос временного ряда с параметрами: uri={}, start={}, end={}, bucket={}, unique={}",
+                uri, start, end, bucket, unique);
+        return service.getTimeSeries(uri, start, end, bucket, unique);
+    }
+
+    /**
+     * Метод для подписки на счётчики обращений к URI (Server-Sent Events). Пока подписка открыта, сервис
+     * с периодом stats.live.interval-ms присылает событие hits с количеством обращений за всё время по каждому
+     * URI, счётчик которого изменился; первое событие содержит текущие значения всех URI подписки.
+     *
+     * @param uris список URI без символа *.
+     */
+    @GetMapping(value = "/stats/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@RequestParam List<String> uris) {
+        log.info("Получен запрос подписки на счётчики обращений к {}", uris);
+        return broadcaster.subscribe(uris);
+    }
+
+    /**
+     * Обработчик ошибок записи в ответ, закрытый клиентом, например отключившимся подписчиком /stats/stream.
+     * Ответ уже некому отправлять, поэтому такая ошибка только пишется в журнал; остальные ошибки
+     * ввода-вывода обрабатываются как обычно.
+     */
+    @ExceptionHandler(IOException.class)
+    public void handleIOException(IOException e) throws IOException {
+        if (!DisconnectedClientHelper.isClientDisconnectedException(e)) {
+            throw e;
+        }
+        log.debug("Клиент закрыл соединение: {}", e.getMessage());
+    }
+
+    /**
+     * Метод для получения общей статистики потоком. Строки записываются в ответ по мере чтения из базы данных,
+     * поэтому память сервиса не зависит от количества строк в ответе. Параметры и формат ответа такие же,
+     * как у обычного запроса статистики.
+     */
+    @GetMapping(value = "/stats", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamStatistics(@RequestParam String start,
+                                                                  @RequestParam String end,
+                                                                  @RequestParam(required = false) List<String> uris,
+                                                                  @RequestParam(defaultValue = "false") Boolean unique,
+                                                                  @RequestParam(defaultValue = "exact")
+                                                                  String precision,
+                                                                  @RequestParam(defaultValue = "false")
+                                                                  Boolean groupBySegment) {
+        log.info("Получен запрос на потоковое получение статистики с параметрами: start={}, end={}," +
+                " uris={}, unique={}, precision={}, groupBySegment={}", start, end, uris, unique, precision,
+                groupBySegment);
+        StatsPrecision parsedPrecision = StatsPrecision.from(precision);
+        service.prepareStatistics(start, end, uris, unique, parsedPrecision, groupBySegment);
+        return respond(parsedPrecision, unique, watch(consumer -> service.streamStatistics(start, end, uris, unique,
+                parsedPrecision, groupBySegment, consumer)));
+    }
+
+    /**
+     * Обработчик запросов, прерванных по времени stats.query.timeout-seconds или не получивших соединение
+     * с базой данных: ответ 503. Если ответ уже зафиксирован отправкой пробелов QueryWatchdog, статус отправить
+     * нельзя; исключение передаётся контейнеру, и тот обрывает соединение, чтобы клиент не принял неполный ответ
+     * за пустой.
+     */
+    @ExceptionHandler({QueryTimeoutException.class, TransactionTimedOutException.class,
+            DataAccessResourceFailureException.class, TransientDataAccessResourceException.class})
+    public void handleQueryFailure(RuntimeException e, HttpServletResponse response) throws IOException {
+        log.warn("Запрос к базе данных не выполнен: {}", e.getMessage());
+        if (response.isCommitted()) {
+            throw e;
+        }
+        response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+    }
+
+    /**
+     * Метод строит запись ответа для долгого запроса: строки, которые запрос передаёт получателю, записываются
+     * в потоке асинхронной обработки под наблюдением QueryWatchdog, поэтому запрос отменяется, если клиент
+     * отключился. Параметры запроса должны быть проверены до вызова (StatsService.prepareStatistics).
+     */
+    private StreamingResponseBody watch(Consumer<Consumer<StatsViewDto>> query) {
+        return outputStream -> watchdog.write(outputStream, out -> writeRows(out, query));
+    }
+
+    private void writeRows(OutputStream out, Consumer<Consumer<StatsViewDto>> query) throws IOException {
+        // Генератор не закрывается при ошибке: пока буфер не сброшен, ответ не зафиксирован и ошибка
+        // возвращается клиенту обычным статусом.
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.writeStartArray();
+        query.accept(row -> {
+            try {
+                generator.writeObject(row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    private ResponseEntity<StreamingResponseBody> respond(StatsPrecision precision, Boolean unique,
+                                                          StreamingResponseBody body) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (precision == StatsPrecision.APPROX && unique) {
+            response.header(ERROR_BOUND_HEADER, String.valueOf(HyperLogLog.RELATIVE_ERROR));
+        }
+        return response.body(body);
+    }
+
+    private List<EndpointHitDto> decode(byte[] body) {
+        try {
+            return HitCodec.decode(body);
+        } catch (IllegalArgumentException e) {
+            throw new BadParametersException("Не удалось разобрать события: " + e.getMessage());
+        }
     }
 }
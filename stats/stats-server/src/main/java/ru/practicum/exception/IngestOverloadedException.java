@@ -0,0 +1,19 @@
+package ru.practicum.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Исключение, выбрасываемое, когда сервис статистики не успевает принимать события на запись.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class IngestOverloadedException extends RuntimeException {
+    /**
+     * Передает сообщение об ошибке в конструктор RuntimeException
+     *
+     * @param message сообщение об ошибке, которое будет передано в родительский класс RuntimeException.
+     */
+    public IngestOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,20 @@
+package ru.practicum.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Исключение, выбрасываемое маршрутизатором, когда узел статистики, владеющий частью данных, не ответил.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ShardUnavailableException extends RuntimeException {
+    /**
+     * Передает сообщение об ошибке и причину в конструктор RuntimeException
+     *
+     * @param message сообщение об ошибке, которое будет передано в родительский класс RuntimeException.
+     * @param cause   ошибка обращения к узлу.
+     */
+    public ShardUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
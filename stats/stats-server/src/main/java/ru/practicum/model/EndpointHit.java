@@ -1,7 +1,6 @@
 package ru.practicum.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
-import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -10,31 +9,27 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 /**
- * Этот класс представляет собой сущность, которая используется для хранения информации о запросах к эндпоинтам.
+ * Этот класс представляет собой событие, которое используется для хранения информации о запросах к эндпоинтам.
  * Он содержит следующие поля:
  * — id — уникальный идентификатор записи;
  * — app — идентификатор сервиса для которого записывается информация;
  * — uri — URI для которого был осуществлен запрос;
  * — ip — IP-адрес пользователя, осуществившего запрос;
- * — timestamp — Дата и время, когда был совершен запрос к эндпоинту.
+ * — timestamp — Дата и время, когда был совершен запрос к эндпоинту;
+ * — appId, uriId — суррогатные ключи app и uri в словарях statistics_app и statistics_uri, которые заполняются
+ * перед записью. В таблице statistics хранятся только ключи, а IP-адрес хранится в типе inet.
  */
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-@Entity
-@Table(name = "statistics")
 @Builder
 public class EndpointHit {
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
-    @Column(nullable = false)
     private String app;
-    @Column(nullable = false)
     private String uri;
-    @Column(nullable = false)
     private String ip;
-    @Column(nullable = false, name = "creation date")
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime timestamp;
+    private Integer appId;
+    private Integer uriId;
 }
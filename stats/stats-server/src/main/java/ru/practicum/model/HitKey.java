@@ -0,0 +1,7 @@
+package ru.practicum.model;
+
+/**
+ * Ключ строки ответа статистики: приложение и URI.
+ */
+public record HitKey(String app, String uri) {
+}
@@ -0,0 +1,20 @@
+package ru.practicum.model;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * Ключ строки предагрегированной статистики: ключи приложения и URI в словарях и начало интервала.
+ * Ключи упорядочены так же, как первичный ключ таблиц, чтобы параллельные записи блокировали строки
+ * в одном порядке.
+ */
+public record RollupKey(int appId, int uriId, LocalDateTime bucket) implements Comparable<RollupKey> {
+    private static final Comparator<RollupKey> ORDER = Comparator.comparingInt(RollupKey::uriId)
+            .thenComparing(RollupKey::bucket)
+            .thenComparingInt(RollupKey::appId);
+
+    @Override
+    public int compareTo(RollupKey other) {
+        return ORDER.compare(this, other);
+    }
+}
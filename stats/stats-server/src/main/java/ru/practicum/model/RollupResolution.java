@@ -0,0 +1,100 @@
+package ru.practicum.model;
+
+import ru.practicum.exception.BadParametersException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Разрешение таблиц предагрегированной статистики.
+ * Каждое значение хранит имя таблицы, в которой количество обращений посчитано по интервалам соответствующей длины,
+ * и имя таблицы скетчей уникальных IP-адресов по тем же интервалам (для минут скетчи не хранятся), а также
+ * обозначение длины интервала в запросе временного ряда.
+ * Значения перечислены от самого крупного к самому мелкому.
+ */
+public enum RollupResolution {
+    DAY("statistics_day", "statistics_sketch_day", ChronoUnit.DAYS, "1d"),
+    HOUR("statistics_hour", "statistics_sketch_hour", ChronoUnit.HOURS, "1h"),
+    MINUTE("statistics_minute", null, ChronoUnit.MINUTES, "1m");
+
+    public static final List<RollupResolution> SKETCHED = Arrays.stream(values())
+            .filter(resolution -> resolution.sketchTable != null)
+            .toList();
+
+    private final String table;
+    private final String sketchTable;
+    private final ChronoUnit unit;
+    private final String bucket;
+
+    RollupResolution(String table, String sketchTable, ChronoUnit unit, String bucket) {
+        this.table = table;
+        this.sketchTable = sketchTable;
+        this.unit = unit;
+        this.bucket = bucket;
+    }
+
+    /**
+     * Метод разбирает длину интервала временного ряда: 1m, 1h или 1d.
+     *
+     * @param value значение параметра bucket.
+     * @throws BadParametersException если значение не соответствует ни одному разрешению.
+     */
+    public static RollupResolution fromBucket(String value) {
+        for (RollupResolution resolution : values()) {
+            if (resolution.bucket.equals(value)) {
+                return resolution;
+            }
+        }
+        throw new BadParametersException("Неизвестная длина интервала " + value);
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getSketchTable() {
+        return sketchTable;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Метод возвращает единицу функции date_trunc, соответствующую разрешению.
+     */
+    public String getTruncField() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * Метод возвращает количество интервалов между началами интервалов from и to.
+     */
+    public long between(LocalDateTime from, LocalDateTime to) {
+        return unit.between(from, to);
+    }
+
+    /**
+     * Метод возвращает начало интервала, следующего за интервалом с началом time.
+     */
+    public LocalDateTime next(LocalDateTime time) {
+        return time.plus(1, unit);
+    }
+
+    /**
+     * Метод возвращает начало интервала, в который попадает момент времени.
+     */
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    /**
+     * Метод возвращает начало ближайшего интервала, который начинается не раньше момента времени.
+     */
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? floor : floor.plus(1, unit);
+    }
+}
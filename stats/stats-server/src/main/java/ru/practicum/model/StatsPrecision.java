@@ -0,0 +1,32 @@
+package ru.practicum.model;
+
+import ru.practicum.exception.BadParametersException;
+
+/**
+ * Точность подсчёта уникальных обращений в запросе статистики.
+ */
+public enum StatsPrecision {
+    /**
+     * Точный подсчёт по необработанным событиям.
+     */
+    EXACT,
+    /**
+     * Приближённый подсчёт по скетчам HyperLogLog.
+     */
+    APPROX;
+
+    /**
+     * Метод разбирает значение параметра запроса без учёта регистра.
+     *
+     * @param value значение параметра precision.
+     * @throws BadParametersException если значение не соответствует ни одной точности.
+     */
+    public static StatsPrecision from(String value) {
+        for (StatsPrecision precision : values()) {
+            if (precision.name().equalsIgnoreCase(value)) {
+                return precision;
+            }
+        }
+        throw new BadParametersException("Неизвестная точность " + value);
+    }
+}
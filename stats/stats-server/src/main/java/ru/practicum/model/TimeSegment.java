@@ -0,0 +1,10 @@
+package ru.practicum.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Полуоткрытый интервал времени [from, to), который читается из таблицы с разрешением resolution.
+ * Если resolution равен null, интервал читается из таблицы необработанных событий.
+ */
+public record TimeSegment(RollupResolution resolution, LocalDateTime from, LocalDateTime to) {
+}
@@ -0,0 +1,89 @@
+package ru.practicum.model;
+
+import ru.practicum.exception.BadParametersException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Условие отбора URI в запросе статистики: URI совпадает с одним из значений uris или начинается с одного
+ * из префиксов prefixes. Если uris равен null и префиксов нет, учитываются все URI.
+ */
+public record UriFilter(List<String> uris, List<String> prefixes) {
+    public static final UriFilter ALL = new UriFilter(null, List.of());
+    private static final String WILDCARD = "*";
+
+    /**
+     * Метод разбирает список URI из запроса. Значение, оканчивающееся на *, задаёт префикс: /events/* отбирает
+     * все URI, начинающиеся с /events/. null означает все URI.
+     *
+     * @throws BadParametersException если * встречается не в конце значения.
+     */
+    public static UriFilter parse(List<String> values) {
+        if (values == null) {
+            return ALL;
+        }
+        List<String> uris = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        for (String value : values) {
+            int wildcard = value.indexOf(WILDCARD);
+            if (wildcard < 0) {
+                uris.add(value);
+            } else if (wildcard == value.length() - 1) {
+                prefixes.add(value.substring(0, wildcard));
+            } else {
+                throw new BadParametersException("Символ * допускается только в конце URI: " + value);
+            }
+        }
+        return new UriFilter(uris, prefixes);
+    }
+
+    /**
+     * Метод создаёт условие по префиксу URI; null означает все URI.
+     */
+    public static UriFilter prefix(String prefix) {
+        return prefix == null ? ALL : new UriFilter(List.of(), List.of(prefix));
+    }
+
+    /**
+     * Метод возвращает наименьшую строку, которая больше всех строк с указанным непустым префиксом.
+     */
+    public static String prefixEnd(String prefix) {
+        int last = prefix.length() - 1;
+        return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+    }
+
+    public boolean isAll() {
+        return uris == null && prefixes.isEmpty();
+    }
+
+    /**
+     * Метод проверяет, подходит ли URI под условие.
+     */
+    public boolean matches(String uri) {
+        if (isAll() || uris != null && uris.contains(uri)) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (uri.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Метод возвращает группу URI при группировке по сегменту пути: для URI, подходящего под префикс, это префикс
+     * и первый сегмент пути после него (/events/* группирует /events/1/comments в /events/1), для остальных
+     * URI — сам URI.
+     */
+    public String group(String uri) {
+        for (String prefix : prefixes) {
+            if (uri.startsWith(prefix)) {
+                int slash = uri.indexOf('/', prefix.length());
+                return slash < 0 ? uri : uri.substring(0, slash);
+            }
+        }
+        return uri;
+    }
+}
@@ -0,0 +1,157 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.EndpointHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.RollupKey;
+import ru.practicum.model.UriFilter;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Репозиторий счётчиков обращений за всё время (statistics_all_time).
+ * Для каждой пары (uri, app) хранится общее количество обращений и количество уникальных IP-адресов. Уникальность
+ * определяется таблицей statistics_first_seen: адрес учитывается в unique_hits, только когда тройка (uri, app, ip)
+ * впервые попадает в эту таблицу.
+ */
+@Repository
+@RequiredArgsConstructor
+public class AllTimeRepository {
+    private static final String FIRST_SEEN = "INSERT INTO statistics_first_seen (uri_id, app_id, ip) " +
+            "SELECT DISTINCT * FROM unnest(CAST(? AS INTEGER[]), CAST(? AS INTEGER[]), CAST(? AS INET[])) " +
+            "ORDER BY 1, 2, 3 ON CONFLICT DO NOTHING RETURNING uri_id, app_id";
+    private static final String INCREMENT = "INSERT INTO statistics_all_time AS c (uri_id, app_id, hits, unique_hits) " +
+            "VALUES (:uri, :app, :hits, :unique) ON CONFLICT (uri_id, app_id) " +
+            "DO UPDATE SET hits = c.hits + EXCLUDED.hits, unique_hits = c.unique_hits + EXCLUDED.unique_hits";
+    private static final String FIND_HITS = "SELECT a.name AS app, u.uri AS uri, s.hits FROM (" +
+            "SELECT app_id, uri_id, %1$s AS hits FROM statistics_all_time WHERE %1$s > 0%2$s%3$s) AS s " +
+            "JOIN statistics_app a ON a.id = s.app_id JOIN statistics_uri u ON u.id = s.uri_id ORDER BY s.hits DESC";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CursorJdbcTemplate cursorJdbcTemplate;
+
+    /**
+     * Метод увеличивает счётчики на пачку событий: сначала записывает впервые встреченные тройки (uri, app, ip),
+     * затем одним пакетом обновляет счётчики. Должен вызываться внутри транзакции.
+     *
+     * @param hits события с заполненными ключами приложения и URI.
+     */
+    public void increment(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        Map<Long, long[]> counts = new TreeMap<>();
+        Integer[] uris = new Integer[hits.size()];
+        Integer[] apps = new Integer[hits.size()];
+        String[] ips = new String[hits.size()];
+        for (int i = 0; i < hits.size(); i++) {
+            EndpointHit hit = hits.get(i);
+            uris[i] = hit.getUriId();
+            apps[i] = hit.getAppId();
+            ips[i] = hit.getIp();
+            counts.computeIfAbsent(key(hit.getUriId(), hit.getAppId()), key -> new long[2])[0]++;
+        }
+        jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(FIRST_SEEN)) {
+                statement.setArray(1, connection.createArrayOf("integer", uris));
+                statement.setArray(2, connection.createArrayOf("integer", apps));
+                statement.setArray(3, connection.createArrayOf("text", ips));
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        counts.get(key(rs.getInt("uri_id"), rs.getInt("app_id")))[1]++;
+                    }
+                }
+            }
+            return null;
+        });
+        jdbcTemplate.batchUpdate(INCREMENT, counts.entrySet().stream()
+                .map(entry -> new MapSqlParameterSource()
+                        .addValue("uri", (int) (entry.getKey() >>> 32))
+                        .addValue("app", (int) (long) entry.getKey())
+                        .addValue("hits", entry.getValue()[0])
+                        .addValue("unique", entry.getValue()[1]))
+                .toArray(MapSqlParameterSource[]::new));
+    }
+
+    /**
+     * Метод учитывает в счётчиках обращения дня, не учтённые при записи событий: количество обращений
+     * увеличивается на переданные значения, а IP-адреса событий дня проверяются по statistics_first_seen.
+     * Должен вызываться внутри транзакции.
+     *
+     * @param day     начало дня.
+     * @param missing неучтённые обращения по ключам минут дня.
+     */
+    public void fold(LocalDateTime day, Map<RollupKey, Long> missing) {
+        Map<Long, long[]> counts = new TreeMap<>();
+        missing.forEach((minute, hits) ->
+                counts.computeIfAbsent(key(minute.uriId(), minute.appId()), key -> new long[2])[0] += hits);
+        jdbcTemplate.query("INSERT INTO statistics_first_seen (uri_id, app_id, ip) " +
+                "SELECT DISTINCT uri_id, app_id, ip FROM statistics WHERE \"creation date\" >= :from " +
+                "AND \"creation date\" < :to ORDER BY 1, 2, 3 ON CONFLICT DO NOTHING RETURNING uri_id, app_id",
+                new MapSqlParameterSource()
+                        .addValue("from", Timestamp.valueOf(day))
+                        .addValue("to", Timestamp.valueOf(day.plusDays(1))), rs -> {
+                    counts.computeIfAbsent(key(rs.getInt("uri_id"), rs.getInt("app_id")), key -> new long[2])[1]++;
+                });
+        if (counts.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INCREMENT, counts.entrySet().stream()
+                .map(entry -> new MapSqlParameterSource()
+                        .addValue("uri", (int) (entry.getKey() >>> 32))
+                        .addValue("app", (int) (long) entry.getKey())
+                        .addValue("hits", entry.getValue()[0])
+                        .addValue("unique", entry.getValue()[1]))
+                .toArray(MapSqlParameterSource[]::new));
+    }
+
+    /**
+     * Метод передаёт получателю счётчики пар (app, uri), подходящих под условие, в порядке убывания.
+     *
+     * @param filter   условие отбора URI.
+     * @param unique   передавать ли количество уникальных IP-адресов вместо общего количества обращений.
+     * @param limit    наибольшее количество строк результата; null — без ограничения.
+     * @param consumer получатель пары (app, uri) и счётчика.
+     */
+    public void findHits(UriFilter filter, boolean unique, Integer limit, BiConsumer<HitKey, Long> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource("limit", limit);
+        String sql = String.format(FIND_HITS, unique ? "unique_hits" : "hits", UriFilterSql.where(filter, params),
+                limit != null ? " ORDER BY hits DESC, app_id, uri_id LIMIT :limit" : "");
+        cursorJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(new HitKey(rs.getString("app"), rs.getString("uri")), rs.getLong("hits"));
+        });
+    }
+
+    public boolean isEmpty() {
+        return !Boolean.TRUE.equals(jdbcTemplate.getJdbcTemplate().queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM statistics_all_time)", Boolean.class));
+    }
+
+    /**
+     * Метод заполняет счётчики и таблицу впервые встреченных адресов по всем сохранённым событиям.
+     *
+     * @return количество пар (uri, app).
+     */
+    public int backfill() {
+        jdbcTemplate.getJdbcTemplate().update("INSERT INTO statistics_first_seen (uri_id, app_id, ip) " +
+                "SELECT DISTINCT uri_id, app_id, ip FROM statistics ON CONFLICT DO NOTHING");
+        return jdbcTemplate.getJdbcTemplate().update("INSERT INTO statistics_all_time (uri_id, app_id, hits, " +
+                "unique_hits) SELECT uri_id, app_id, COUNT(*), COUNT(DISTINCT ip) FROM statistics " +
+                "GROUP BY uri_id, app_id ON CONFLICT DO NOTHING");
+    }
+
+    private static long key(int uriId, int appId) {
+        return (long) uriId << 32 | appId;
+    }
+}
@@ -0,0 +1,229 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.RollupKey;
+import ru.practicum.model.RollupResolution;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.model.UriFilter;
+import ru.practicum.sketch.IpBitmap;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Репозиторий множеств уникальных IP-адресов по дням (statistics_bitmap_day).
+ * Множество хранится для каждой тройки (uri, день, app) и пополняется AggregateFolder из очереди
+ * statistics_pending; при чтении множества дней объединяются с событиями очереди, а неполные дни на краях
+ * диапазона дочитываются из необработанных событий, поэтому результат точный.
+ */
+@Repository
+@RequiredArgsConstructor
+public class BitmapRepository {
+    public static final RollupResolution RESOLUTION = RollupResolution.DAY;
+    private static final String TABLE = "statistics_bitmap_day";
+    private static final int LOCK_CHUNK = 500;
+    private static final int BACKFILL_BATCH = 500;
+    private static final byte[] EMPTY_BITMAP = new IpBitmap().toBytes();
+    private static final String CREATE = "INSERT INTO " + TABLE + " (uri_id, bucket, app_id, bitmap) " +
+            "VALUES (:uri, :bucket, :app, :bitmap) ON CONFLICT (uri_id, bucket, app_id) DO NOTHING";
+    private static final String LOCK = "SELECT uri_id, bucket, app_id, bitmap FROM " + TABLE +
+            " WHERE (uri_id, bucket, app_id) IN (:keys) ORDER BY uri_id, bucket, app_id FOR UPDATE";
+    private static final String UPDATE = "UPDATE " + TABLE + " SET bitmap = :bitmap " +
+            "WHERE uri_id = :uri AND bucket = :bucket AND app_id = :app";
+    /**
+     * IPv4-адрес передаётся числом, чтобы не разбирать его текстовый вид; IPv6-адрес — текстом.
+     */
+    private static final String IP_COLUMNS = "CASE WHEN family(s.ip) = 4 THEN s.ip - '0.0.0.0'::inet END AS ip4, " +
+            "CASE WHEN family(s.ip) = 6 THEN host(s.ip) END AS ip6";
+    private static final String DICTIONARY_JOIN =
+            "JOIN statistics_app a ON a.id = s.app_id JOIN statistics_uri u ON u.id = s.uri_id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CursorJdbcTemplate cursorJdbcTemplate;
+
+    /**
+     * Метод объединяет множества пачки событий с сохранёнными множествами.
+     * Недостающие строки создаются пустыми, затем строки блокируются в порядке первичного ключа, объединяются
+     * в памяти и перезаписываются, только если множество изменилось. Должен вызываться внутри транзакции.
+     *
+     * @param bitmaps множества пачки по ключам; ключи должны быть упорядочены.
+     */
+    public void merge(Map<RollupKey, IpBitmap> bitmaps) {
+        if (bitmaps.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(CREATE, bitmaps.keySet().stream()
+                .map(key -> toParams(key, EMPTY_BITMAP))
+                .toArray(MapSqlParameterSource[]::new));
+        List<RollupKey> keys = new ArrayList<>(bitmaps.keySet());
+        List<MapSqlParameterSource> updates = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += LOCK_CHUNK) {
+            List<Object[]> chunk = keys.subList(from, Math.min(from + LOCK_CHUNK, keys.size())).stream()
+                    .map(key -> new Object[]{key.uriId(), Timestamp.valueOf(key.bucket()), key.appId()})
+                    .toList();
+            jdbcTemplate.query(LOCK, new MapSqlParameterSource("keys", chunk), rs -> {
+                RollupKey key = new RollupKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                        rs.getTimestamp("bucket").toLocalDateTime());
+                IpBitmap stored = IpBitmap.fromBytes(rs.getBytes("bitmap"));
+                if (stored.merge(bitmaps.get(key))) {
+                    updates.add(toParams(key, stored.toBytes()));
+                }
+            });
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE, updates.toArray(MapSqlParameterSource[]::new));
+        }
+    }
+
+    /**
+     * Метод собирает множества уникальных IP-адресов по интервалам плана.
+     *
+     * @param segments интервалы плана; дневные интервалы читаются из statistics_bitmap_day, остальные из событий.
+     * @param filter   условие отбора URI.
+     * @return объединённые множества по парам (app, uri).
+     */
+    public Map<HitKey, IpBitmap> collect(List<TimeSegment> segments, UriFilter filter) {
+        Map<HitKey, IpBitmap> result = new HashMap<>();
+        for (TimeSegment segment : segments) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("from", Timestamp.valueOf(segment.from()))
+                    .addValue("to", Timestamp.valueOf(segment.to()));
+            String uriFilter = UriFilterSql.where(filter, params);
+            if (segment.resolution() == null) {
+                collectIps("statistics", params, uriFilter, result);
+            } else {
+                // Очередь читается раньше множеств: событие, учтённое AggregateFolder между чтениями,
+                // попадёт в результат хотя бы одним из них.
+                collectIps(PendingHitRepository.TABLE, params, uriFilter, result);
+                cursorJdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, s.bitmap FROM " + TABLE + " AS s " +
+                        DICTIONARY_JOIN + " WHERE s.bucket >= :from AND s.bucket < :to" + uriFilter, params, rs -> {
+                            result.computeIfAbsent(new HitKey(rs.getString("app"), rs.getString("uri")),
+                                    key -> new IpBitmap()).merge(IpBitmap.fromBytes(rs.getBytes("bitmap")));
+                        });
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Метод собирает множества уникальных IP-адресов по дням для временного ряда: множества всех пар
+     * (app, uri), подходящих под условие, объединяются внутри каждого дня.
+     *
+     * @param segments интервалы плана; дневные интервалы читаются из statistics_bitmap_day, остальные из событий.
+     * @param filter   условие отбора URI.
+     * @return множества по началу дня в порядке возрастания времени.
+     */
+    public Map<LocalDateTime, IpBitmap> collectSeries(List<TimeSegment> segments, UriFilter filter) {
+        Map<LocalDateTime, IpBitmap> result = new TreeMap<>();
+        for (TimeSegment segment : segments) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("from", Timestamp.valueOf(segment.from()))
+                    .addValue("to", Timestamp.valueOf(segment.to()));
+            String uriFilter = UriFilterSql.where(filter, params);
+            if (segment.resolution() == null) {
+                collectSeriesIps("statistics", params, uriFilter, result);
+            } else {
+                collectSeriesIps(PendingHitRepository.TABLE, params, uriFilter, result);
+                cursorJdbcTemplate.query("SELECT bucket, bitmap FROM " + TABLE +
+                        " WHERE bucket >= :from AND bucket < :to" + uriFilter, params, rs -> {
+                            result.computeIfAbsent(rs.getTimestamp("bucket").toLocalDateTime(),
+                                    key -> new IpBitmap()).merge(IpBitmap.fromBytes(rs.getBytes("bitmap")));
+                        });
+            }
+        }
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return !Boolean.TRUE.equals(jdbcTemplate.getJdbcTemplate().queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + TABLE + ")", Boolean.class));
+    }
+
+    /**
+     * Метод строит множества по всем сохранённым событиям. События читаются курсором в порядке ключа таблицы,
+     * поэтому в памяти одновременно находится одно множество. Должен вызываться внутри транзакции.
+     *
+     * @return количество построенных множеств.
+     */
+    public long backfill() {
+        List<MapSqlParameterSource> batch = new ArrayList<>();
+        RollupKey[] current = new RollupKey[1];
+        IpBitmap[] bitmap = new IpBitmap[1];
+        long[] total = new long[1];
+        cursorJdbcTemplate.query("SELECT uri_id, date_trunc('day', \"creation date\") AS bucket, app_id, " +
+                "host(ip) AS ip FROM statistics ORDER BY uri_id, bucket, app_id", new MapSqlParameterSource(), rs -> {
+                    RollupKey key = new RollupKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                            rs.getTimestamp("bucket").toLocalDateTime());
+                    if (!key.equals(current[0])) {
+                        if (current[0] != null) {
+                            batch.add(toParams(current[0], bitmap[0].toBytes()));
+                            total[0]++;
+                        }
+                        if (batch.size() == BACKFILL_BATCH) {
+                            jdbcTemplate.batchUpdate(CREATE, batch.toArray(MapSqlParameterSource[]::new));
+                            batch.clear();
+                        }
+                        current[0] = key;
+                        bitmap[0] = new IpBitmap();
+                    }
+                    bitmap[0].add(rs.getString("ip"));
+                });
+        if (current[0] != null) {
+            batch.add(toParams(current[0], bitmap[0].toBytes()));
+            total[0]++;
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(CREATE, batch.toArray(MapSqlParameterSource[]::new));
+        }
+        return total[0];
+    }
+
+    private void collectIps(String table, MapSqlParameterSource params, String uriFilter,
+                            Map<HitKey, IpBitmap> result) {
+        cursorJdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, " + IP_COLUMNS + " FROM (" +
+                "SELECT DISTINCT app_id, uri_id, ip FROM " + table +
+                " WHERE \"creation date\" >= :from AND \"creation date\" < :to" + uriFilter + ") AS s " +
+                DICTIONARY_JOIN, params, rs -> {
+                    add(result.computeIfAbsent(new HitKey(rs.getString("app"), rs.getString("uri")),
+                            key -> new IpBitmap()), rs);
+                });
+    }
+
+    private void collectSeriesIps(String table, MapSqlParameterSource params, String uriFilter,
+                                  Map<LocalDateTime, IpBitmap> result) {
+        jdbcTemplate.query("SELECT DISTINCT date_trunc('day', \"creation date\") AS bucket, " +
+                "host(ip) AS ip FROM " + table + " WHERE \"creation date\" >= :from " +
+                "AND \"creation date\" < :to" + uriFilter, params, rs -> {
+                    result.computeIfAbsent(rs.getTimestamp("bucket").toLocalDateTime(),
+                            key -> new IpBitmap()).add(rs.getString("ip"));
+                });
+    }
+
+    private void add(IpBitmap bitmap, ResultSet rs) throws SQLException {
+        long ip4 = rs.getLong("ip4");
+        if (rs.wasNull()) {
+            bitmap.add(rs.getString("ip6"));
+        } else {
+            bitmap.add((int) ip4);
+        }
+    }
+
+    private MapSqlParameterSource toParams(RollupKey key, byte[] bitmap) {
+        return new MapSqlParameterSource()
+                .addValue("uri", key.uriId())
+                .addValue("bucket", Timestamp.valueOf(key.bucket()))
+                .addValue("app", key.appId())
+                .addValue("bitmap", bitmap);
+    }
+}
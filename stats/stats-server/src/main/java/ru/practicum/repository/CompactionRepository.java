@@ -0,0 +1,115 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.RollupKey;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Репозиторий сжатия необработанных событий.
+ * Граница сжатия хранится единственной строкой таблицы statistics_compaction: события раньше границы
+ * учитываются только таблицами предагрегированной статистики, а их строки в statistics удаляются.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CompactionRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Метод возвращает границу сжатия или null, если события ещё не сжимались.
+     */
+    public LocalDateTime findWatermark() {
+        List<Timestamp> watermark = jdbcTemplate.getJdbcTemplate().queryForList(
+                "SELECT watermark FROM statistics_compaction WHERE id = 1", Timestamp.class);
+        return watermark.isEmpty() ? null : watermark.get(0).toLocalDateTime();
+    }
+
+    public void saveWatermark(LocalDateTime watermark) {
+        jdbcTemplate.update("INSERT INTO statistics_compaction (id, watermark) VALUES (1, :watermark) " +
+                "ON CONFLICT (id) DO UPDATE SET watermark = EXCLUDED.watermark",
+                new MapSqlParameterSource("watermark", Timestamp.valueOf(watermark)));
+    }
+
+    /**
+     * Метод ищет дни полуоткрытого диапазона [from, to), необработанных событий которых больше, чем
+     * обращений в statistics_day, то есть часть событий дня не учтена предагрегированной статистикой.
+     * События и агрегаты записываются одной транзакцией, поэтому обычно таких дней нет. Обратное расхождение
+     * означает, что события дня уже удалены сроком хранения секций, и сжатию не мешает.
+     *
+     * @param from начало диапазона, выровненное по дню.
+     * @param to   конец диапазона, выровненный по дню.
+     * @return начала дней в порядке возрастания.
+     */
+    public List<LocalDateTime> findUnfoldedDays(LocalDateTime from, LocalDateTime to) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        List<Timestamp> days = jdbcTemplate.queryForList("SELECT r.bucket FROM (" +
+                "SELECT date_trunc('day', \"creation date\") AS bucket, COUNT(*) AS hits FROM statistics " +
+                "WHERE \"creation date\" >= :from AND \"creation date\" < :to GROUP BY 1) AS r " +
+                "LEFT JOIN (SELECT bucket, SUM(hits) AS hits FROM statistics_day " +
+                "WHERE bucket >= :from AND bucket < :to GROUP BY bucket) AS d ON d.bucket = r.bucket " +
+                "WHERE d.hits IS NULL OR d.hits < r.hits ORDER BY r.bucket", params, Timestamp.class);
+        return days.stream().map(Timestamp::toLocalDateTime).toList();
+    }
+
+    /**
+     * Метод сравнивает необработанные события дня с statistics_minute и возвращает, сколько событий каждой
+     * минуты не учтено: разность количества событий и счётчика минуты, если она положительна.
+     *
+     * @param day начало дня.
+     * @return неучтённые обращения по ключам минут в порядке ключей.
+     */
+    public Map<RollupKey, Long> findUnfoldedMinutes(LocalDateTime day) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(day))
+                .addValue("to", Timestamp.valueOf(day.plusDays(1)));
+        Map<RollupKey, Long> result = new TreeMap<>();
+        jdbcTemplate.query("SELECT r.app_id, r.uri_id, r.bucket, r.hits - COALESCE(m.hits, 0) AS missing FROM (" +
+                "SELECT app_id, uri_id, date_trunc('minute', \"creation date\") AS bucket, COUNT(*) AS hits " +
+                "FROM statistics WHERE \"creation date\" >= :from AND \"creation date\" < :to " +
+                "GROUP BY 1, 2, 3) AS r LEFT JOIN statistics_minute m " +
+                "ON m.uri_id = r.uri_id AND m.bucket = r.bucket AND m.app_id = r.app_id " +
+                "WHERE r.hits > COALESCE(m.hits, 0)", params, rs -> {
+                    result.put(new RollupKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                            rs.getTimestamp("bucket").toLocalDateTime()), rs.getLong("missing"));
+                });
+        return result;
+    }
+
+    /**
+     * Метод добавляет события дня в очередь statistics_pending, чтобы AggregateFolder учёл их IP-адреса
+     * в скетчах и дневных множествах. Повторное добавление адреса в множество ничего не меняет.
+     *
+     * @param day начало дня.
+     * @return количество добавленных событий.
+     */
+    public int enqueueDay(LocalDateTime day) {
+        return jdbcTemplate.update("INSERT INTO " + PendingHitRepository.TABLE +
+                " (app_id, uri_id, ip, \"creation date\") SELECT app_id, uri_id, ip, \"creation date\" " +
+                "FROM statistics WHERE \"creation date\" >= :from AND \"creation date\" < :to",
+                new MapSqlParameterSource()
+                        .addValue("from", Timestamp.valueOf(day))
+                        .addValue("to", Timestamp.valueOf(day.plusDays(1))));
+    }
+
+    /**
+     * Метод удаляет не больше limit необработанных событий раньше момента before.
+     *
+     * @return количество удалённых событий.
+     */
+    public int deleteHits(LocalDateTime before, int limit) {
+        return jdbcTemplate.update("DELETE FROM statistics WHERE (id, \"creation date\") IN (" +
+                "SELECT id, \"creation date\" FROM statistics WHERE \"creation date\" < :before LIMIT :limit)",
+                new MapSqlParameterSource()
+                        .addValue("before", Timestamp.valueOf(before))
+                        .addValue("limit", limit));
+    }
+}
@@ -0,0 +1,58 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Шаблон запросов, читающих результат курсором порциями по stats.query.fetch-size строк.
+ * Драйвер PostgreSQL использует курсор только внутри транзакции, поэтому запросы нужно выполнять
+ * из транзакционного кода; иначе результат будет прочитан целиком. Запросы регистрируются в QueryContext потока,
+ * поэтому их можно отменить, если клиент отключился.
+ */
+@Component
+@RequiredArgsConstructor
+public class CursorJdbcTemplate {
+    private final DataSource dataSource;
+    @Value("${stats.query.fetch-size:1000}")
+    private int fetchSize;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    void init() {
+        JdbcTemplate template = new JdbcTemplate(dataSource) {
+            @Override
+            protected void applyStatementSettings(Statement stmt) throws SQLException {
+                super.applyStatementSettings(stmt);
+                QueryContext.register(stmt);
+            }
+        };
+        template.setFetchSize(fetchSize);
+        jdbcTemplate = new NamedParameterJdbcTemplate(template);
+    }
+
+    /**
+     * Метод выполняет запрос и построчно передаёт результат обработчику по мере чтения курсора.
+     *
+     * @param sql     запрос с именованными параметрами.
+     * @param params  параметры запроса.
+     * @param handler обработчик строки результата.
+     */
+    public void query(String sql, SqlParameterSource params, RowCallbackHandler handler) {
+        try {
+            jdbcTemplate.query(sql, params, handler);
+        } finally {
+            QueryContext.unregister();
+        }
+    }
+}
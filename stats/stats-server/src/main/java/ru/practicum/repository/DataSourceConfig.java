@@ -0,0 +1,65 @@
+package ru.practicum.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Раздельные пулы соединений для записи событий и для запросов статистики, чтобы долгие аналитические запросы
+ * не занимали соединения, нужные /hit. Основной источник данных выбирает пул при первом обращении к соединению:
+ * транзакции только для чтения (@Transactional(readOnly = true)) получают соединение из пула stats-query
+ * размером stats.query.pool-size, остальные — из пула stats-ingest с настройками spring.datasource.hikari.
+ * Пул stats-query дополнительно содержит stats.query.parallelism соединений для частей диапазона, которые
+ * PartitionedQueryExecutor читает параллельно, пока обращение удерживает своё соединение.
+ * Запрос, не получивший соединение из занятого пула stats-query за stats.query.connection-timeout-ms, завершается
+ * ответом 503 раньше, чем QueryWatchdog зафиксирует ответ, поэтому время ожидания должно быть меньше
+ * stats.query.heartbeat-ms, а размер пула — достаточным для обычного количества одновременных запросов.
+ * Пулы различаются по метрикам hikaricp.connections (тег pool) и по application_name в pg_stat_activity.
+ */
+@Configuration
+public class DataSourceConfig {
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource ingestDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = create(properties, "stats-ingest");
+        dataSource.setPoolName("stats-ingest");
+        return dataSource;
+    }
+
+    @Bean
+    public HikariDataSource queryDataSource(DataSourceProperties properties,
+                                            @Value("${stats.query.pool-size:16}") int poolSize,
+                                            @Value("${stats.query.parallelism:4}") int parallelism,
+                                            @Value("${stats.query.connection-timeout-ms:1000}")
+                                            long connectionTimeoutMs) {
+        HikariDataSource dataSource = create(properties, "stats-query");
+        dataSource.setPoolName("stats-query");
+        dataSource.setMaximumPoolSize(parallelism > 1 ? poolSize + parallelism : poolSize);
+        dataSource.setConnectionTimeout(connectionTimeoutMs);
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("ingestDataSource") DataSource ingestDataSource,
+                                 @Qualifier("queryDataSource") DataSource queryDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(ingestDataSource);
+        dataSource.setReadOnlyDataSource(queryDataSource);
+        return dataSource;
+    }
+
+    private HikariDataSource create(DataSourceProperties properties, String applicationName) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.addDataSourceProperty("ApplicationName", applicationName);
+        return dataSource;
+    }
+}
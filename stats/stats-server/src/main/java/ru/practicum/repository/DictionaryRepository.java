@@ -0,0 +1,66 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.function.BiConsumer;
+
+/**
+ * Репозиторий словарей приложений (statistics_app) и URI (statistics_uri).
+ * Таблицы статистики хранят вместо строк целочисленные ключи из этих словарей.
+ */
+@Repository
+@RequiredArgsConstructor
+public class DictionaryRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Метод передаёт получателю все записи словаря.
+     *
+     * @param dictionary словарь.
+     * @param consumer   получатель ключа и значения.
+     */
+    public void findAll(Dictionary dictionary, BiConsumer<Integer, String> consumer) {
+        jdbcTemplate.getJdbcTemplate().query("SELECT id, " + dictionary.column + " FROM " + dictionary.table,
+                rs -> {
+                    consumer.accept(rs.getInt(1), rs.getString(2));
+                });
+    }
+
+    /**
+     * Метод добавляет в словарь отсутствующие значения и передаёт получателю ключи всех переданных значений.
+     *
+     * @param dictionary словарь.
+     * @param values     значения.
+     * @param consumer   получатель ключа и значения.
+     */
+    public void saveAll(Dictionary dictionary, Collection<String> values, BiConsumer<Integer, String> consumer) {
+        jdbcTemplate.batchUpdate("INSERT INTO " + dictionary.table + " (" + dictionary.column + ") VALUES (:value) " +
+                "ON CONFLICT (" + dictionary.column + ") DO NOTHING", values.stream()
+                .map(value -> new MapSqlParameterSource("value", value))
+                .toArray(MapSqlParameterSource[]::new));
+        jdbcTemplate.query("SELECT id, " + dictionary.column + " FROM " + dictionary.table +
+                " WHERE " + dictionary.column + " IN (:values)", new MapSqlParameterSource("values", values), rs -> {
+                    consumer.accept(rs.getInt(1), rs.getString(2));
+                });
+    }
+
+    /**
+     * Словари статистики: таблица и столбец со значением.
+     */
+    public enum Dictionary {
+        APP("statistics_app", "name"),
+        URI("statistics_uri", "uri");
+
+        private final String table;
+        private final String column;
+
+        Dictionary(String table, String column) {
+            this.table = table;
+            this.column = column;
+        }
+    }
+}
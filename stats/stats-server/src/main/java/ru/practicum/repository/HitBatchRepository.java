@@ -0,0 +1,44 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.EndpointHit;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Репозиторий для пакетной записи событий в таблицу статистики.
+ * Приложение и URI записываются ключами словарей, поэтому перед записью события должны пройти через
+ * StatsDictionary.encode; IP-адрес хранится в столбце типа inet.
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitBatchRepository {
+    private static final String INSERT_HIT = "INSERT INTO statistics (app_id, uri_id, ip, \"creation date\") " +
+            "VALUES (?, ?, CAST(? AS inet), ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    @Value("${stats.ingest.jdbc-batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Метод сохраняет список событий JDBC-пакетами размером не более stats.ingest.jdbc-batch-size.
+     * Транзакцией управляет вызывающий код.
+     *
+     * @param hits список событий для сохранения.
+     */
+    public void saveAll(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, hit.getAppId());
+            ps.setInt(2, hit.getUriId());
+            ps.setString(3, hit.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+    }
+}
@@ -0,0 +1,94 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Репозиторий секций таблицы statistics.
+ * Таблица секционирована по диапазонам времени события средствами PostgreSQL; секции создаются и удаляются
+ * менеджером PartitionManager. События, для которых нет секции, записываются в секцию по умолчанию
+ * statistics_default, поэтому запись событий никогда не создаёт секции.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PartitionRepository {
+    public static final String DEFAULT_PARTITION = "statistics_default";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Метод проверяет, что таблица statistics создана как секционированная.
+     */
+    public boolean isPartitioned() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pg_partitioned_table " +
+                "WHERE partrelid = to_regclass('statistics')", Integer.class);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Метод возвращает имена секций, подключённых к таблице statistics.
+     */
+    public List<String> findPartitions() {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = 'statistics'::regclass", String.class);
+    }
+
+    /**
+     * Метод создаёт секцию для полуоткрытого диапазона [from, to). События диапазона, уже записанные в секцию
+     * по умолчанию, переносятся в новую секцию до её подключения: PostgreSQL не подключает секцию, пока в секции
+     * по умолчанию есть строки её диапазона. Должен вызываться внутри транзакции; ожидание блокировки таблицы
+     * ограничено, чтобы обслуживание секций не останавливало запись событий.
+     *
+     * @param name имя секции.
+     * @param from начало диапазона (включительно).
+     * @param to   конец диапазона (не включительно).
+     * @return количество событий, перенесённых из секции по умолчанию.
+     */
+    public int createPartition(String name, LocalDateTime from, LocalDateTime to) {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = '5s'");
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE statistics INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION +
+                " WHERE \"creation date\" >= ? AND \"creation date\" < ? RETURNING *) " +
+                "INSERT INTO " + name + " SELECT * FROM moved", Timestamp.valueOf(from), Timestamp.valueOf(to));
+        jdbcTemplate.execute(String.format("ALTER TABLE statistics ATTACH PARTITION %s " +
+                "FOR VALUES FROM ('%s') TO ('%s')", name, from, to));
+        return moved;
+    }
+
+    /**
+     * Метод удаляет из секции по умолчанию события раньше момента before.
+     *
+     * @return количество удалённых событий.
+     */
+    public int deleteDefaultBefore(LocalDateTime before) {
+        return jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE \"creation date\" < ?",
+                Timestamp.valueOf(before));
+    }
+
+    /**
+     * Метод отключает секцию от таблицы statistics, оставляя её данные в отдельной таблице.
+     * Отключённая таблица переименовывается, чтобы секцию с тем же диапазоном можно было создать снова.
+     *
+     * @param name имя секции.
+     */
+    public void detachPartition(String name) {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = '5s'");
+        jdbcTemplate.execute("ALTER TABLE statistics DETACH PARTITION " + name);
+        jdbcTemplate.execute("ALTER TABLE " + name + " RENAME TO " + name + "_detached_" + System.currentTimeMillis());
+    }
+
+    /**
+     * Метод удаляет секцию вместе с данными.
+     *
+     * @param name имя секции.
+     */
+    public void dropPartition(String name) {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = '5s'");
+        jdbcTemplate.execute("DROP TABLE " + name);
+    }
+}
@@ -0,0 +1,61 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.EndpointHit;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Репозиторий событий, ещё не учтённых в скетчах и множествах уникальных IP-адресов (statistics_pending).
+ * HitWriter добавляет в таблицу события той же транзакцией, в которой сохраняет их, а AggregateFolder забирает
+ * их пачками и объединяет со скетчами и множествами. Таблица только пополняется и очищается, поэтому запись
+ * событий не ждёт блокировок строк скетчей популярных URI.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PendingHitRepository {
+    public static final String TABLE = "statistics_pending";
+    private static final String INSERT_HIT = "INSERT INTO " + TABLE + " (app_id, uri_id, ip, \"creation date\") " +
+            "VALUES (?, ?, CAST(? AS inet), ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    @Value("${stats.ingest.jdbc-batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Метод добавляет события в очередь. Транзакцией управляет вызывающий код.
+     */
+    public void saveAll(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, hit.getAppId());
+            ps.setInt(2, hit.getUriId());
+            ps.setString(3, hit.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+    }
+
+    /**
+     * Метод удаляет из очереди и возвращает не больше limit самых старых событий. Строки, которые забирает
+     * другая транзакция, пропускаются. Должен вызываться внутри транзакции, в которой события учитываются
+     * в агрегатах.
+     *
+     * @return события с ключами словарей и IP-адресом в каноническом текстовом виде.
+     */
+    public List<EndpointHit> take(int limit) {
+        return jdbcTemplate.query("DELETE FROM " + TABLE + " WHERE id IN (SELECT id FROM " + TABLE +
+                " ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                "RETURNING app_id, uri_id, host(ip) AS ip, \"creation date\"", (rs, rowNum) -> EndpointHit.builder()
+                .appId(rs.getInt("app_id"))
+                .uriId(rs.getInt("uri_id"))
+                .ip(rs.getString("ip"))
+                .timestamp(rs.getTimestamp("creation date").toLocalDateTime())
+                .build(), limit);
+    }
+}
@@ -0,0 +1,122 @@
+package ru.practicum.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Контекст запросов чтения одного обращения к сервису, позволяющий отменить их из другого потока, например
+ * когда клиент отключился, не дождавшись ответа. Запросы CursorJdbcTemplate, выполняемые потоком внутри run,
+ * регистрируются в контексте; cancel прерывает выполняющиеся запросы (Statement.cancel), а следующие запросы
+ * контекста завершаются ошибкой до отправки в базу данных. Запросы, которые обращение выполняет в других потоках,
+ * связываются с дочерним контекстом (fork): отмена родителя отменяет и его.
+ */
+@Slf4j
+public final class QueryContext {
+    /**
+     * Код SQLSTATE, с которым PostgreSQL завершает отменённый запрос.
+     */
+    static final String QUERY_CANCELED = "57014";
+    private static final ThreadLocal<QueryContext> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<Statement> STATEMENT = new ThreadLocal<>();
+
+    private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+    private final Set<QueryContext> children = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    /**
+     * Метод возвращает контекст, связанный с потоком, или null.
+     */
+    public static QueryContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Метод создаёт дочерний контекст, который отменяется вместе с этим. Дочерний контекст нужно закрыть (close),
+     * когда его запросы завершены.
+     */
+    public QueryContext fork() {
+        QueryContext child = new QueryContext();
+        children.add(child);
+        if (cancelled) {
+            child.cancel();
+        }
+        return child;
+    }
+
+    /**
+     * Метод отвязывает дочерний контекст от родителя.
+     */
+    public void close(QueryContext child) {
+        children.remove(child);
+    }
+
+    /**
+     * Метод выполняет действие, связав с контекстом запросы, которые поток выполнит внутри него.
+     */
+    public <E extends Exception> void run(Action<E> action) throws E {
+        QueryContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            action.run();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Метод отменяет выполняющийся и все последующие запросы контекста.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Statement statement : statements) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                log.debug("Не удалось отменить запрос: {}", e.getMessage());
+            }
+        }
+        children.forEach(QueryContext::cancel);
+    }
+
+    /**
+     * Метод регистрирует запрос, который поток собирается выполнить, в контексте потока, если он есть.
+     *
+     * @throws SQLException с кодом QUERY_CANCELED, если контекст уже отменён.
+     */
+    static void register(Statement statement) throws SQLException {
+        QueryContext context = CURRENT.get();
+        if (context == null) {
+            return;
+        }
+        context.statements.add(statement);
+        STATEMENT.set(statement);
+        if (context.cancelled) {
+            throw new SQLException("Запрос отменён", QUERY_CANCELED);
+        }
+    }
+
+    /**
+     * Метод снимает с регистрации запрос, выполнение которого поток завершил.
+     */
+    static void unregister() {
+        QueryContext context = CURRENT.get();
+        Statement statement = STATEMENT.get();
+        if (context != null && statement != null) {
+            context.statements.remove(statement);
+        }
+        STATEMENT.remove();
+    }
+
+    @FunctionalInterface
+    public interface Action<E extends Exception> {
+        void run() throws E;
+    }
+}
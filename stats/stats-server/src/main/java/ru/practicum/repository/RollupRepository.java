@@ -0,0 +1,170 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.RollupKey;
+import ru.practicum.model.RollupResolution;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.model.UriFilter;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Репозиторий таблиц предагрегированной статистики (statistics_minute, statistics_hour, statistics_day).
+ * Таблицы пополняются при записи событий, а запросы статистики собирают ответ из самых крупных интервалов,
+ * дочитывая необработанные события только на неровных краях диапазона.
+ */
+@Repository
+@RequiredArgsConstructor
+public class RollupRepository {
+    private static final String INCREMENT = "INSERT INTO %1$s AS r (uri_id, bucket, app_id, hits) " +
+            "VALUES (:uri, :bucket, :app, :hits) " +
+            "ON CONFLICT (uri_id, bucket, app_id) DO UPDATE SET hits = r.hits + EXCLUDED.hits";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CursorJdbcTemplate cursorJdbcTemplate;
+
+    /**
+     * Метод увеличивает счётчики обращений в таблице указанного разрешения.
+     *
+     * @param resolution разрешение таблицы.
+     * @param counts     прирост количества обращений по ключам; ключи должны быть упорядочены.
+     */
+    public void increment(RollupResolution resolution, Map<RollupKey, Long> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] batch = counts.entrySet().stream()
+                .map(entry -> new MapSqlParameterSource()
+                        .addValue("uri", entry.getKey().uriId())
+                        .addValue("bucket", Timestamp.valueOf(entry.getKey().bucket()))
+                        .addValue("app", entry.getKey().appId())
+                        .addValue("hits", entry.getValue()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(String.format(INCREMENT, resolution.getTable()), batch);
+    }
+
+    /**
+     * Метод считает количество обращений по интервалам плана одним запросом и передаёт строки результата
+     * получателю по мере чтения курсора, в порядке убывания количества обращений.
+     *
+     * @param segments интервалы, на которые разбит запрошенный диапазон.
+     * @param filter   условие отбора URI.
+     * @param limit    наибольшее количество строк результата; null — без ограничения.
+     * @param consumer получатель пары (app, uri) и количества обращений.
+     */
+    public void findHits(List<TimeSegment> segments, UriFilter filter, Integer limit,
+                         BiConsumer<HitKey, Long> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String uriFilter = UriFilterSql.where(filter, params);
+        List<String> parts = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            TimeSegment segment = segments.get(i);
+            params.addValue("from" + i, Timestamp.valueOf(segment.from()));
+            params.addValue("to" + i, Timestamp.valueOf(segment.to()));
+            if (segment.resolution() == null) {
+                parts.add("SELECT app_id, uri_id, COUNT(*) AS hits FROM statistics " +
+                        "WHERE \"creation date\" >= :from" + i + " AND \"creation date\" < :to" + i + uriFilter +
+                        " GROUP BY app_id, uri_id");
+            } else {
+                parts.add("SELECT app_id, uri_id, hits FROM " + segment.resolution().getTable() +
+                        " WHERE bucket >= :from" + i + " AND bucket < :to" + i + uriFilter);
+            }
+        }
+        String sql = "SELECT a.name AS app, u.uri AS uri, s.hits FROM (" +
+                "SELECT app_id, uri_id, CAST(SUM(hits) AS BIGINT) AS hits FROM (" + String.join(" UNION ALL ", parts) +
+                ") AS segments GROUP BY app_id, uri_id" + limit(limit, params) + ") AS s " +
+                "JOIN statistics_app a ON a.id = s.app_id JOIN statistics_uri u ON u.id = s.uri_id ORDER BY s.hits DESC";
+        cursorJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(new HitKey(rs.getString("app"), rs.getString("uri")), rs.getLong("hits"));
+        });
+    }
+
+    /**
+     * Метод считает временной ряд количества обращений одним запросом: интервалы плана с разрешением resolution
+     * читаются из таблицы этого разрешения, края диапазона — из необработанных событий с группировкой
+     * по date_trunc. Значения передаются получателю в порядке возрастания времени; интервалы без обращений
+     * не передаются.
+     *
+     * @param segments   интервалы, на которые разбит запрошенный диапазон по таблице разрешения resolution.
+     * @param resolution длина интервала временного ряда.
+     * @param filter     условие отбора URI.
+     * @param consumer   получатель начала интервала и количества обращений.
+     */
+    public void findSeries(List<TimeSegment> segments, RollupResolution resolution, UriFilter filter,
+                           BiConsumer<LocalDateTime, Long> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String uriFilter = UriFilterSql.where(filter, params);
+        List<String> parts = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            TimeSegment segment = segments.get(i);
+            params.addValue("from" + i, Timestamp.valueOf(segment.from()));
+            params.addValue("to" + i, Timestamp.valueOf(segment.to()));
+            if (segment.resolution() == null) {
+                parts.add("SELECT date_trunc('" + resolution.getTruncField() + "', \"creation date\") AS bucket, " +
+                        "COUNT(*) AS hits FROM statistics WHERE \"creation date\" >= :from" + i +
+                        " AND \"creation date\" < :to" + i + uriFilter + " GROUP BY 1");
+            } else {
+                parts.add("SELECT bucket, hits FROM " + segment.resolution().getTable() +
+                        " WHERE bucket >= :from" + i + " AND bucket < :to" + i + uriFilter);
+            }
+        }
+        String sql = "SELECT bucket, CAST(SUM(hits) AS BIGINT) AS hits FROM (" + String.join(" UNION ALL ", parts) +
+                ") AS segments GROUP BY bucket ORDER BY bucket";
+        cursorJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits"));
+        });
+    }
+
+    /**
+     * Метод построчно передаёт получателю все строки таблицы указанного разрешения.
+     *
+     * @param resolution разрешение таблицы.
+     * @param consumer   получатель ключа строки и количества обращений.
+     */
+    public void scan(RollupResolution resolution, BiConsumer<RollupKey, Long> consumer) {
+        scan(resolution, LocalDateTime.of(1, 1, 1, 0, 0), consumer);
+    }
+
+    /**
+     * Метод построчно передаёт получателю строки таблицы указанного разрешения, начиная с интервала from.
+     *
+     * @param resolution разрешение таблицы.
+     * @param from       начало первого интервала (включительно).
+     * @param consumer   получатель ключа строки и количества обращений.
+     */
+    public void scan(RollupResolution resolution, LocalDateTime from, BiConsumer<RollupKey, Long> consumer) {
+        String sql = "SELECT app_id, uri_id, bucket, hits FROM " + resolution.getTable() + " WHERE bucket >= :from";
+        cursorJdbcTemplate.query(sql, new MapSqlParameterSource("from", Timestamp.valueOf(from)), rs -> {
+            consumer.accept(new RollupKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                    rs.getTimestamp("bucket").toLocalDateTime()), rs.getLong("hits"));
+        });
+    }
+
+    /**
+     * Метод возвращает интервал от начала самого раннего до конца самого позднего интервала таблицы указанного
+     * разрешения или null, если таблица пуста.
+     */
+    public TimeSegment findBounds(RollupResolution resolution) {
+        return jdbcTemplate.getJdbcTemplate().queryForObject("SELECT MIN(bucket) AS first, MAX(bucket) AS last FROM " +
+                resolution.getTable(), (rs, rowNum) -> rs.getTimestamp("first") == null ? null
+                : new TimeSegment(resolution, rs.getTimestamp("first").toLocalDateTime(),
+                resolution.ceil(rs.getTimestamp("last").toLocalDateTime().plusSeconds(1))));
+    }
+
+    private static String limit(Integer limit, MapSqlParameterSource params) {
+        if (limit == null) {
+            return "";
+        }
+        params.addValue("limit", limit);
+        return " ORDER BY hits DESC, app_id, uri_id LIMIT :limit";
+    }
+}
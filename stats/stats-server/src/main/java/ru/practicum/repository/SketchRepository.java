@@ -0,0 +1,127 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.RollupKey;
+import ru.practicum.model.RollupResolution;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.model.UriFilter;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Репозиторий скетчей уникальных IP-адресов (statistics_sketch_hour, statistics_sketch_day).
+ * Скетч хранится для каждой тройки (uri, интервал, app) и пополняется AggregateFolder из очереди
+ * statistics_pending; при чтении скетчи интервалов объединяются с событиями очереди, а неровные края диапазона
+ * дочитываются из необработанных событий.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SketchRepository {
+    private static final int LOCK_CHUNK = 500;
+    private static final byte[] EMPTY_SKETCH = new HyperLogLog().toBytes();
+    private static final String CREATE = "INSERT INTO %1$s (uri_id, bucket, app_id, sketch) " +
+            "VALUES (:uri, :bucket, :app, :sketch) ON CONFLICT (uri_id, bucket, app_id) DO NOTHING";
+    private static final String LOCK = "SELECT uri_id, bucket, app_id, sketch FROM %1$s " +
+            "WHERE (uri_id, bucket, app_id) IN (:keys) ORDER BY uri_id, bucket, app_id FOR UPDATE";
+    private static final String UPDATE = "UPDATE %1$s SET sketch = :sketch " +
+            "WHERE uri_id = :uri AND bucket = :bucket AND app_id = :app";
+    private static final String DICTIONARY_JOIN =
+            "JOIN statistics_app a ON a.id = s.app_id JOIN statistics_uri u ON u.id = s.uri_id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Метод объединяет скетчи пачки событий с сохранёнными скетчами.
+     * Недостающие строки создаются пустыми, затем строки блокируются в порядке первичного ключа, объединяются
+     * в памяти и перезаписываются, только если скетч изменился. Должен вызываться внутри транзакции.
+     *
+     * @param resolution разрешение таблицы; должно иметь таблицу скетчей.
+     * @param sketches   скетчи пачки по ключам; ключи должны быть упорядочены.
+     */
+    public void merge(RollupResolution resolution, Map<RollupKey, HyperLogLog> sketches) {
+        if (sketches.isEmpty()) {
+            return;
+        }
+        String table = resolution.getSketchTable();
+        jdbcTemplate.batchUpdate(String.format(CREATE, table), sketches.keySet().stream()
+                .map(key -> toParams(key, EMPTY_SKETCH))
+                .toArray(MapSqlParameterSource[]::new));
+        List<RollupKey> keys = new ArrayList<>(sketches.keySet());
+        List<MapSqlParameterSource> updates = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += LOCK_CHUNK) {
+            List<Object[]> chunk = keys.subList(from, Math.min(from + LOCK_CHUNK, keys.size())).stream()
+                    .map(key -> new Object[]{key.uriId(), Timestamp.valueOf(key.bucket()), key.appId()})
+                    .toList();
+            jdbcTemplate.query(String.format(LOCK, table), new MapSqlParameterSource("keys", chunk), rs -> {
+                RollupKey key = new RollupKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                        rs.getTimestamp("bucket").toLocalDateTime());
+                HyperLogLog stored = HyperLogLog.fromBytes(rs.getBytes("sketch"));
+                if (stored.merge(sketches.get(key))) {
+                    updates.add(toParams(key, stored.toBytes()));
+                }
+            });
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(String.format(UPDATE, table), updates.toArray(MapSqlParameterSource[]::new));
+        }
+    }
+
+    /**
+     * Метод собирает скетчи уникальных IP-адресов по интервалам плана.
+     *
+     * @param segments интервалы плана; интервалы с разрешением читаются из таблиц скетчей, остальные из событий.
+     * @param filter   условие отбора URI.
+     * @return объединённые скетчи по парам (app, uri).
+     */
+    public Map<HitKey, HyperLogLog> collect(List<TimeSegment> segments, UriFilter filter) {
+        Map<HitKey, HyperLogLog> result = new HashMap<>();
+        for (TimeSegment segment : segments) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("from", Timestamp.valueOf(segment.from()))
+                    .addValue("to", Timestamp.valueOf(segment.to()));
+            String uriFilter = UriFilterSql.where(filter, params);
+            if (segment.resolution() == null) {
+                collectIps("statistics", params, uriFilter, result);
+            } else {
+                // Очередь читается раньше скетчей: событие, учтённое AggregateFolder между чтениями,
+                // попадёт в результат хотя бы одним из них.
+                collectIps(PendingHitRepository.TABLE, params, uriFilter, result);
+                jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, s.sketch FROM " +
+                        segment.resolution().getSketchTable() + " AS s " + DICTIONARY_JOIN +
+                        " WHERE s.bucket >= :from AND s.bucket < :to" + uriFilter, params, rs -> {
+                            result.computeIfAbsent(new HitKey(rs.getString("app"), rs.getString("uri")),
+                                    key -> new HyperLogLog()).merge(rs.getBytes("sketch"));
+                        });
+            }
+        }
+        return result;
+    }
+
+    private void collectIps(String table, MapSqlParameterSource params, String uriFilter,
+                            Map<HitKey, HyperLogLog> result) {
+        jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, host(s.ip) AS ip FROM (" +
+                "SELECT DISTINCT app_id, uri_id, ip FROM " + table +
+                " WHERE \"creation date\" >= :from AND \"creation date\" < :to" + uriFilter + ") AS s " +
+                DICTIONARY_JOIN, params, rs -> {
+                    result.computeIfAbsent(new HitKey(rs.getString("app"), rs.getString("uri")),
+                            key -> new HyperLogLog()).addIp(rs.getString("ip"));
+                });
+    }
+
+    private MapSqlParameterSource toParams(RollupKey key, byte[] sketch) {
+        return new MapSqlParameterSource()
+                .addValue("uri", key.uriId())
+                .addValue("bucket", Timestamp.valueOf(key.bucket()))
+                .addValue("app", key.appId())
+                .addValue("sketch", sketch);
+    }
+}
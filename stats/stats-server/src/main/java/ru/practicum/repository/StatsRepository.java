@@ -1,36 +1,161 @@
 package ru.practicum.repository;
 
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
 import ru.practicum.model.EndpointHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.RollupResolution;
+import ru.practicum.model.UriFilter;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Map;
-
-public interface StatsRepository extends JpaRepository<EndpointHit, Integer> {
-    @Query("SELECT new map(hit.app as app,hit.uri as uri, (CASE :unique WHEN true THEN COUNT(DISTINCT hit.ip) " +
-            "ELSE COUNT(hit.ip) END) as hits)" +
-            "FROM EndpointHit AS hit " +
-            "WHERE hit.uri IN :uris AND hit.timestamp BETWEEN :start AND :end " +
-            "GROUP BY hit.app, hit.uri " +
-            "ORDER BY (CASE :unique " +
-            "WHEN true THEN COUNT(DISTINCT hit.ip)" +
-            "ELSE COUNT(hit.ip) END) DESC")
-    List<Map<String, Object>> findAllElementsWithUris(LocalDateTime start, LocalDateTime end, List<String> uris,
-                                                      Boolean unique);
-
-    @Query("SELECT new map(hit.app as app,hit.uri as uri, (CASE :unique " +
-            "        WHEN true THEN COUNT(DISTINCT hit.ip) " +
-            "        ELSE COUNT(hit.ip) END) as hits)" +
-            "FROM EndpointHit hit " +
-            "WHERE hit.timestamp BETWEEN :start AND :end " +
-            "GROUP BY hit.app, hit.uri " +
-            "ORDER BY (CASE :unique " +
-            "WHEN true THEN COUNT(DISTINCT hit.ip)" +
-            "ELSE COUNT(hit.ip) END) DESC")
-    List<Map<String, Object>> findAllElements(LocalDateTime start, LocalDateTime end, Boolean unique);
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-}
+/**
+ * Репозиторий необработанных событий таблицы statistics.
+ * События хранят ключи словарей statistics_app и statistics_uri, поэтому подсчёт ведётся по ключам,
+ * а строки приложения и URI подставляются соединением со словарями уже после группировки.
+ */
+@Repository
+@RequiredArgsConstructor
+public class StatsRepository {
+    private static final String FIND_HITS = "SELECT a.name AS app, u.uri AS uri, s.hits FROM (" +
+            "SELECT app_id, uri_id, %1$s AS hits FROM statistics " +
+            "WHERE \"creation date\" BETWEEN :start AND :end%2$s GROUP BY app_id, uri_id%3$s) AS s " +
+            "JOIN statistics_app a ON a.id = s.app_id JOIN statistics_uri u ON u.id = s.uri_id " +
+            "ORDER BY s.hits DESC";
+    private static final String FIND_GROUPED_HITS = "SELECT a.name AS app, s.uri, s.hits FROM (" +
+            "SELECT st.app_id, g.uri, %1$s AS hits FROM statistics st " +
+            "JOIN (SELECT id, %2$s AS uri FROM statistics_uri WHERE %3$s) AS g ON g.id = st.uri_id " +
+            "WHERE st.\"creation date\" BETWEEN :start AND :end GROUP BY st.app_id, g.uri) AS s " +
+            "JOIN statistics_app a ON a.id = s.app_id ORDER BY s.hits DESC";
+    private static final Pattern PLAN_ROWS = Pattern.compile("\"Plan Rows\":\\s*(\\d+)");
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CursorJdbcTemplate cursorJdbcTemplate;
+
+    /**
+     * Метод считает обращения к URI, подходящим под условие. При группировке по сегменту пути URI, подходящие
+     * под префикс условия, объединяются по UriFilter.group, а уникальные IP-адреса считаются по всей группе.
+     */
+    public void findAllElementsWithUris(LocalDateTime start, LocalDateTime end, UriFilter filter, Boolean unique,
+                                        boolean groupBySegment, BiConsumer<HitKey, Long> consumer) {
+        if (!groupBySegment || filter.prefixes().isEmpty()) {
+            findHits(start, end, filter, unique, null, consumer);
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        String sql = String.format(FIND_GROUPED_HITS, count(unique), UriFilterSql.group(filter, params),
+                UriFilterSql.condition(filter, params));
+        cursorJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(new HitKey(rs.getString("app"), rs.getString("uri")), rs.getLong("hits"));
+        });
+    }
+
+    public void findAllElements(LocalDateTime start, LocalDateTime end, Boolean unique,
+                                BiConsumer<HitKey, Long> consumer) {
+        findHits(start, end, UriFilter.ALL, unique, null, consumer);
+    }
+
+    /**
+     * Метод передаёт получателю не более limit пар (app, uri) с наибольшим количеством обращений.
+     */
+    public void findTop(LocalDateTime start, LocalDateTime end, UriFilter filter, Boolean unique, int limit,
+                        BiConsumer<HitKey, Long> consumer) {
+        findHits(start, end, filter, unique, limit, consumer);
+    }
+
+    /**
+     * Метод передаёт получателю необработанные события начиная с момента from по мере чтения курсора.
+     * У событий заполнены только ключи приложения и URI, IP-адрес и время.
+     */
+    public void scan(LocalDateTime from, Consumer<EndpointHit> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource("from", Timestamp.valueOf(from));
+        cursorJdbcTemplate.query("SELECT app_id, uri_id, host(ip) AS ip, \"creation date\" FROM statistics " +
+                "WHERE \"creation date\" >= :from", params, rs -> {
+            consumer.accept(EndpointHit.builder()
+                    .appId(rs.getInt("app_id"))
+                    .uriId(rs.getInt("uri_id"))
+                    .ip(rs.getString("ip"))
+                    .timestamp(rs.getTimestamp("creation date").toLocalDateTime())
+                    .build());
+        });
+    }
 
+    /**
+     * Метод считает временной ряд количества уникальных IP-адресов по необработанным событиям полуоткрытого
+     * диапазона [from, to) с группировкой по date_trunc и передаёт значения получателю в порядке возрастания
+     * времени. Адрес учитывается в интервале один раз, сколько бы URI и приложений он ни посетил.
+     *
+     * @param resolution длина интервала временного ряда.
+     * @param filter     условие отбора URI.
+     * @param consumer   получатель начала интервала и количества уникальных IP-адресов.
+     */
+    public void findUniqueSeries(LocalDateTime from, LocalDateTime to, RollupResolution resolution, UriFilter filter,
+                                 BiConsumer<LocalDateTime, Long> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = "SELECT date_trunc('" + resolution.getTruncField() + "', \"creation date\") AS bucket, " +
+                "COUNT(DISTINCT ip) AS hits FROM statistics WHERE \"creation date\" >= :from " +
+                "AND \"creation date\" < :to" + UriFilterSql.where(filter, params) + " GROUP BY 1 ORDER BY 1";
+        cursorJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits"));
+        });
+    }
 
+    /**
+     * Метод возвращает оценку планировщика PostgreSQL количества событий полуоткрытого диапазона [from, to)
+     * с URI, подходящими под условие. Запрос к событиям не выполняется, поэтому оценка получается быстро
+     * при любом размере диапазона.
+     */
+    public long estimateHits(LocalDateTime from, LocalDateTime to, UriFilter filter) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String plan = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) SELECT 1 FROM statistics " +
+                "WHERE \"creation date\" >= :from AND \"creation date\" < :to" + UriFilterSql.where(filter, params),
+                params, String.class);
+        Matcher matcher = PLAN_ROWS.matcher(plan);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    public LocalDateTime findMinTimestamp() {
+        return findTimestamp("MIN");
+    }
+
+    /**
+     * Метод считает обращения по необработанным событиям и передаёт строки результата получателю по мере чтения
+     * курсора, в порядке убывания количества обращений.
+     */
+    private void findHits(LocalDateTime start, LocalDateTime end, UriFilter filter, Boolean unique, Integer limit,
+                          BiConsumer<HitKey, Long> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("limit", limit);
+        String sql = String.format(FIND_HITS, count(unique),
+                UriFilterSql.where(filter, params),
+                limit != null ? " ORDER BY hits DESC, app_id, uri_id LIMIT :limit" : "");
+        cursorJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(new HitKey(rs.getString("app"), rs.getString("uri")), rs.getLong("hits"));
+        });
+    }
+
+    private String count(Boolean unique) {
+        return Boolean.TRUE.equals(unique) ? "COUNT(DISTINCT ip)" : "COUNT(*)";
+    }
+
+    private LocalDateTime findTimestamp(String function) {
+        Timestamp timestamp = jdbcTemplate.getJdbcTemplate().queryForObject(
+                "SELECT " + function + "(\"creation date\") FROM statistics", Timestamp.class);
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.practicum.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import ru.practicum.model.UriFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Построение условий по словарю statistics_uri для запросов к таблицам статистики.
+ * Префикс превращается в диапазон uri >= префикс AND uri < UriFilter.prefixEnd(префикс). Столбец uri использует
+ * сопоставление "C", поэтому такой диапазон читается по индексу и совпадает с отбором по началу строки.
+ */
+final class UriFilterSql {
+    private UriFilterSql() {
+    }
+
+    /**
+     * Метод возвращает условие по uri_id для добавления к WHERE (начинается с " AND ") или пустую строку
+     * и добавляет нужные параметры.
+     *
+     * @param filter условие отбора URI.
+     * @param params параметры запроса.
+     */
+    static String where(UriFilter filter, MapSqlParameterSource params) {
+        if (filter.isAll()) {
+            return "";
+        }
+        return " AND uri_id IN (SELECT id FROM statistics_uri WHERE " + condition(filter, params) + ")";
+    }
+
+    /**
+     * Метод возвращает условие по столбцу uri словаря statistics_uri и добавляет нужные параметры.
+     */
+    static String condition(UriFilter filter, MapSqlParameterSource params) {
+        if (filter.isAll()) {
+            return "TRUE";
+        }
+        List<String> conditions = new ArrayList<>();
+        if (filter.uris() != null && !filter.uris().isEmpty()) {
+            params.addValue("uris", filter.uris());
+            conditions.add("uri IN (:uris)");
+        }
+        for (int i = 0; i < filter.prefixes().size(); i++) {
+            conditions.add(prefixCondition(filter.prefixes().get(i), i, params));
+        }
+        return conditions.isEmpty() ? "FALSE" : String.join(" OR ", conditions);
+    }
+
+    /**
+     * Метод возвращает выражение группы URI при группировке по сегменту пути, совпадающее с UriFilter.group.
+     *
+     * @param filter условие отбора URI.
+     * @param params параметры запроса.
+     */
+    static String group(UriFilter filter, MapSqlParameterSource params) {
+        if (filter.prefixes().isEmpty()) {
+            return "uri";
+        }
+        StringBuilder sql = new StringBuilder("CASE");
+        for (int i = 0; i < filter.prefixes().size(); i++) {
+            sql.append(" WHEN ").append(prefixCondition(filter.prefixes().get(i), i, params))
+                    .append(" THEN :prefixFrom").append(i)
+                    .append(" || split_part(substr(uri, char_length(:prefixFrom").append(i).append(") + 1), '/', 1)");
+        }
+        return sql.append(" ELSE uri END").toString();
+    }
+
+    private static String prefixCondition(String prefix, int index, MapSqlParameterSource params) {
+        params.addValue("prefixFrom" + index, prefix);
+        if (prefix.isEmpty()) {
+            return "uri >= :prefixFrom" + index;
+        }
+        params.addValue("prefixTo" + index, UriFilter.prefixEnd(prefix));
+        return "(uri >= :prefixFrom" + index + " AND uri < :prefixTo" + index + ")";
+    }
+}
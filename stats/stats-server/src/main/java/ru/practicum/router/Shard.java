@@ -0,0 +1,147 @@
+package ru.practicum.router;
+
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.HitBatchResultDto;
+import ru.practicum.dto.HitCodec;
+import ru.practicum.dto.StatsViewDto;
+import ru.practicum.dto.TimeSeriesPointDto;
+import ru.practicum.exception.BadParametersException;
+import ru.practicum.exception.ShardUnavailableException;
+import ru.practicum.model.StatsPrecision;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Узел статистики, которому маршрутизатор передаёт события и запросы по HTTP. События передаются в формате
+ * HitCodec. Ответ узла с кодом 4xx означает, что некорректен сам запрос, и возвращается клиенту ответом 400;
+ * остальные ошибки означают недоступность узла (ShardUnavailableException, ответ 503).
+ */
+public class Shard {
+    private static final MediaType HITS = MediaType.parseMediaType(HitCodec.MEDIA_TYPE);
+
+    private final String url;
+    private final RestClient client;
+
+    Shard(String url, RestClient client) {
+        this.url = url;
+        this.client = client;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Метод передаёт узлу пакет событий.
+     *
+     * @return результат сохранения; номера отклонённых записей относятся к переданному пакету.
+     */
+    public HitBatchResultDto postHits(List<EndpointHitDto> hits) {
+        return call(() -> client.post()
+                .uri(uri("/hit/batch", new LinkedMultiValueMap<>()))
+                .contentType(HITS)
+                .body(HitCodec.encode(hits))
+                .retrieve()
+                .body(HitBatchResultDto.class));
+    }
+
+    public List<StatsViewDto> getStatistics(String start, String end, List<String> uris, Boolean unique,
+                                            StatsPrecision precision, Boolean groupBySegment) {
+        MultiValueMap<String, String> params = range(start, end);
+        if (uris != null) {
+            params.addAll("uris", uris);
+        }
+        params.add("unique", String.valueOf(unique));
+        params.add("precision", precision.name());
+        params.add("groupBySegment", String.valueOf(groupBySegment));
+        return rows("/stats", params);
+    }
+
+    public List<StatsViewDto> getTop(String start, String end, Integer limit, String prefix, Boolean unique,
+                                     StatsPrecision precision) {
+        MultiValueMap<String, String> params = range(start, end);
+        params.add("limit", String.valueOf(limit));
+        if (prefix != null) {
+            params.add("prefix", prefix);
+        }
+        params.add("unique", String.valueOf(unique));
+        params.add("precision", precision.name());
+        return rows("/stats/top", params);
+    }
+
+    public List<TimeSeriesPointDto> getTimeSeries(String uri, String start, String end, String bucket,
+                                                  Boolean unique) {
+        MultiValueMap<String, String> params = range(start, end);
+        params.add("uri", uri);
+        params.add("bucket", bucket);
+        params.add("unique", String.valueOf(unique));
+        TimeSeriesPointDto[] points = call(() -> client.get()
+                .uri(uri("/stats/timeseries", params))
+                .retrieve()
+                .body(TimeSeriesPointDto[].class));
+        return points == null ? List.of() : List.of(points);
+    }
+
+    public List<StatsViewDto> getTrending(String window, Integer limit, String prefix) {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("window", window);
+        params.add("limit", String.valueOf(limit));
+        if (prefix != null) {
+            params.add("prefix", prefix);
+        }
+        return rows("/stats/trending", params);
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+
+    private List<StatsViewDto> rows(String path, MultiValueMap<String, String> params) {
+        StatsViewDto[] rows = call(() -> client.get()
+                .uri(uri(path, params))
+                .retrieve()
+                .body(StatsViewDto[].class));
+        return rows == null ? List.of() : List.of(rows);
+    }
+
+    private MultiValueMap<String, String> range(String start, String end) {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("start", start);
+        params.add("end", end);
+        return params;
+    }
+
+    /**
+     * Метод строит адрес запроса к узлу; значения параметров кодируются целиком, поэтому URI со знаками
+     * & или + передаются без искажений.
+     */
+    private URI uri(String path, MultiValueMap<String, String> params) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(url).path(path);
+        params.forEach((name, values) -> values.forEach(value ->
+                builder.queryParam(name, UriUtils.encode(value, StandardCharsets.UTF_8))));
+        return builder.build(true).toUri();
+    }
+
+    private <T> T call(Supplier<T> request) {
+        try {
+            return request.get();
+        } catch (HttpClientErrorException e) {
+            throw new BadParametersException("Узел " + url + " отклонил запрос: " + e.getStatusCode() + " " +
+                    e.getResponseBodyAsString());
+        } catch (RestClientException e) {
+            throw new ShardUnavailableException("Узел " + url + " недоступен: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package ru.practicum.router;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+/**
+ * Маршрутизация событий и запросов статистики по узлам stats.router.shards (режим stats.storage=router).
+ * Список узлов задаётся статически и одинаков на всех маршрутизаторах, поэтому согласовывать его не нужно:
+ * URI принадлежит узлу с номером CRC32C(uri) по модулю количества узлов. При изменении списка узлов часть URI
+ * меняет владельца, а уже записанные события остаются на прежних узлах и перестают учитываться, поэтому список
+ * меняется только вместе с переносом данных.
+ * Запросы к нескольким узлам выполняются параллельно виртуальными потоками.
+ * Маршрутизатору и узлам с сегментным хранилищем база данных не нужна, поэтому кластер можно запустить
+ * на одной машине со встроенной H2 вместо PostgreSQL, например:
+ * java -jar stats-server.jar --server.port=9091 --stats.storage=segment --stats.segment.directory=shard1
+ * --spring.datasource.url=jdbc:h2:mem:stats --spring.datasource.driverClassName=org.h2.Driver
+ * --spring.sql.init.mode=never
+ * (второй узел — порт 9092 и каталог shard2), маршрутизатор — с теми же параметрами базы данных и
+ * --stats.storage=router --stats.router.shards=http://localhost:9091,http://localhost:9092
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "router")
+public class ShardRouter {
+    private final RestClient.Builder restClientBuilder;
+    @Value("${stats.router.shards:}")
+    private List<String> urls;
+    @Value("${stats.router.connect-timeout-ms:1000}")
+    private long connectTimeoutMs;
+    @Value("${stats.router.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    private List<Shard> shards;
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("Для stats.storage=router нужно задать stats.router.shards");
+        }
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build());
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        RestClient client = restClientBuilder.requestFactory(requestFactory).build();
+        shards = urls.stream()
+                .map(String::strip)
+                .map(url -> new Shard(url, client))
+                .toList();
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stats-router-", 1).factory());
+        log.info("Маршрутизатор статистики запущен, узлы: {}", shards);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * Метод возвращает узел, которому принадлежат события URI.
+     */
+    public Shard owner(String uri) {
+        CRC32C crc = new CRC32C();
+        crc.update(uri.getBytes(StandardCharsets.UTF_8));
+        return shards.get((int) (crc.getValue() % shards.size()));
+    }
+
+    /**
+     * Метод выполняет запрос к каждому из узлов и возвращает ответы в порядке узлов. Если запрос к одному из узлов
+     * завершился ошибкой, запросы к остальным прерываются, а ошибка передаётся вызывающему.
+     */
+    public <T> List<T> fanOut(Collection<Shard> targets, Function<Shard, T> call) {
+        if (targets.size() == 1) {
+            return List.of(call.apply(targets.iterator().next()));
+        }
+        List<Future<T>> futures = new ArrayList<>();
+        for (Shard shard : targets) {
+            futures.add(executor.submit(() -> call.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Запрос к узлам статистики прерван", e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package ru.practicum.segment;
+
+import java.util.Arrays;
+
+/**
+ * Подсчёт обращений при чтении сегментов без создания объектов на каждое событие.
+ * Ключ строки результата — пара (ключ приложения, номер группы URI), упакованная в long; группа URI задаётся
+ * массивом groups, где -1 означает URI, не подходящий под запрос. Счётчики и множество уже встреченных
+ * IP-адресов хранятся в хеш-таблицах с открытой адресацией на примитивных массивах.
+ */
+public final class HitAggregator implements RecordVisitor {
+    private static final long EMPTY = -1L;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final int[] groups;
+    private final boolean unique;
+
+    private long[] keys = emptyKeys(INITIAL_CAPACITY);
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private int size;
+
+    private long[] seenKeys;
+    private long[] seenHigh;
+    private long[] seenLow;
+    private int seenSize;
+
+    /**
+     * @param groups номер группы для каждого ключа URI или -1, если URI не учитывается.
+     * @param unique считать ли только уникальные IP-адреса в каждой строке.
+     */
+    public HitAggregator(int[] groups, boolean unique) {
+        this.groups = groups;
+        this.unique = unique;
+        if (unique) {
+            seenKeys = emptyKeys(INITIAL_CAPACITY);
+            seenHigh = new long[INITIAL_CAPACITY];
+            seenLow = new long[INITIAL_CAPACITY];
+        }
+    }
+
+    @Override
+    public void visit(int appId, int uriId, long ipHigh, long ipLow) {
+        if (uriId >= groups.length || groups[uriId] < 0) {
+            return;
+        }
+        long key = ((long) appId << 32) | groups[uriId];
+        if (unique && !markSeen(key, ipHigh, ipLow)) {
+            return;
+        }
+        add(key, 1);
+    }
+
+    /**
+     * Метод добавляет к результату строки другого подсчёта с тем же массивом групп. При подсчёте уникальных
+     * IP-адресов переносятся сами адреса, поэтому адрес, встреченный в обоих подсчётах, учитывается один раз.
+     */
+    public void merge(HitAggregator other) {
+        if (unique) {
+            for (int i = 0; i < other.seenKeys.length; i++) {
+                if (other.seenKeys[i] != EMPTY && markSeen(other.seenKeys[i], other.seenHigh[i], other.seenLow[i])) {
+                    add(other.seenKeys[i], 1);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Метод передаёт получателю все строки результата.
+     */
+    public void forEach(RowConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept((int) (keys[i] >>> 32), (int) keys[i], counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Получатель строки результата: ключ приложения, номер группы URI и количество обращений.
+     */
+    @FunctionalInterface
+    public interface RowConsumer {
+        void accept(int appId, int group, long hits);
+    }
+
+    private void add(long key, long hits) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                counts[slot] = hits;
+                growCounts();
+                return;
+            }
+        }
+        counts[slot] += hits;
+    }
+
+    private boolean markSeen(long key, long high, long low) {
+        int mask = seenKeys.length - 1;
+        int slot = mix(key ^ mix(high) * 31 ^ low) & mask;
+        while (seenKeys[slot] != EMPTY) {
+            if (seenKeys[slot] == key && seenHigh[slot] == high && seenLow[slot] == low) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        seenKeys[slot] = key;
+        seenHigh[slot] = high;
+        seenLow[slot] = low;
+        if (++seenSize * 2 > seenKeys.length) {
+            growSeen();
+        }
+        return true;
+    }
+
+    private void growCounts() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = emptyKeys(oldKeys.length * 2);
+        counts = new long[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private void growSeen() {
+        long[] oldKeys = seenKeys;
+        long[] oldHigh = seenHigh;
+        long[] oldLow = seenLow;
+        seenKeys = emptyKeys(oldKeys.length * 2);
+        seenHigh = new long[oldKeys.length * 2];
+        seenLow = new long[oldKeys.length * 2];
+        int mask = seenKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = mix(oldKeys[i] ^ mix(oldHigh[i]) * 31 ^ oldLow[i]) & mask;
+                while (seenKeys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                seenKeys[slot] = oldKeys[i];
+                seenHigh[slot] = oldHigh[i];
+                seenLow[slot] = oldLow[i];
+            }
+        }
+    }
+
+    private static long[] emptyKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    private static int mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
@@ -0,0 +1,10 @@
+package ru.practicum.segment;
+
+/**
+ * Получатель событий при чтении сегментов. Поля события передаются примитивами, чтобы чтение не создавало
+ * объектов на каждое событие.
+ */
+@FunctionalInterface
+public interface RecordVisitor {
+    void visit(int appId, int uriId, long ipHigh, long ipLow);
+}
@@ -0,0 +1,168 @@
+package ru.practicum.segment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Сегмент хранилища событий: файл фиксированного размера, отображённый в память через FileChannel.map.
+ * В заголовке хранится количество записанных событий, за ним идут записи по RECORD байт: секунда события,
+ * ключ приложения, ключ URI и IP-адрес в виде 16 байт (IPv4 хранится как IPv4-mapped IPv6).
+ * Для каждого блока из BLOCK записей в памяти хранятся наименьшее и наибольшее время события — разреженный
+ * индекс, по которому чтение пропускает блоки вне запрошенного диапазона.
+ * Запись выполняется одним потоком под блокировкой SegmentStore; чтение возможно параллельно с записью
+ * и видит события, опубликованные до начала чтения.
+ */
+final class Segment implements Closeable {
+    static final int HEADER = 64;
+    static final int RECORD = 32;
+    static final int BLOCK = 1024;
+    private static final int MAGIC = 0x53544753;
+    private static final int COUNT_OFFSET = 8;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long[] blockMin;
+    private final long[] blockMax;
+    private volatile int count;
+    private volatile long minSecond = Long.MAX_VALUE;
+    private volatile long maxSecond = Long.MIN_VALUE;
+
+    private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        int blocks = (capacity + BLOCK - 1) / BLOCK;
+        this.blockMin = new long[blocks];
+        this.blockMax = new long[blocks];
+        Arrays.fill(blockMin, Long.MAX_VALUE);
+        Arrays.fill(blockMax, Long.MIN_VALUE);
+    }
+
+    /**
+     * Метод открывает сегмент или создаёт новый и восстанавливает разреженный индекс по записанным событиям.
+     *
+     * @param path     файл сегмента.
+     * @param capacity ёмкость нового сегмента в записях; у существующего сегмента определяется размером файла.
+     */
+    static Segment open(Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = channel.size();
+        boolean created = size == 0;
+        if (!created) {
+            capacity = (int) ((size - HEADER) / RECORD);
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * RECORD);
+        Segment segment = new Segment(path, channel, buffer, capacity);
+        if (created) {
+            buffer.putInt(0, MAGIC);
+            buffer.putLong(COUNT_OFFSET, 0);
+        } else {
+            if (buffer.getInt(0) != MAGIC) {
+                channel.close();
+                throw new IOException("Файл " + path + " не является сегментом статистики");
+            }
+            segment.restore((int) Math.min(buffer.getLong(COUNT_OFFSET), capacity));
+        }
+        return segment;
+    }
+
+    /**
+     * Метод дописывает событие в конец сегмента. Вызывающий код должен удерживать блокировку записи.
+     *
+     * @return false, если сегмент заполнен.
+     */
+    boolean append(long second, int appId, int uriId, long ipHigh, long ipLow) {
+        int index = count;
+        if (index >= capacity) {
+            return false;
+        }
+        int offset = HEADER + index * RECORD;
+        buffer.putLong(offset, second);
+        buffer.putInt(offset + 8, appId);
+        buffer.putInt(offset + 12, uriId);
+        buffer.putLong(offset + 16, ipHigh);
+        buffer.putLong(offset + 24, ipLow);
+        index(index, second);
+        buffer.putLong(COUNT_OFFSET, index + 1);
+        count = index + 1;
+        return true;
+    }
+
+    /**
+     * Метод передаёт получателю события с временем в полуоткрытом диапазоне [from, to) секунд.
+     */
+    void scan(long from, long to, RecordVisitor visitor) {
+        int total = count;
+        if (total == 0 || maxSecond < from || minSecond >= to) {
+            return;
+        }
+        for (int block = 0; block * BLOCK < total; block++) {
+            if (blockMax[block] < from || blockMin[block] >= to) {
+                continue;
+            }
+            int end = Math.min(total, (block + 1) * BLOCK);
+            for (int index = block * BLOCK; index < end; index++) {
+                int offset = HEADER + index * RECORD;
+                long second = buffer.getLong(offset);
+                if (second < from || second >= to) {
+                    continue;
+                }
+                visitor.visit(buffer.getInt(offset + 8), buffer.getInt(offset + 12), buffer.getLong(offset + 16),
+                        buffer.getLong(offset + 24));
+            }
+        }
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    int count() {
+        return count;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Метод сбрасывает изменённые страницы сегмента на диск.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void restore(int total) {
+        for (int index = 0; index < total; index++) {
+            index(index, buffer.getLong(HEADER + index * RECORD));
+        }
+        count = total;
+    }
+
+    private void index(int index, long second) {
+        int block = index / BLOCK;
+        blockMin[block] = Math.min(blockMin[block], second);
+        blockMax[block] = Math.max(blockMax[block], second);
+        if (second < minSecond) {
+            minSecond = second;
+        }
+        if (second > maxSecond) {
+            maxSecond = second;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ru.practicum.segment;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Словари приложений и URI сегментного хранилища.
+ * Ключ значения — его порядковый номер в словаре. Новые значения дописываются в журнал dictionary.dat записями
+ * (тип словаря, ключ, строка); при открытии журнал читается целиком, оборванная последняя запись отбрасывается.
+ */
+final class SegmentDictionary implements Closeable {
+    static final byte APP = 0;
+    static final byte URI = 1;
+
+    private final List<Map<Integer, String>> values = List.of(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+    private final List<Map<String, Integer>> ids = List.of(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+    private final AtomicIntegerArray sizes = new AtomicIntegerArray(2);
+    private final DataOutputStream journal;
+
+    SegmentDictionary(Path file) throws IOException {
+        if (Files.exists(file)) {
+            load(file);
+        }
+        journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    /**
+     * Метод возвращает ключ значения, добавляя значение в словарь при необходимости.
+     * Вызывающий код должен удерживать блокировку записи хранилища и вызвать flush после пачки событий.
+     */
+    int encode(byte type, String value) {
+        Integer id = ids.get(type).get(value);
+        if (id != null) {
+            return id;
+        }
+        int next = sizes.get(type);
+        try {
+            journal.writeByte(type);
+            journal.writeInt(next);
+            journal.writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        put(type, next, value);
+        return next;
+    }
+
+    /**
+     * Метод сбрасывает новые записи журнала на диск.
+     */
+    void flush() {
+        try {
+            journal.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    String value(byte type, int id) {
+        return values.get(type).get(id);
+    }
+
+    /**
+     * Метод возвращает количество значений словаря; ключи значений лежат в диапазоне [0, size).
+     */
+    int size(byte type) {
+        return sizes.get(type);
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    private void load(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(content));
+        long valid = 0;
+        try {
+            while (input.available() > 0) {
+                byte type = input.readByte();
+                int id = input.readInt();
+                String value = input.readUTF();
+                if (id != sizes.get(type)) {
+                    throw new IOException("Нарушен порядок ключей в словаре " + file);
+                }
+                put(type, id, value);
+                valid = content.length - input.available();
+            }
+        } catch (EOFException e) {
+            // Оборванная последняя запись отбрасывается, чтобы следующие записи легли за последней целой.
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+    }
+
+    private void put(byte type, int id, String value) {
+        values.get(type).put(id, value);
+        ids.get(type).put(value, id);
+        sizes.set(type, id + 1);
+    }
+}
@@ -0,0 +1,168 @@
+package ru.practicum.segment;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.EndpointHit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище событий в сегментах, отображённых в память.
+ * События дописываются в последний сегмент каталога stats.segment.directory; заполненный сегмент закрывается для
+ * записи и создаётся следующий размером stats.segment.size-mb. Чтение последовательно проходит сегменты,
+ * пропуская сегменты и блоки вне запрошенного диапазона времени. Включается свойством stats.storage=segment.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "segment")
+public class SegmentStore {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final long IPV4_MAPPED = 0xffff00000000L;
+
+    @Value("${stats.segment.directory:stats-segments}")
+    private Path directory;
+    @Value("${stats.segment.size-mb:64}")
+    private int segmentSizeMb;
+    @Value("${stats.segment.force-on-write:false}")
+    private boolean forceOnWrite;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private SegmentDictionary dictionary;
+    private int segmentCapacity;
+
+    @PostConstruct
+    void open() throws IOException {
+        if (segmentSizeMb <= 0 || segmentSizeMb > 1024) {
+            throw new IllegalStateException("stats.segment.size-mb должен быть от 1 до 1024");
+        }
+        segmentCapacity = (int) (((long) segmentSizeMb << 20) - Segment.HEADER) / Segment.RECORD;
+        Files.createDirectories(directory);
+        dictionary = new SegmentDictionary(directory.resolve("dictionary.dat"));
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(this::isSegment).sorted().toList()) {
+                segments.add(Segment.open(file, segmentCapacity));
+            }
+        }
+        long total = segments.stream().mapToLong(Segment::count).sum();
+        log.info("Сегментное хранилище открыто: каталог {}, сегментов {}, событий {}", directory.toAbsolutePath(),
+                segments.size(), total);
+    }
+
+    /**
+     * Метод дописывает события в хранилище. Новые приложения и URI сначала записываются в словарь, поэтому
+     * записанные события всегда ссылаются на сохранённые ключи.
+     *
+     * @param hits события для записи.
+     */
+    public synchronized void append(List<EndpointHit> hits) {
+        int[] apps = new int[hits.size()];
+        int[] uris = new int[hits.size()];
+        for (int i = 0; i < hits.size(); i++) {
+            apps[i] = dictionary.encode(SegmentDictionary.APP, hits.get(i).getApp());
+            uris[i] = dictionary.encode(SegmentDictionary.URI, hits.get(i).getUri());
+        }
+        dictionary.flush();
+        Segment active = null;
+        for (int i = 0; i < hits.size(); i++) {
+            EndpointHit hit = hits.get(i);
+            ByteBuffer ip = ByteBuffer.wrap(address(hit.getIp()));
+            long second = hit.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+            if (active == null || active.isFull()) {
+                active = activeSegment();
+            }
+            active.append(second, apps[i], uris[i], ip.getLong(), ip.getLong());
+        }
+        if (forceOnWrite && active != null) {
+            active.force();
+        }
+    }
+
+    /**
+     * Метод передаёт получателю события с временем в диапазоне [from, to] включительно.
+     */
+    public void scan(LocalDateTime from, LocalDateTime to, RecordVisitor visitor) {
+        long fromSecond = from.toEpochSecond(ZoneOffset.UTC);
+        long toSecond = to.toEpochSecond(ZoneOffset.UTC) + 1;
+        for (Segment segment : segments) {
+            segment.scan(fromSecond, toSecond, visitor);
+        }
+    }
+
+    public String app(int id) {
+        return dictionary.value(SegmentDictionary.APP, id);
+    }
+
+    public String uri(int id) {
+        return dictionary.value(SegmentDictionary.URI, id);
+    }
+
+    /**
+     * Метод возвращает количество URI в словаре; ключи URI лежат в диапазоне [0, uriCount).
+     */
+    public int uriCount() {
+        return dictionary.size(SegmentDictionary.URI);
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        dictionary.close();
+        log.info("Сегментное хранилище закрыто");
+    }
+
+    private Segment activeSegment() {
+        if (!segments.isEmpty() && !segments.get(segments.size() - 1).isFull()) {
+            return segments.get(segments.size() - 1);
+        }
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segments.size(), SEGMENT_SUFFIX));
+        try {
+            Segment segment = Segment.open(file, segmentCapacity);
+            segments.add(segment);
+            log.info("Создан сегмент {}", file.getFileName());
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Метод преобразует IP-адрес в 16 байт; IPv4 хранится как IPv4-mapped IPv6.
+     */
+    private static byte[] address(String ip) {
+        try {
+            byte[] address = InetAddress.getByName(ip).getAddress();
+            if (address.length == 16) {
+                return address;
+            }
+            return ByteBuffer.allocate(16)
+                    .putLong(0)
+                    .putLong(IPV4_MAPPED | ByteBuffer.wrap(address).getInt() & 0xffffffffL)
+                    .array();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Некорректный ip " + ip, e);
+        }
+    }
+}
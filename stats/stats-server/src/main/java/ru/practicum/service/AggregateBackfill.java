@@ -0,0 +1,49 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.repository.AllTimeRepository;
+import ru.practicum.repository.BitmapRepository;
+
+/**
+ * Компонент AggregateBackfill заполняет агрегаты, которые HitWriter пополняет только начиная с их включения:
+ * дневные множества уникальных IP-адресов (stats.bitmap.enabled) и счётчики за всё время
+ * (stats.all-time.enabled). Если таблица агрегата пуста, она строится по всей таблице statistics при старте,
+ * до приёма запросов.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class AggregateBackfill {
+    private final BitmapRepository bitmapRepository;
+    private final AllTimeRepository allTimeRepository;
+    private final PlatformTransactionManager transactionManager;
+    @Value("${stats.bitmap.enabled:true}")
+    private boolean bitmapEnabled;
+    @Value("${stats.all-time.enabled:true}")
+    private boolean allTimeEnabled;
+
+    @PostConstruct
+    void backfill() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        if (bitmapEnabled && bitmapRepository.isEmpty()) {
+            Long built = transaction.execute(status -> bitmapRepository.backfill());
+            if (built != null && built > 0) {
+                log.info("Построены дневные множества уникальных IP-адресов по сохранённым событиям: {}", built);
+            }
+        }
+        if (allTimeEnabled && allTimeRepository.isEmpty()) {
+            Integer built = transaction.execute(status -> allTimeRepository.backfill());
+            if (built != null && built > 0) {
+                log.info("Построены счётчики обращений за всё время по сохранённым событиям: {}", built);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.EndpointHit;
+import ru.practicum.model.RollupKey;
+import ru.practicum.model.RollupResolution;
+import ru.practicum.repository.BitmapRepository;
+import ru.practicum.repository.PendingHitRepository;
+import ru.practicum.repository.SketchRepository;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.sketch.IpBitmap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Компонент AggregateFolder объединяет события очереди statistics_pending со скетчами уникальных IP-адресов
+ * (stats.sketch.enabled) и с дневными множествами IP-адресов (stats.bitmap.enabled). Скетч или множество
+ * популярного URI за час или день — одна строка, и её обновление при каждом событии выстраивало бы запись
+ * событий в очередь за блокировкой строки, поэтому HitWriter только добавляет события в очередь, а этот
+ * компонент каждые stats.fold.interval-ms забирает их пачками по stats.fold.batch-size и обновляет каждую
+ * строку один раз на пачку. Пачка удаляется из очереди той же транзакцией, в которой обновляются агрегаты,
+ * поэтому каждое событие учитывается ровно один раз.
+ * Пока событие в очереди, запросы дочитывают его из очереди: объединение множеств не меняется от повторного
+ * добавления значения, поэтому очередь читается раньше агрегатов, и событие, учтённое между этими чтениями,
+ * не теряется.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class AggregateFolder {
+    private final PendingHitRepository pendingRepository;
+    private final SketchRepository sketchRepository;
+    private final BitmapRepository bitmapRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+    @Value("${stats.sketch.enabled:true}")
+    private boolean sketchEnabled;
+    @Value("${stats.bitmap.enabled:true}")
+    private boolean bitmapEnabled;
+    @Value("${stats.fold.batch-size:10000}")
+    private int batchSize;
+
+    private TransactionTemplate transaction;
+    private Counter foldedCounter;
+
+    @PostConstruct
+    void init() {
+        transaction = new TransactionTemplate(transactionManager);
+        foldedCounter = Counter.builder("stats.fold.hits")
+                .description("Количество событий, учтённых в скетчах и множествах уникальных IP-адресов")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Метод забирает события очереди пачками, пока очередь не опустеет.
+     */
+    @Scheduled(fixedDelayString = "${stats.fold.interval-ms:1000}")
+    public void fold() {
+        int folded;
+        do {
+            folded = transaction.execute(status -> foldBatch());
+            foldedCounter.increment(folded);
+        } while (folded == batchSize);
+    }
+
+    private int foldBatch() {
+        List<EndpointHit> hits = pendingRepository.take(batchSize);
+        if (bitmapEnabled) {
+            Map<RollupKey, IpBitmap> bitmaps = new TreeMap<>();
+            for (EndpointHit hit : hits) {
+                bitmaps.computeIfAbsent(new RollupKey(hit.getAppId(), hit.getUriId(),
+                        BitmapRepository.RESOLUTION.floor(hit.getTimestamp())), key -> new IpBitmap()).add(hit.getIp());
+            }
+            bitmapRepository.merge(bitmaps);
+        }
+        if (sketchEnabled) {
+            for (RollupResolution resolution : RollupResolution.SKETCHED) {
+                Map<RollupKey, HyperLogLog> sketches = new TreeMap<>();
+                for (EndpointHit hit : hits) {
+                    sketches.computeIfAbsent(new RollupKey(hit.getAppId(), hit.getUriId(),
+                            resolution.floor(hit.getTimestamp())), key -> new HyperLogLog()).addIp(hit.getIp());
+                }
+                sketchRepository.merge(resolution, sketches);
+            }
+        }
+        if (!hits.isEmpty()) {
+            log.debug("В агрегатах уникальных IP-адресов учтено {} событий", hits.size());
+        }
+        return hits.size();
+    }
+}
@@ -0,0 +1,245 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.exception.BadParametersException;
+import ru.practicum.model.RollupKey;
+import ru.practicum.model.RollupResolution;
+import ru.practicum.repository.AllTimeRepository;
+import ru.practicum.repository.BitmapRepository;
+import ru.practicum.repository.CompactionRepository;
+import ru.practicum.repository.RollupRepository;
+import ru.practicum.repository.StatsRepository;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Сжатие необработанных событий старше stats.compaction.age-days дней (при stats.compaction.enabled).
+ * HitWriter учитывает каждое событие в таблицах предагрегированной статистики по минутам, часам и дням
+ * той же транзакцией, в которой сохраняет его, и ставит его в очередь скетчей и дневных множеств IP-адресов.
+ * Перед переносом границы сжатие проверяет, что события каждого дня учтены в statistics_day, и дни
+ * с неучтёнными событиями сворачивает: добавляет в таблицы по минутам, часам и дням недостающие обращения
+ * каждой минуты, счётчики за всё время и индекс в памяти и ставит события дня в очередь AggregateFolder. Затем граница переносится, а события раньше
+ * неё удаляются пачками по stats.compaction.batch-size строк, каждая в своей транзакции.
+ * Запросы, начавшиеся до переноса границы, ещё могут читать события, поэтому события удаляются только
+ * при следующем запуске по расписанию stats.compaction.cron, а не сразу после переноса границы.
+ * Раньше границы статистика считается только по агрегатам, поэтому граница запроса, попавшая в сжатый период,
+ * должна быть выровнена по минуте для количества обращений, по дню для точного количества уникальных
+ * IP-адресов (по дневным множествам, при stats.bitmap.enabled) и по часу для оценки по скетчам
+ * (precision=APPROX). Невыровненная граница отклоняется, а не округляется, чтобы запрос не получил
+ * количество за другой период, а точный запрос не получил оценку без указания погрешности.
+ * Граница сжатия учитывается запросами и при выключенном сжатии, чтобы выключение не искажало статистику
+ * за уже сжатый период.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitCompactor {
+    private final CompactionRepository compactionRepository;
+    private final StatsRepository statsRepository;
+    private final RollupRepository rollupRepository;
+    private final AllTimeRepository allTimeRepository;
+    private final HitWriter hitWriter;
+    private final Optional<HitCounterIndex> counterIndex;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+    private final Optional<StatsResultCache> resultCache;
+    @Value("${stats.compaction.enabled:false}")
+    private boolean enabled;
+    @Value("${stats.compaction.age-days:30}")
+    private int ageDays;
+    @Value("${stats.compaction.batch-size:10000}")
+    private int batchSize;
+    @Value("${stats.sketch.enabled:true}")
+    private boolean sketchEnabled;
+    @Value("${stats.bitmap.enabled:true}")
+    private boolean bitmapEnabled;
+    @Value("${stats.all-time.enabled:true}")
+    private boolean allTimeEnabled;
+    @Value("${stats.columnar.enabled:false}")
+    private boolean columnarEnabled;
+    @Value("${stats.columnar.retention-hours:24}")
+    private int columnarRetentionHours;
+
+    private TransactionTemplate transaction;
+    private Counter deletedCounter;
+    private volatile LocalDateTime watermark;
+
+    @PostConstruct
+    void init() {
+        transaction = new TransactionTemplate(transactionManager);
+        watermark = compactionRepository.findWatermark();
+        deletedCounter = Counter.builder("stats.compaction.deleted")
+                .description("Количество необработанных событий, удалённых сжатием")
+                .register(meterRegistry);
+        if (!enabled) {
+            return;
+        }
+        if (ageDays < 1 || batchSize < 1) {
+            throw new IllegalStateException("stats.compaction.age-days и stats.compaction.batch-size должны быть " +
+                    "больше 0");
+        }
+        if (!sketchEnabled) {
+            throw new IllegalStateException("Для сжатия событий нужно включить stats.sketch.enabled");
+        }
+        if (columnarEnabled && columnarRetentionHours > ageDays * 24) {
+            throw new IllegalStateException("stats.columnar.retention-hours не может быть больше " +
+                    "stats.compaction.age-days: колоночное хранилище строится по необработанным событиям");
+        }
+        log.info("Сжатие событий старше {} дн. включено, граница сжатия {}", ageDays, watermark);
+    }
+
+    /**
+     * Метод возвращает границу сжатия: события раньше неё учитываются только агрегатами. Null, если события
+     * не сжимались.
+     */
+    public LocalDateTime getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Метод проверяет, что границы полуоткрытого диапазона [from, to), попавшие в сжатый период, выровнены
+     * по интервалам разрешения: события раньше границы сжатия хранятся только агрегатами этого разрешения.
+     *
+     * @throws BadParametersException если граница в сжатом периоде не совпадает с началом интервала.
+     */
+    public void checkAligned(LocalDateTime from, LocalDateTime to, RollupResolution resolution) {
+        LocalDateTime current = watermark;
+        if (!isAligned(from, to, current, resolution)) {
+            throw new BadParametersException("События раньше " + current + " хранятся только агрегатами " +
+                    "по интервалам " + resolution.getBucket() + ": в этом периоде начало запроса должно совпадать " +
+                    "с началом интервала, а конец — с последней секундой интервала");
+        }
+    }
+
+    /**
+     * Метод проверяет, можно ли точно посчитать уникальные IP-адреса диапазона [from, to): сжатая часть
+     * диапазона должна состоять из целых дней, для которых есть дневные множества IP-адресов.
+     *
+     * @throws BadParametersException если в сжатом периоде есть только скетчи или граница не выровнена по дню.
+     */
+    public void checkExact(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime current = watermark;
+        if (current == null || !from.isBefore(current)) {
+            return;
+        }
+        if (!bitmapEnabled) {
+            throw new BadParametersException("Уникальные обращения раньше " + current + " хранятся только " +
+                    "скетчами HyperLogLog, используйте precision=APPROX");
+        }
+        if (!isAligned(from, to, current, BitmapRepository.RESOLUTION)) {
+            throw new BadParametersException("Уникальные обращения раньше " + current + " точно считаются " +
+                    "только по целым дням: выровняйте границы запроса по дню или используйте precision=APPROX");
+        }
+    }
+
+    /**
+     * Метод переносит границу сжатия на момент before, раньше которого необработанные события удаляются
+     * сроком хранения секций, чтобы запросы за этот период считались по агрегатам. Граница не переносится назад.
+     */
+    public synchronized void retire(LocalDateTime before) {
+        LocalDateTime current = watermark;
+        if (current != null && !before.isAfter(current)) {
+            return;
+        }
+        publish(before);
+        log.info("Граница сжатия событий перенесена на границу срока хранения {}", before);
+    }
+
+    /**
+     * Метод удаляет события раньше границы, перенесённой предыдущим запуском, и переносит границу сжатия.
+     */
+    @Scheduled(cron = "${stats.compaction.cron:0 30 * * * *}")
+    public synchronized void compact() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime published = watermark;
+        if (published != null) {
+            delete(published);
+        }
+        advance(LocalDateTime.now().minusDays(ageDays).truncatedTo(ChronoUnit.DAYS));
+    }
+
+    private static boolean isAligned(LocalDateTime from, LocalDateTime to, LocalDateTime watermark,
+                                     RollupResolution resolution) {
+        return watermark == null
+                || (!from.isBefore(watermark) || resolution.floor(from).equals(from))
+                && (!to.isBefore(watermark) || resolution.floor(to).equals(to));
+    }
+
+    private void delete(LocalDateTime before) {
+        long total = 0;
+        int deleted;
+        do {
+            deleted = transaction.execute(status -> compactionRepository.deleteHits(before, batchSize));
+            total += deleted;
+        } while (deleted == batchSize);
+        if (total > 0) {
+            deletedCounter.increment(total);
+            log.info("Удалено {} необработанных событий раньше границы сжатия {}", total, before);
+        }
+    }
+
+    private void advance(LocalDateTime cutoff) {
+        LocalDateTime current = watermark;
+        if (current != null && !cutoff.isAfter(current)) {
+            return;
+        }
+        LocalDateTime from = current;
+        if (from == null) {
+            LocalDateTime min = statsRepository.findMinTimestamp();
+            from = min == null ? cutoff : min.truncatedTo(ChronoUnit.DAYS);
+        }
+        if (from.isBefore(cutoff)) {
+            compactionRepository.findUnfoldedDays(from, cutoff).forEach(this::fold);
+        }
+        publish(cutoff);
+        log.info("Граница сжатия событий перенесена на {}", cutoff);
+    }
+
+    /**
+     * Метод добавляет в агрегаты события дня, не учтённые при записи.
+     */
+    private void fold(LocalDateTime day) {
+        hitWriter.extendBounds(day, day);
+        Map<RollupKey, Long> folded = transaction.execute(status -> {
+            Map<RollupKey, Long> minutes = compactionRepository.findUnfoldedMinutes(day);
+            for (RollupResolution resolution : RollupResolution.values()) {
+                Map<RollupKey, Long> counts = new TreeMap<>();
+                minutes.forEach((key, hits) -> counts.merge(new RollupKey(key.appId(), key.uriId(),
+                        resolution.floor(key.bucket())), hits, Long::sum));
+                rollupRepository.increment(resolution, counts);
+            }
+            if (allTimeEnabled) {
+                allTimeRepository.fold(day, minutes);
+            }
+            int enqueued = compactionRepository.enqueueDay(day);
+            log.warn("События за {} не были учтены в агрегатах: добавлено {} обращений, в очередь скетчей " +
+                    "и множеств IP-адресов поставлено {} событий", day,
+                    minutes.values().stream().mapToLong(Long::longValue).sum(), enqueued);
+            return minutes;
+        });
+        counterIndex.ifPresent(index -> index.add(folded));
+    }
+
+    private void publish(LocalDateTime next) {
+        transaction.executeWithoutResult(status -> compactionRepository.saveWatermark(next));
+        watermark = next;
+        resultCache.ifPresent(cache -> cache.invalidate(next));
+    }
+}
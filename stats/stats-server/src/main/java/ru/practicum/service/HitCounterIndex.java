@@ -0,0 +1,180 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.EndpointHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.RollupKey;
+import ru.practicum.model.RollupResolution;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.model.UriFilter;
+import ru.practicum.repository.RollupRepository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Индекс количества обращений в памяти сервиса статистики.
+ * Для каждой пары (uri, app) хранится общий счётчик и счётчики по интервалам разрешения stats.index.resolution.
+ * Счётчики построены на LongAdder, поэтому параллельная запись событий не конкурирует за одну ячейку.
+ * При старте индекс восстанавливается из таблицы предагрегированной статистики, затем пополняется слушателем
+ * HitListener. Индекс отвечает на запрос без обращения к базе данных, если каждая граница диапазона выровнена
+ * по интервалу или лежит за пределами времени известных событий.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnExpression("${stats.index.enabled:true} and '${stats.storage:jdbc}' == 'jdbc'")
+public class HitCounterIndex implements HitListener {
+    private final RollupRepository rollupRepository;
+    private final StatsDictionary dictionary;
+    @Value("${stats.index.resolution:DAY}")
+    private RollupResolution resolution;
+
+    private final ConcurrentSkipListMap<String, ConcurrentHashMap<String, Counters>> counters =
+            new ConcurrentSkipListMap<>();
+    private final AtomicLong minSecond = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxSecond = new AtomicLong(Long.MIN_VALUE);
+
+    @PostConstruct
+    void rebuild() {
+        rollupRepository.scan(resolution, (key, hits) ->
+                counters(dictionary.app(key.appId()), dictionary.uri(key.uriId())).add(toSecond(key.bucket()), hits));
+        // Необработанные события старше границы сжатия удаляются, поэтому время известных событий берётся
+        // по минутным агрегатам: первая минута не позже первого события, последняя секунда последней минуты
+        // не раньше последнего.
+        TimeSegment bounds = rollupRepository.findBounds(RollupResolution.MINUTE);
+        if (bounds != null) {
+            minSecond.accumulateAndGet(toSecond(bounds.from()), Math::min);
+            maxSecond.accumulateAndGet(toSecond(bounds.to()) - 1, Math::max);
+        }
+        log.info("Индекс количества обращений восстановлен: {} URI, разрешение {}", counters.size(), resolution);
+    }
+
+    @Override
+    public void onHits(List<EndpointHit> hits) {
+        for (EndpointHit hit : hits) {
+            counters(hit.getApp(), hit.getUri()).add(toSecond(resolution.floor(hit.getTimestamp())), 1);
+            long second = toSecond(hit.getTimestamp());
+            minSecond.accumulateAndGet(second, Math::min);
+            maxSecond.accumulateAndGet(second, Math::max);
+        }
+    }
+
+    /**
+     * Метод добавляет в индекс обращения, которые HitCompactor учёл в агрегатах задним числом.
+     *
+     * @param counts обращения по ключам минут.
+     */
+    public void add(Map<RollupKey, Long> counts) {
+        counts.forEach((key, hits) -> {
+            counters(dictionary.app(key.appId()), dictionary.uri(key.uriId()))
+                    .add(toSecond(resolution.floor(key.bucket())), hits);
+            minSecond.accumulateAndGet(toSecond(key.bucket()), Math::min);
+            maxSecond.accumulateAndGet(toSecond(key.bucket()) + 59, Math::max);
+        });
+    }
+
+    /**
+     * Метод считает количество обращений за полуоткрытый диапазон [from, to).
+     *
+     * @param from   начало диапазона (включительно).
+     * @param to     конец диапазона (не включительно).
+     * @param filter условие отбора URI; префиксы читаются диапазоном упорядоченного по URI индекса.
+     * @return количество обращений по парам (app, uri) без нулевых значений или null, если диапазон нельзя
+     *         посчитать по индексу.
+     */
+    public Map<HitKey, Long> count(LocalDateTime from, LocalDateTime to, UriFilter filter) {
+        Long lower = toSecond(from) <= minSecond.get() ? null : toSecond(from);
+        Long upper = toSecond(to) > maxSecond.get() ? null : toSecond(to);
+        if (lower != null && !resolution.floor(from).equals(from)
+                || upper != null && !resolution.floor(to).equals(to)) {
+            return null;
+        }
+        Map<HitKey, Long> result = new HashMap<>();
+        for (String uri : uris(filter)) {
+            Map<String, Counters> apps = counters.get(uri);
+            if (apps == null) {
+                continue;
+            }
+            apps.forEach((app, appCounters) -> {
+                long hits = appCounters.sum(lower, upper);
+                if (hits > 0) {
+                    result.put(new HitKey(app, uri), hits);
+                }
+            });
+        }
+        return result;
+    }
+
+    private Collection<String> uris(UriFilter filter) {
+        if (filter.isAll()) {
+            return counters.keySet();
+        }
+        Set<String> uris = new LinkedHashSet<>();
+        if (filter.uris() != null) {
+            uris.addAll(filter.uris());
+        }
+        for (String prefix : filter.prefixes()) {
+            uris.addAll(prefix.isEmpty() ? counters.keySet()
+                    : counters.subMap(prefix, UriFilter.prefixEnd(prefix)).keySet());
+        }
+        return uris;
+    }
+
+    private Counters counters(String app, String uri) {
+        return counters.computeIfAbsent(uri, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(app, key -> new Counters());
+    }
+
+    private static long toSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Счётчики одной пары (uri, app): общий и по интервалам, ключ интервала — секунда его начала.
+     */
+    private static final class Counters {
+        private final LongAdder total = new LongAdder();
+        private final ConcurrentSkipListMap<Long, LongAdder> buckets = new ConcurrentSkipListMap<>();
+
+        void add(long bucket, long hits) {
+            buckets.computeIfAbsent(bucket, key -> new LongAdder()).add(hits);
+            total.add(hits);
+        }
+
+        long sum(Long from, Long to) {
+            if (from == null && to == null) {
+                return total.sum();
+            }
+            NavigableMap<Long, LongAdder> range;
+            if (from == null) {
+                range = buckets.headMap(to, false);
+            } else if (to == null) {
+                range = buckets.tailMap(from, true);
+            } else {
+                range = buckets.subMap(from, true, to, false);
+            }
+            long hits = 0;
+            for (LongAdder bucket : range.values()) {
+                hits += bucket.sum();
+            }
+            return hits;
+        }
+    }
+}
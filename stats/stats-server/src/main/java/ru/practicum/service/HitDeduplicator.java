@@ -0,0 +1,162 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.model.EndpointHit;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подавление повторных событий при записи: событие отбрасывается, если время события с той же тройкой
+ * (app, uri, ip), записанного ранее или стоящего раньше в том же пакете, отличается от его собственного времени
+ * меньше чем на stats.ingest.dedup.window-ms миллисекунд. Так перезагрузки страницы и боты не раздувают счётчики
+ * и таблицу событий, а посещения, разнесённые во времени, учитываются, даже если пришли одним пакетом.
+ * Ключи запоминаются только после успешной записи (remember), поэтому повтор запроса, запись которого
+ * не удалась, не подавляется. Одновременные запросы с одним и тем же событием могут быть записаны оба.
+ * Время последнего записанного события хранится в двух поколениях хеш-таблиц: текущее поколение заменяется
+ * новым раз в окно по времени поступления, предыдущее поколение проверяется и затем выбрасывается целиком,
+ * поэтому устаревшие ключи не требуют отдельной очистки. Если в поколении набралось половина
+ * stats.ingest.dedup.max-keys ключей, оно заменяется досрочно: память ограничена, а часть повторов в этом случае
+ * будет принята. Количество отброшенных событий публикуется метрикой stats.ingest.dedup.suppressed.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.ingest.dedup.enabled", havingValue = "true")
+public class HitDeduplicator {
+    private final MeterRegistry meterRegistry;
+    @Value("${stats.ingest.dedup.window-ms:1000}")
+    private long windowMs;
+    @Value("${stats.ingest.dedup.max-keys:1000000}")
+    private int maxKeys;
+
+    private long windowNanos;
+    private Counter suppressedCounter;
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    @PostConstruct
+    void init() {
+        windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        current = new Generation(System.nanoTime());
+        previous = new Generation(current.started);
+        suppressedCounter = Counter.builder("stats.ingest.dedup.suppressed")
+                .description("Количество повторных событий, отброшенных при записи")
+                .register(meterRegistry);
+        log.info("Подавление повторных событий включено: окно {} мс, до {} ключей", windowMs, maxKeys);
+    }
+
+    /**
+     * Метод ищет в пакете повторы записанных событий и событий, стоящих раньше в пакете. Ключи не запоминаются.
+     *
+     * @param hits события с заполненными приложением, URI, IP-адресом и временем.
+     * @return номера повторных событий в порядке возрастания.
+     */
+    public List<Integer> findDuplicates(List<EndpointHit> hits) {
+        Generation generation = currentGeneration();
+        Generation before = previous;
+        Map<Key, Long> batch = new HashMap<>();
+        List<Integer> duplicates = new ArrayList<>();
+        for (int i = 0; i < hits.size(); i++) {
+            EndpointHit hit = hits.get(i);
+            Key key = Key.of(hit);
+            long time = millis(hit);
+            if (isRepeat(batch.get(key), time) || isRepeat(generation.seen.get(key), time)
+                    || isRepeat(before.seen.get(key), time)) {
+                duplicates.add(i);
+            } else {
+                batch.put(key, time);
+            }
+        }
+        if (!duplicates.isEmpty()) {
+            suppressedCounter.increment(duplicates.size());
+        }
+        return duplicates;
+    }
+
+    /**
+     * Метод запоминает ключи записанных событий. Внутри транзакции ключи запоминаются после её фиксации,
+     * чтобы после отката повтор запроса не был подавлен.
+     *
+     * @param hits события, прошедшие findDuplicates и переданные на запись.
+     */
+    public void remember(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(hits);
+                }
+            });
+        } else {
+            record(hits);
+        }
+    }
+
+    private void record(List<EndpointHit> hits) {
+        Generation generation = currentGeneration();
+        for (EndpointHit hit : hits) {
+            generation.seen.merge(Key.of(hit), millis(hit), Math::max);
+        }
+    }
+
+    private Generation currentGeneration() {
+        long now = System.nanoTime();
+        Generation generation = current;
+        if (now - generation.started >= windowNanos || generation.seen.size() >= maxKeys / 2) {
+            generation = rotate(generation, now);
+        }
+        return generation;
+    }
+
+    private boolean isRepeat(Long last, long time) {
+        return last != null && Math.abs(time - last) < windowMs;
+    }
+
+    private static long millis(EndpointHit hit) {
+        return hit.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private synchronized Generation rotate(Generation expected, long now) {
+        if (current == expected) {
+            previous = expected;
+            current = new Generation(now);
+        }
+        return current;
+    }
+
+    private record Key(String app, String uri, String ip) {
+        static Key of(EndpointHit hit) {
+            return new Key(hit.getApp(), hit.getUri(), hit.getIp());
+        }
+    }
+
+    /**
+     * Поколение ключей: наибольшее время записанного события по ключу и момент создания поколения.
+     */
+    private static final class Generation {
+        private final ConcurrentHashMap<Key, Long> seen = new ConcurrentHashMap<>();
+        private final long started;
+
+        private Generation(long started) {
+            this.started = started;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ru.practicum.service;
+
+import ru.practicum.model.EndpointHit;
+
+import java.util.List;
+
+/**
+ * Интерфейс HitListener позволяет компонентам получать события после того, как они записаны в хранилище.
+ * HitWriter вызывает всех слушателей после фиксации транзакции, поэтому реализации не должны обращаться
+ * к базе данных и должны работать быстро.
+ */
+public interface HitListener {
+    /**
+     * Метод вызывается для каждой записанной пачки событий.
+     *
+     * @param hits записанные события.
+     */
+    void onHits(List<EndpointHit> hits);
+}
@@ -0,0 +1,63 @@
+package ru.practicum.service;
+
+import ru.practicum.dto.EndpointHitDto;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.regex.Pattern;
+
+/**
+ * Проверка событий перед записью, общая для всех хранилищ статистики.
+ */
+final class HitValidator {
+    private static final Pattern IPV4 =
+            Pattern.compile("((25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)\\.){3}(25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)");
+    private static final Pattern IPV6_CHARS = Pattern.compile("[0-9a-fA-F:.]+");
+
+    private HitValidator() {
+    }
+
+    /**
+     * Метод validate проверяет, что событие содержит все обязательные поля.
+     *
+     * @param event событие из пакета.
+     * @return причина отклонения события или null, если событие корректно.
+     */
+    static String validate(EndpointHitDto event) {
+        if (event == null) {
+            return "Не удалось разобрать запись";
+        }
+        if (isBlank(event.getApp()) || isBlank(event.getUri()) || isBlank(event.getIp())) {
+            return "Не заданы app, uri или ip";
+        }
+        if (event.getTimestamp() == null) {
+            return "Не задан timestamp";
+        }
+        if (!isIpAddress(event.getIp())) {
+            return "Некорректный ip";
+        }
+        return null;
+    }
+
+    /**
+     * Метод проверяет, что строка является IPv4- или IPv6-адресом и может быть записана в столбец inet.
+     */
+    private static boolean isIpAddress(String ip) {
+        if (IPV4.matcher(ip).matches()) {
+            return true;
+        }
+        if (ip.indexOf(':') < 0 || !IPV6_CHARS.matcher(ip).matches()) {
+            return false;
+        }
+        try {
+            InetAddress.getByName(ip);
+            return true;
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
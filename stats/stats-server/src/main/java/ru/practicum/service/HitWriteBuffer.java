@@ -0,0 +1,246 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import ru.practicum.exception.IngestOverloadedException;
+import ru.practicum.model.EndpointHit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Буфер отложенной записи событий (write-behind).
+ * Метод submit кладёт событие в ограниченную кольцевую очередь, а потоки-сбрасыватели забирают события пачками
+ * и записывают их через HitWriter одной транзакцией (group commit). Пачка сбрасывается, когда набрано
+ * stats.ingest.write-behind.flush-size событий или истёк stats.ingest.write-behind.flush-interval-ms.
+ * Включается свойством stats.ingest.write-behind.enabled=true.
+ * В режиме ACK вызов ждёт фиксации не дольше stats.ingest.write-behind.ack-timeout-ms и завершается ответом 503;
+ * событие при этом может быть записано позже, поэтому клиент, повторяющий запрос, может его удвоить.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnExpression("${stats.ingest.write-behind.enabled:false} and '${stats.storage:jdbc}' == 'jdbc'")
+public class HitWriteBuffer {
+    private final HitWriter hitWriter;
+    private final MeterRegistry meterRegistry;
+    @Value("${stats.ingest.write-behind.capacity:65536}")
+    private int capacity;
+    @Value("${stats.ingest.write-behind.flush-size:1000}")
+    private int flushSize;
+    @Value("${stats.ingest.write-behind.flush-interval-ms:50}")
+    private long flushIntervalMs;
+    @Value("${stats.ingest.write-behind.flushers:1}")
+    private int flushers;
+    @Value("${stats.ingest.write-behind.enqueue-timeout-ms:100}")
+    private long enqueueTimeoutMs;
+    @Value("${stats.ingest.write-behind.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMs;
+    @Value("${stats.ingest.write-behind.ack-timeout-ms:5000}")
+    private long ackTimeoutMs;
+    @Value("${stats.ingest.write-behind.durability:ACK}")
+    private Durability durability;
+
+    private BlockingQueue<PendingHit> queue;
+    private final List<Thread> flusherThreads = new ArrayList<>();
+    private volatile boolean running;
+    private Timer flushTimer;
+    private Counter failedCounter;
+
+    /**
+     * Гарантия, которую получает вызывающий код после возврата из submit.
+     */
+    public enum Durability {
+        /**
+         * Вызов ждёт, пока пачка с событием будет зафиксирована в базе данных.
+         */
+        ACK,
+        /**
+         * Вызов возвращается сразу после помещения события в очередь; при сбое записи событие теряется.
+         */
+        FIRE_AND_FORGET
+    }
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        Gauge.builder("stats.ingest.write-behind.queue.depth", queue, BlockingQueue::size)
+                .description("Количество событий, ожидающих записи")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("stats.ingest.write-behind.flush.latency")
+                .description("Время записи одной пачки событий")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        failedCounter = Counter.builder("stats.ingest.write-behind.failed")
+                .description("Количество событий, которые не удалось записать")
+                .register(meterRegistry);
+        running = true;
+        for (int i = 0; i < flushers; i++) {
+            Thread thread = new Thread(this::flushLoop, "hit-flusher-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            flusherThreads.add(thread);
+        }
+        log.info("Буфер отложенной записи запущен: ёмкость {}, пачка {}, интервал {} мс, режим {}",
+                capacity, flushSize, flushIntervalMs, durability);
+    }
+
+    /**
+     * Метод помещает событие в очередь на запись.
+     * В режиме ACK ожидает фиксации пачки, в режиме FIRE_AND_FORGET возвращается сразу.
+     *
+     * @param hit событие для сохранения.
+     * @throws IngestOverloadedException если очередь не освободилась за stats.ingest.write-behind.enqueue-timeout-ms
+     *                                   или пачка не записана за stats.ingest.write-behind.ack-timeout-ms.
+     */
+    public void submit(EndpointHit hit) {
+        if (!running) {
+            hitWriter.write(List.of(hit));
+            return;
+        }
+        PendingHit pending = new PendingHit(hit, durability == Durability.ACK ? new CompletableFuture<>() : null);
+        try {
+            if (!queue.offer(pending, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IngestOverloadedException("Очередь записи статистики переполнена");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IngestOverloadedException("Постановка события в очередь прервана");
+        }
+        if (!running && queue.remove(pending)) {
+            // Буфер остановился между проверкой и постановкой в очередь: сбрасыватели могли уже завершиться.
+            hitWriter.write(List.of(hit));
+            return;
+        }
+        if (pending.ack() != null) {
+            awaitAck(pending.ack());
+        }
+    }
+
+    private void awaitAck(CompletableFuture<Void> ack) {
+        try {
+            ack.get(ackTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IngestOverloadedException("Событие не записано за " + ackTimeoutMs + " мс");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IngestOverloadedException("Ожидание записи события прервано");
+        }
+    }
+
+    /**
+     * Метод останавливает приём событий в очередь и дожидается, пока потоки-сбрасыватели запишут остаток.
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        for (Thread thread : flusherThreads) {
+            thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        List<PendingHit> left = new ArrayList<>();
+        queue.drainTo(left);
+        if (!left.isEmpty()) {
+            failedCounter.increment(left.size());
+            IngestOverloadedException error = new IngestOverloadedException("Буфер записи статистики остановлен");
+            left.forEach(pending -> {
+                if (pending.ack() != null) {
+                    pending.ack().completeExceptionally(error);
+                }
+            });
+            log.warn("Буфер отложенной записи остановлен, не записано событий: {}", left.size());
+        } else {
+            log.info("Буфер отложенной записи остановлен, очередь пуста");
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingHit> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingHit first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Метод добирает пачку до flushSize событий, ожидая новые события не дольше flushIntervalMs.
+     */
+    private void fillBatch(List<PendingHit> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (batch.size() < flushSize) {
+            queue.drainTo(batch, flushSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= flushSize || remaining <= 0 || !running) {
+                return;
+            }
+            PendingHit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingHit> batch) {
+        List<EndpointHit> hits = new ArrayList<>(batch.size());
+        for (PendingHit pending : batch) {
+            hits.add(pending.hit());
+        }
+        long startedAt = System.nanoTime();
+        try {
+            hitWriter.write(hits);
+            flushTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            batch.forEach(pending -> {
+                if (pending.ack() != null) {
+                    pending.ack().complete(null);
+                }
+            });
+        } catch (RuntimeException e) {
+            failedCounter.increment(hits.size());
+            log.error("Не удалось записать пачку из {} событий", hits.size(), e);
+            batch.forEach(pending -> {
+                if (pending.ack() != null) {
+                    pending.ack().completeExceptionally(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Событие в очереди и признак его фиксации (null в режиме FIRE_AND_FORGET).
+     */
+    private record PendingHit(EndpointHit hit, CompletableFuture<Void> ack) {
+    }
+}
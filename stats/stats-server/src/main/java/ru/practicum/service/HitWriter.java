@@ -0,0 +1,122 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.model.EndpointHit;
+import ru.practicum.model.RollupKey;
+import ru.practicum.model.RollupResolution;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.repository.AllTimeRepository;
+import ru.practicum.repository.HitBatchRepository;
+import ru.practicum.repository.PendingHitRepository;
+import ru.practicum.repository.RollupRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Компонент HitWriter отвечает за запись пачки событий в хранилище статистики.
+ * Через него проходят все пути сохранения: синхронный /hit, пакетный /hit/batch и буфер отложенной записи.
+ * Вместе с событиями в той же транзакции обновляются таблицы предагрегированной статистики и, если включено
+ * свойство stats.sketch.enabled, или stats.bitmap.enabled, события добавляются в очередь statistics_pending,
+ * из которой AggregateFolder пачками пополняет скетчи и дневные множества уникальных IP-адресов; при stats.all-time.enabled обновляются счётчики
+ * за всё время. Приложение и URI хранятся ключами словарей
+ * StatsDictionary. После фиксации транзакции события передаются слушателям HitListener.
+ * Компонент также хранит границы записанных событий по дням, чтобы запросы за всё время не читали их из базы
+ * данных при каждом обращении.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitWriter {
+    private final HitBatchRepository batchRepository;
+    private final RollupRepository rollupRepository;
+    private final PendingHitRepository pendingRepository;
+    private final AllTimeRepository allTimeRepository;
+    private final List<HitListener> listeners;
+    private final StatsDictionary dictionary;
+    @Value("${stats.sketch.enabled:true}")
+    private boolean sketchEnabled;
+    @Value("${stats.bitmap.enabled:true}")
+    private boolean bitmapEnabled;
+    @Value("${stats.all-time.enabled:true}")
+    private boolean allTimeEnabled;
+
+    private final AtomicReference<TimeSegment> bounds = new AtomicReference<>();
+
+    @PostConstruct
+    void init() {
+        bounds.set(rollupRepository.findBounds(RollupResolution.DAY));
+    }
+
+    /**
+     * Метод возвращает интервал от начала первого до конца последнего дня, за которые записывались события,
+     * или null, если событий нет. Границы только расширяются и расширяются до записи пачки, поэтому после
+     * отката транзакции могут оказаться шире фактических, но никогда не бывают уже.
+     */
+    public TimeSegment getBounds() {
+        return bounds.get();
+    }
+
+    /**
+     * Метод сохраняет события и обновляет предагрегированную статистику одной транзакцией.
+     *
+     * @param hits список событий для сохранения.
+     */
+    @Transactional
+    public void write(List<EndpointHit> hits) {
+        dictionary.encode(hits);
+        if (!hits.isEmpty()) {
+            extendBounds(hits.stream().map(EndpointHit::getTimestamp).min(LocalDateTime::compareTo).orElseThrow(),
+                    hits.stream().map(EndpointHit::getTimestamp).max(LocalDateTime::compareTo).orElseThrow());
+        }
+        batchRepository.saveAll(hits);
+        notifyAfterCommit(hits);
+        for (RollupResolution resolution : RollupResolution.values()) {
+            Map<RollupKey, Long> counts = new TreeMap<>();
+            for (EndpointHit hit : hits) {
+                counts.merge(new RollupKey(hit.getAppId(), hit.getUriId(), resolution.floor(hit.getTimestamp())),
+                        1L, Long::sum);
+            }
+            rollupRepository.increment(resolution, counts);
+        }
+        if (allTimeEnabled) {
+            allTimeRepository.increment(hits);
+        }
+        if (sketchEnabled || bitmapEnabled) {
+            pendingRepository.saveAll(hits);
+        }
+    }
+
+    /**
+     * Метод расширяет границы записанных событий до дней, содержащих моменты first и last.
+     */
+    public void extendBounds(LocalDateTime first, LocalDateTime last) {
+        TimeSegment batch = new TimeSegment(RollupResolution.DAY, RollupResolution.DAY.floor(first),
+                RollupResolution.DAY.floor(last).plusDays(1));
+        bounds.accumulateAndGet(batch, (current, update) -> current == null ? update
+                : new TimeSegment(RollupResolution.DAY, current.from().isBefore(update.from()) ? current.from()
+                : update.from(), current.to().isAfter(update.to()) ? current.to() : update.to()));
+    }
+
+    private void notifyAfterCommit(List<EndpointHit> hits) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                listeners.forEach(listener -> listener.onHits(hits));
+            }
+        });
+    }
+}
@@ -0,0 +1,217 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.practicum.dto.StatsViewDto;
+import ru.practicum.exception.BadParametersException;
+import ru.practicum.model.StatsPrecision;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рассылка счётчиков обращений подписчикам GET /stats/stream (Server-Sent Events).
+ * Раз в stats.live.interval-ms миллисекунд счётчики всех URI, на которые есть подписки, читаются одним запросом
+ * статистики за всё время и рассылаются подписчикам тех URI, счётчики которых изменились с прошлого тика;
+ * новый подписчик получает текущие значения на ближайшем тике. Количество подписчиков не влияет
+ * на количество запросов к хранилищу.
+ * Тики выполняются отдельным потоком, а отправка — виртуальным потоком подписчика, поэтому запись событий
+ * и другие подписчики не ждут медленного клиента. Пока отправка клиенту не завершилась, новые значения
+ * заменяют ещё не отправленные значения тех же URI, так что очередь подписчика не растёт. Подписка закрывается
+ * через stats.live.timeout-ms миллисекунд (клиент EventSource переподключается сам) или при первой ошибке
+ * отправки; отключившиеся клиенты без обновлений обнаруживаются по комментарию, который отправляется
+ * раз в stats.live.heartbeat-ms миллисекунд.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LiveStatsBroadcaster {
+    private static final String ALL_TIME_START = "1970-01-01 00:00:00";
+    private static final String ALL_TIME_END = "9999-12-31 23:59:59";
+    private static final Comparator<StatsViewDto> BY_APP = Comparator.comparing(StatsViewDto::getApp);
+
+    private final StatsService service;
+    @Value("${stats.live.interval-ms:2000}")
+    private long intervalMs;
+    @Value("${stats.live.timeout-ms:600000}")
+    private long timeoutMs;
+    @Value("${stats.live.heartbeat-ms:30000}")
+    private long heartbeatMs;
+    @Value("${stats.live.max-uris:100}")
+    private int maxUris;
+
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final Map<String, List<StatsViewDto>> last = new HashMap<>();
+    private ScheduledExecutorService ticker;
+    private ExecutorService senders;
+
+    @PostConstruct
+    void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("stats-live").factory());
+        senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stats-live-sender-", 0).factory());
+        ticker.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        ticker.shutdownNow();
+        senders.shutdownNow();
+        subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+    }
+
+    /**
+     * Метод регистрирует подписчика на счётчики обращений к URI.
+     *
+     * @param uris URI без символа *; не больше stats.live.max-uris значений.
+     * @return поток событий hits; данные события — объект, в котором каждому изменившемуся URI соответствует
+     *         список строк статистики по приложениям.
+     */
+    public SseEmitter subscribe(List<String> uris) {
+        Set<String> distinct = new LinkedHashSet<>(uris);
+        if (distinct.isEmpty() || distinct.size() > maxUris) {
+            throw new BadParametersException("Количество URI подписки должно быть от 1 до " + maxUris);
+        }
+        for (String uri : distinct) {
+            if (uri.contains("*")) {
+                throw new BadParametersException("Подписка на URI с символом * не поддерживается: " + uri);
+            }
+        }
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeoutMs), distinct);
+        subscriber.emitter.onCompletion(() -> unsubscribe(subscriber));
+        subscriber.emitter.onTimeout(subscriber.emitter::complete);
+        subscriber.emitter.onError(error -> unsubscribe(subscriber));
+        for (String uri : distinct) {
+            subscribers.computeIfAbsent(uri, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        }
+        log.info("Новая подписка на счётчики обращений к {}", distinct);
+        return subscriber.emitter;
+    }
+
+    /**
+     * Метод читает счётчики всех URI с подписками и передаёт изменившиеся значения подписчикам.
+     */
+    void tick() {
+        try {
+            List<String> uris = new ArrayList<>(subscribers.keySet());
+            last.keySet().retainAll(uris);
+            if (uris.isEmpty()) {
+                return;
+            }
+            Map<String, List<StatsViewDto>> current = new HashMap<>();
+            for (StatsViewDto row : service.getStatistics(ALL_TIME_START, ALL_TIME_END, uris, false,
+                    StatsPrecision.EXACT, false)) {
+                current.computeIfAbsent(row.getUri(), key -> new ArrayList<>()).add(row);
+            }
+            long now = System.currentTimeMillis();
+            Set<Subscriber> notified = new LinkedHashSet<>();
+            for (String uri : uris) {
+                List<StatsViewDto> rows = current.getOrDefault(uri, new ArrayList<>());
+                rows.sort(BY_APP);
+                boolean changed = !rows.equals(last.put(uri, rows));
+                for (Subscriber subscriber : subscribers.getOrDefault(uri, Set.of())) {
+                    if (subscriber.pending.remove(uri) || changed) {
+                        subscriber.offer(uri, rows);
+                        notified.add(subscriber);
+                    }
+                }
+            }
+            subscribers.values().forEach(set -> set.forEach(subscriber -> {
+                if (notified.contains(subscriber) || now - subscriber.lastSent >= heartbeatMs) {
+                    subscriber.schedule(now);
+                }
+            }));
+        } catch (RuntimeException e) {
+            log.warn("Не удалось разослать счётчики обращений подписчикам", e);
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        for (String uri : subscriber.uris) {
+            subscribers.computeIfPresent(uri, (key, set) -> {
+                set.remove(subscriber);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    /**
+     * Подписчик: поток событий, URI подписки, URI, текущие значения которых ещё не отправлялись (pending),
+     * и значения, ожидающие отправки (updates).
+     */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<String> uris;
+        private final Set<String> pending = ConcurrentHashMap.newKeySet();
+        private final Map<String, List<StatsViewDto>> updates = new LinkedHashMap<>();
+        private boolean sending;
+        private volatile long lastSent = System.currentTimeMillis();
+
+        private Subscriber(SseEmitter emitter, Set<String> uris) {
+            this.emitter = emitter;
+            this.uris = uris;
+            pending.addAll(uris);
+        }
+
+        private synchronized void offer(String uri, List<StatsViewDto> rows) {
+            updates.put(uri, rows);
+        }
+
+        /**
+         * Метод запускает отправку накопленных значений, если она ещё не идёт; без значений отправляется
+         * комментарий, по которому обнаруживается отключившийся клиент.
+         */
+        private synchronized void schedule(long now) {
+            if (sending) {
+                return;
+            }
+            sending = true;
+            lastSent = now;
+            senders.execute(this::send);
+        }
+
+        private void send() {
+            try {
+                boolean sent = false;
+                while (true) {
+                    Map<String, List<StatsViewDto>> batch;
+                    synchronized (this) {
+                        if (sent && updates.isEmpty()) {
+                            sending = false;
+                            return;
+                        }
+                        batch = new LinkedHashMap<>(updates);
+                        updates.clear();
+                    }
+                    if (batch.isEmpty()) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        emitter.send(SseEmitter.event().name("hits").data(batch, MediaType.APPLICATION_JSON));
+                    }
+                    sent = true;
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Ошибка записи означает, что клиент отключился; ответ завершает сам контейнер.
+                log.debug("Подписчик отключился: {}", e.getMessage());
+                unsubscribe(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.repository.PartitionRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Менеджер секций таблицы statistics.
+ * Таблица делится на секции по дням или месяцам (stats.partition.interval). Секции создаются только
+ * по расписанию: менеджер заранее создаёт текущую и stats.partition.premake будущих секций, а события
+ * с нетипичным временем (например, из 1970 или 2999 года) записываются в секцию по умолчанию statistics_default.
+ * По расписанию менеджер также отключает или удаляет секции старше stats.partition.retention-days (0 — хранить
+ * всё) и удаляет такие же старые события секции по умолчанию.
+ * Срок хранения относится только к необработанным событиям: таблицы предагрегированной статистики, скетчи,
+ * множества IP-адресов и счётчики за всё время его переживают. Перед удалением событий граница сжатия
+ * HitCompactor переносится на границу срока хранения, поэтому статистика за этот период по-прежнему
+ * считается по агрегатам, а не по оставшейся части событий.
+ * Запросы с ограничением по времени события читают только подходящие секции.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class PartitionManager {
+    private static final String PREFIX = "statistics_p";
+    private static final DateTimeFormatter DAY_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter MONTH_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final PartitionRepository partitionRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final Optional<HitCompactor> compactor;
+    @Value("${stats.partition.interval:MONTHS}")
+    private ChronoUnit interval;
+    @Value("${stats.partition.premake:2}")
+    private int premake;
+    @Value("${stats.partition.retention-days:0}")
+    private int retentionDays;
+    @Value("${stats.partition.retention-action:DETACH}")
+    private RetentionAction retentionAction;
+
+    private final Set<LocalDateTime> partitions = ConcurrentHashMap.newKeySet();
+    private TransactionTemplate ddlTransaction;
+    private volatile boolean enabled;
+
+    /**
+     * Действие с секциями, вышедшими за срок хранения.
+     */
+    public enum RetentionAction {
+        DETACH,
+        DROP
+    }
+
+    @PostConstruct
+    void init() {
+        if (interval != ChronoUnit.DAYS && interval != ChronoUnit.MONTHS) {
+            throw new IllegalStateException("stats.partition.interval должен быть DAYS или MONTHS");
+        }
+        ddlTransaction = new TransactionTemplate(transactionManager);
+        ddlTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        if (!partitionRepository.isPartitioned()) {
+            log.warn("Таблица statistics не секционирована, управление секциями отключено");
+            return;
+        }
+        for (String name : partitionRepository.findPartitions()) {
+            LocalDateTime start = parseStart(name);
+            if (start != null) {
+                partitions.add(start);
+            }
+        }
+        enabled = true;
+        maintain();
+    }
+
+    /**
+     * Метод создаёт будущие секции и применяет срок хранения. Запускается при старте и по расписанию
+     * stats.partition.maintenance-cron.
+     */
+    @Scheduled(cron = "${stats.partition.maintenance-cron:0 0 * * * *}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime current = floor(LocalDateTime.now());
+        for (int i = 0; i <= premake; i++) {
+            ensurePartition(current.plus(i, interval));
+        }
+        if (retentionDays > 0) {
+            applyRetention(LocalDateTime.now().minusDays(retentionDays));
+        }
+    }
+
+    /**
+     * Метод разбивает полуоткрытый диапазон [from, to) границами существующих секций, чтобы каждая часть
+     * читала одну секцию. Промежуток между секциями, в котором нет ни одной секции, остаётся одной частью,
+     * поэтому количество частей не больше количества секций диапазона, сколько бы лет он ни охватывал.
+     * Для несекционированной таблицы диапазон не разбивается.
+     *
+     * @return части диапазона в порядке возрастания времени.
+     */
+    public List<TimeSegment> split(LocalDateTime from, LocalDateTime to) {
+        if (!enabled) {
+            return List.of(new TimeSegment(null, from, to));
+        }
+        List<TimeSegment> ranges = new ArrayList<>();
+        LocalDateTime start = from;
+        for (LocalDateTime partition : new TreeSet<>(partitions).subSet(floor(from), to)) {
+            if (start.isBefore(partition)) {
+                ranges.add(new TimeSegment(null, start, partition));
+                start = partition;
+            }
+            LocalDateTime next = partition.plus(1, interval);
+            LocalDateTime end = next.isBefore(to) ? next : to;
+            ranges.add(new TimeSegment(null, start, end));
+            start = end;
+        }
+        if (start.isBefore(to)) {
+            ranges.add(new TimeSegment(null, start, to));
+        }
+        return ranges;
+    }
+
+    private synchronized void ensurePartition(LocalDateTime start) {
+        if (partitions.contains(start)) {
+            return;
+        }
+        String name = partitionName(start);
+        Integer moved = ddlTransaction.execute(status ->
+                partitionRepository.createPartition(name, start, start.plus(1, interval)));
+        partitions.add(start);
+        log.info("Создана секция {} статистики, из секции по умолчанию перенесено {} событий", name, moved);
+    }
+
+    private synchronized void applyRetention(LocalDateTime threshold) {
+        LocalDateTime boundary = threshold.truncatedTo(ChronoUnit.DAYS);
+        compactor.ifPresent(value -> value.retire(boundary));
+        Integer deleted = ddlTransaction.execute(status -> partitionRepository.deleteDefaultBefore(boundary));
+        if (deleted != null && deleted > 0) {
+            log.info("Из секции по умолчанию удалено {} событий раньше {}", deleted, boundary);
+        }
+        for (LocalDateTime start : new TreeSet<>(partitions)) {
+            if (start.plus(1, interval).isAfter(boundary)) {
+                break;
+            }
+            String name = partitionName(start);
+            ddlTransaction.executeWithoutResult(status -> {
+                if (retentionAction == RetentionAction.DROP) {
+                    partitionRepository.dropPartition(name);
+                } else {
+                    partitionRepository.detachPartition(name);
+                }
+            });
+            partitions.remove(start);
+            log.info("Секция {} статистики вышла за срок хранения: {}", name, retentionAction);
+        }
+    }
+
+    private String partitionName(LocalDateTime start) {
+        return PREFIX + start.format(interval == ChronoUnit.DAYS ? DAY_SUFFIX : MONTH_SUFFIX);
+    }
+
+    private LocalDateTime floor(LocalDateTime time) {
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        return interval == ChronoUnit.DAYS ? day : day.withDayOfMonth(1);
+    }
+
+    private LocalDateTime parseStart(String name) {
+        if (!name.startsWith(PREFIX)) {
+            return null;
+        }
+        String suffix = name.substring(PREFIX.length());
+        if (interval == ChronoUnit.DAYS && suffix.length() == 8) {
+            return LocalDate.parse(suffix, DAY_SUFFIX).atStartOfDay();
+        }
+        if (interval == ChronoUnit.MONTHS && suffix.length() == 6) {
+            return LocalDate.parse(suffix + "01", DAY_SUFFIX).atStartOfDay();
+        }
+        log.warn("Секция {} не соответствует интервалу {} и не обслуживается", name, interval);
+        return null;
+    }
+}
@@ -0,0 +1,147 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.repository.QueryContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+
+/**
+ * Параллельное чтение необработанных событий по секциям таблицы statistics. Таблицы агрегатов не секционированы
+ * и читаются одним запросом, поэтому исполнитель используется только для чтения самих событий.
+ * Диапазон, затрагивающий не меньше stats.query.parallel-min-partitions секций, разбивается границами секций;
+ * части читаются одновременно не более чем stats.query.parallelism потоками, каждая в своей транзакции только
+ * для чтения и на своём соединении пула stats-query, а частичные результаты по парам (app, uri) объединяются.
+ * Более короткие диапазоны читаются одним запросом в потоке вызова.
+ * Части отменяются вместе с обращением (QueryContext), а при ошибке одной из них отменяются остальные.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class PartitionedQueryExecutor {
+    private final PartitionManager partitionManager;
+    private final PlatformTransactionManager transactionManager;
+    @Value("${stats.query.parallelism:4}")
+    private int parallelism;
+    @Value("${stats.query.parallel-min-partitions:3}")
+    private int minPartitions;
+    @Value("${stats.query.timeout-seconds:30}")
+    private int timeoutSeconds;
+
+    private ExecutorService executor;
+    private TransactionTemplate readTransaction;
+
+    @PostConstruct
+    void start() {
+        readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        readTransaction.setReadOnly(true);
+        readTransaction.setTimeout(timeoutSeconds);
+        if (parallelism > 1) {
+            executor = Executors.newFixedThreadPool(parallelism, Thread.ofPlatform().name("stats-query-worker-", 1)
+                    .daemon().factory());
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Метод проверяет, будет ли диапазон [from, to) прочитан по частям.
+     */
+    public boolean isParallel(LocalDateTime from, LocalDateTime to) {
+        return executor != null && partitionManager.split(from, to).size() >= minPartitions;
+    }
+
+    /**
+     * Метод читает полуоткрытый диапазон [from, to) по частям и объединяет частичные результаты.
+     *
+     * @param query запрос части диапазона [from, to); для короткого диапазона выполняется один раз в текущей
+     *              транзакции.
+     * @param merge объединение значений одной пары (app, uri) из разных частей; может изменять первый аргумент.
+     * @return объединённый результат по парам (app, uri).
+     */
+    public <T> Map<HitKey, T> collect(LocalDateTime from, LocalDateTime to,
+                                      BiFunction<LocalDateTime, LocalDateTime, Map<HitKey, T>> query,
+                                      BinaryOperator<T> merge) {
+        List<TimeSegment> ranges = partitionManager.split(from, to);
+        if (executor == null || ranges.size() < minPartitions) {
+            return query.apply(from, to);
+        }
+        log.debug("Диапазон между {} и {} читается по {} частям", from, to, ranges.size());
+        QueryContext parent = QueryContext.current();
+        QueryContext context = parent != null ? parent.fork() : new QueryContext();
+        CompletionService<Map<HitKey, T>> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Map<HitKey, T>>> futures = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        try {
+            for (TimeSegment range : ranges) {
+                futures.add(completion.submit(() -> {
+                    AtomicReference<Map<HitKey, T>> part = new AtomicReference<>();
+                    context.run(() -> part.set(readTransaction.execute(status ->
+                            query.apply(range.from(), range.to()))));
+                    return part.get();
+                }));
+            }
+            Map<HitKey, T> result = new HashMap<>();
+            for (int i = 0; i < ranges.size(); i++) {
+                Future<Map<HitKey, T>> done = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    throw new QueryTimeoutException("Чтение диапазона между " + from + " и " + to +
+                            " не завершилось за " + timeoutSeconds + " с");
+                }
+                done.get().forEach((key, value) -> result.merge(key, value, merge));
+            }
+            return result;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Чтение статистики прервано", e);
+        } finally {
+            if (futures.stream().anyMatch(future -> !future.isDone())) {
+                context.cancel();
+                futures.forEach(future -> future.cancel(false));
+            }
+            if (parent != null) {
+                parent.close(context);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ru.practicum.service;
+
+import ru.practicum.model.RollupResolution;
+import ru.practicum.model.TimeSegment;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Класс RollupPlanner разбивает диапазон времени на интервалы, которые можно прочитать из таблиц
+ * предагрегированной статистики.
+ * Середина диапазона покрывается самыми крупными интервалами, а неровные края последовательно уточняются более
+ * мелкими; то, что не выровнено даже по минуте, читается из необработанных событий.
+ */
+public final class RollupPlanner {
+    private RollupPlanner() {
+    }
+
+    /**
+     * Метод строит план чтения полуоткрытого диапазона [from, to) по всем таблицам предагрегированной статистики.
+     *
+     * @param from начало диапазона (включительно).
+     * @param to   конец диапазона (не включительно).
+     * @return интервалы плана в порядке возрастания времени.
+     */
+    public static List<TimeSegment> plan(LocalDateTime from, LocalDateTime to) {
+        return plan(from, to, List.of(RollupResolution.values()));
+    }
+
+    /**
+     * Метод строит план чтения полуоткрытого диапазона [from, to) по таблицам заданных разрешений.
+     *
+     * @param from   начало диапазона (включительно).
+     * @param to     конец диапазона (не включительно).
+     * @param levels разрешения, упорядоченные от самого крупного к самому мелкому.
+     * @return интервалы плана в порядке возрастания времени.
+     */
+    public static List<TimeSegment> plan(LocalDateTime from, LocalDateTime to, List<RollupResolution> levels) {
+        List<TimeSegment> segments = new ArrayList<>();
+        split(from, to, levels, 0, segments);
+        return segments;
+    }
+
+    private static void split(LocalDateTime from, LocalDateTime to, List<RollupResolution> levels, int level,
+                              List<TimeSegment> segments) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        if (level == levels.size()) {
+            segments.add(new TimeSegment(null, from, to));
+            return;
+        }
+        RollupResolution resolution = levels.get(level);
+        LocalDateTime alignedFrom = resolution.ceil(from);
+        LocalDateTime alignedTo = resolution.floor(to);
+        if (!alignedFrom.isBefore(alignedTo)) {
+            split(from, to, levels, level + 1, segments);
+            return;
+        }
+        split(from, alignedFrom, levels, level + 1, segments);
+        segments.add(new TimeSegment(resolution, alignedFrom, alignedTo));
+        split(alignedTo, to, levels, level + 1, segments);
+    }
+}
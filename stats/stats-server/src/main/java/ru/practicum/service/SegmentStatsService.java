@@ -0,0 +1,229 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.HitBatchErrorDto;
+import ru.practicum.dto.HitBatchResultDto;
+import ru.practicum.dto.StatsViewDto;
+import ru.practicum.dto.TimeSeriesPointDto;
+import ru.practicum.exception.BadParametersException;
+import ru.practicum.mapper.StatsMapper;
+import ru.practicum.model.EndpointHit;
+import ru.practicum.model.RollupResolution;
+import ru.practicum.model.StatsPrecision;
+import ru.practicum.model.UriFilter;
+import ru.practicum.segment.HitAggregator;
+import ru.practicum.segment.SegmentStore;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Класс SegmentStatsService реализация интерфейса StatsService поверх сегментного хранилища SegmentStore.
+ * Каждый запрос статистики читает события за период из сегментов; приближённый подсчёт не используется,
+ * запросы с precision=approx получают точный ответ.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "segment")
+public class SegmentStatsService implements StatsService {
+    private static final Comparator<StatsViewDto> BY_HITS = Comparator.comparing(StatsViewDto::getHits).reversed();
+
+    private final SegmentStore store;
+    private final Optional<HitDeduplicator> deduplicator;
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    @Value("${stats.ingest.max-batch-size:10000}")
+    private int maxBatchSize;
+    @Value("${stats.top.max-limit:1000}")
+    private int maxTopLimit;
+    @Value("${stats.timeseries.max-buckets:10000}")
+    private int maxTimeSeriesBuckets;
+
+    @Override
+    public void saveEvent(EndpointHitDto event) {
+        String reason = HitValidator.validate(event);
+        if (reason != null) {
+            throw new BadParametersException(reason);
+        }
+        EndpointHit endpointHit = StatsMapper.toEndpointHit(event);
+        if (deduplicator.isPresent() && !deduplicator.get().findDuplicates(List.of(endpointHit)).isEmpty()) {
+            log.info("Повторное событие отброшено {}", endpointHit);
+            return;
+        }
+        store.append(List.of(endpointHit));
+        deduplicator.ifPresent(d -> d.remember(List.of(endpointHit)));
+        log.info("Событие сохранено в общую статистику {}", endpointHit);
+    }
+
+    @Override
+    public HitBatchResultDto saveEvents(List<EndpointHitDto> events) {
+        if (events.size() > maxBatchSize) {
+            throw new BadParametersException("Размер пакета превышает " + maxBatchSize);
+        }
+        List<EndpointHit> valid = new ArrayList<>(events.size());
+        List<Integer> indexes = new ArrayList<>(events.size());
+        List<HitBatchErrorDto> failed = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            String reason = HitValidator.validate(events.get(i));
+            if (reason != null) {
+                failed.add(new HitBatchErrorDto(i, reason));
+            } else {
+                valid.add(StatsMapper.toEndpointHit(events.get(i)));
+                indexes.add(i);
+            }
+        }
+        List<Integer> duplicates = deduplicator.map(d -> d.findDuplicates(valid)).orElse(List.of());
+        List<EndpointHit> hits = new ArrayList<>(valid.size());
+        List<Integer> suppressed = new ArrayList<>(duplicates.size());
+        for (int i = 0, next = 0; i < valid.size(); i++) {
+            if (next < duplicates.size() && duplicates.get(next) == i) {
+                suppressed.add(indexes.get(i));
+                next++;
+            } else {
+                hits.add(valid.get(i));
+            }
+        }
+        store.append(hits);
+        deduplicator.ifPresent(d -> d.remember(hits));
+        log.info("Пакет событий сохранён в общую статистику: сохранено {}, отклонено {}, повторов {}", hits.size(),
+                failed.size(), suppressed.size());
+        return new HitBatchResultDto(hits.size(), failed, suppressed);
+    }
+
+    @Override
+    public List<StatsViewDto> getStatistics(String start, String end, List<String> uris, Boolean unique,
+                                            StatsPrecision precision, Boolean groupBySegment) {
+        LocalDateTime parsedStart = LocalDateTime.parse(start, formatter);
+        LocalDateTime parsedEnd = LocalDateTime.parse(end, formatter);
+        checkRange(parsedStart, parsedEnd);
+        if (uris != null && uris.isEmpty()) {
+            return List.of();
+        }
+        UriFilter filter = UriFilter.parse(uris);
+        boolean grouped = Boolean.TRUE.equals(groupBySegment) && !filter.prefixes().isEmpty();
+        log.info("Получена статистика за период между {} и {}", start, end);
+        return aggregate(parsedStart, parsedEnd, filter, grouped, Boolean.TRUE.equals(unique));
+    }
+
+    /**
+     * Запрос проверяется при выполнении; события читаются из памяти, поэтому запрос не считается долгим.
+     */
+    @Override
+    public boolean prepareStatistics(String start, String end, List<String> uris, Boolean unique,
+                                     StatsPrecision precision, Boolean groupBySegment) {
+        return false;
+    }
+
+    @Override
+    public void streamStatistics(String start, String end, List<String> uris, Boolean unique,
+                                 StatsPrecision precision, Boolean groupBySegment, Consumer<StatsViewDto> consumer) {
+        getStatistics(start, end, uris, unique, precision, groupBySegment).forEach(consumer);
+    }
+
+    @Override
+    public List<StatsViewDto> getTop(String start, String end, Integer limit, String prefix, Boolean unique,
+                                     StatsPrecision precision) {
+        LocalDateTime parsedStart = LocalDateTime.parse(start, formatter);
+        LocalDateTime parsedEnd = LocalDateTime.parse(end, formatter);
+        checkRange(parsedStart, parsedEnd);
+        if (limit == null || limit <= 0 || limit > maxTopLimit) {
+            throw new BadParametersException("Параметр limit должен быть от 1 до " + maxTopLimit);
+        }
+        log.info("Получен рейтинг посещаемости за период между {} и {}", start, end);
+        List<StatsViewDto> result = aggregate(parsedStart, parsedEnd, UriFilter.prefix(prefix), false,
+                Boolean.TRUE.equals(unique));
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    /**
+     * Временной ряд считается отдельным чтением каждого интервала: сегменты не хранят предагрегированных
+     * значений, а блоки событий вне интервала пропускаются по индексу времени сегмента.
+     */
+    @Override
+    public List<TimeSeriesPointDto> getTimeSeries(String uri, String start, String end, String bucket,
+                                                  Boolean unique) {
+        LocalDateTime parsedStart = LocalDateTime.parse(start, formatter);
+        LocalDateTime parsedEnd = LocalDateTime.parse(end, formatter);
+        checkRange(parsedStart, parsedEnd);
+        RollupResolution resolution = RollupResolution.fromBucket(bucket);
+        if (resolution.between(resolution.floor(parsedStart), resolution.floor(parsedEnd)) >= maxTimeSeriesBuckets) {
+            throw new BadParametersException("Количество интервалов временного ряда превышает " +
+                    maxTimeSeriesBuckets);
+        }
+        UriFilter filter = UriFilter.parse(List.of(uri));
+        int[] groups = new int[store.uriCount()];
+        for (int uriId = 0; uriId < groups.length; uriId++) {
+            groups[uriId] = filter.matches(store.uri(uriId)) ? 0 : -1;
+        }
+        List<TimeSeriesPointDto> result = new ArrayList<>();
+        for (LocalDateTime time = resolution.floor(parsedStart); !time.isAfter(parsedEnd);
+             time = resolution.next(time)) {
+            // Все приложения считаются одной строкой, поэтому уникальный адрес учитывается в интервале один раз.
+            HitAggregator aggregator = new HitAggregator(groups, Boolean.TRUE.equals(unique));
+            LocalDateTime from = time.isBefore(parsedStart) ? parsedStart : time;
+            LocalDateTime to = resolution.next(time).minusSeconds(1);
+            store.scan(from, to.isAfter(parsedEnd) ? parsedEnd : to,
+                    (appId, uriId, ipHigh, ipLow) -> aggregator.visit(0, uriId, ipHigh, ipLow));
+            long[] hits = new long[1];
+            aggregator.forEach((appId, group, count) -> hits[0] += count);
+            result.add(new TimeSeriesPointDto(time.format(formatter), hits[0]));
+        }
+        log.info("Получен временной ряд обращений к {} за период между {} и {}", uri, start, end);
+        return result;
+    }
+
+    @Override
+    public List<StatsViewDto> getTrending(String window, Integer limit, String prefix) {
+        throw new BadParametersException("Счётчики скользящего окна не поддерживаются сегментным хранилищем");
+    }
+
+    /**
+     * Метод aggregate считает обращения за период по сегментам. Перед чтением каждому ключу URI из словаря
+     * назначается номер группы результата, поэтому фильтр и группировка проверяются один раз на URI,
+     * а не на каждое событие.
+     */
+    private List<StatsViewDto> aggregate(LocalDateTime start, LocalDateTime end, UriFilter filter, boolean grouped,
+                                         boolean unique) {
+        int[] groups = new int[store.uriCount()];
+        Arrays.fill(groups, -1);
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> numbers = new HashMap<>();
+        for (int uriId = 0; uriId < groups.length; uriId++) {
+            String uri = store.uri(uriId);
+            if (!filter.matches(uri)) {
+                continue;
+            }
+            String name = grouped ? filter.group(uri) : uri;
+            groups[uriId] = numbers.computeIfAbsent(name, key -> {
+                names.add(key);
+                return names.size() - 1;
+            });
+        }
+        HitAggregator aggregator = new HitAggregator(groups, unique);
+        store.scan(start, end, aggregator);
+        List<StatsViewDto> result = new ArrayList<>();
+        aggregator.forEach((appId, group, hits) ->
+                result.add(new StatsViewDto(store.app(appId), names.get(group), hits)));
+        result.sort(BY_HITS);
+        return result;
+    }
+
+    private void checkRange(LocalDateTime start, LocalDateTime end) {
+        if (start.isAfter(end)) {
+            throw new BadParametersException("Неверно заданы даты");
+        }
+    }
+}
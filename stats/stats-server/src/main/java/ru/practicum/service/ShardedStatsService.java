@@ -0,0 +1,212 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.HitBatchErrorDto;
+import ru.practicum.dto.HitBatchResultDto;
+import ru.practicum.dto.StatsViewDto;
+import ru.practicum.dto.TimeSeriesPointDto;
+import ru.practicum.exception.BadParametersException;
+import ru.practicum.exception.ShardUnavailableException;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.StatsPrecision;
+import ru.practicum.model.UriFilter;
+import ru.practicum.router.Shard;
+import ru.practicum.router.ShardRouter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Класс ShardedStatsService реализация интерфейса StatsService для режима маршрутизатора (stats.storage=router).
+ * Маршрутизатор не хранит события: каждое событие передаётся узлу, которому принадлежит его URI, поэтому все
+ * события одного URI находятся на одном узле и узел считает уникальные IP-адреса пары (app, uri) точно.
+ * Запрос статистики по списку URI передаётся только узлам-владельцам, запрос по префиксам или по всем URI —
+ * всем узлам. Строки разных узлов не пересекаются по парам (app, uri), поэтому объединяются без пересчёта;
+ * при группировке по сегменту пути обращения групп суммируются. Уникальные IP-адреса группы URI и временной
+ * ряд уникальных IP-адресов по префиксу из ответов разных узлов не складываются, такие запросы отклоняются.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "router")
+public class ShardedStatsService implements StatsService {
+    private static final Comparator<StatsViewDto> BY_HITS = Comparator.comparing(StatsViewDto::getHits).reversed();
+
+    private final ShardRouter router;
+    @Value("${stats.ingest.max-batch-size:10000}")
+    private int maxBatchSize;
+
+    @Override
+    public void saveEvent(EndpointHitDto event) {
+        String reason = HitValidator.validate(event);
+        if (reason != null) {
+            throw new BadParametersException(reason);
+        }
+        Shard shard = router.owner(event.getUri());
+        HitBatchResultDto result = shard.postHits(List.of(event));
+        if (!result.getFailed().isEmpty()) {
+            throw new BadParametersException(result.getFailed().get(0).getReason());
+        }
+        log.info("Событие передано узлу {}", shard);
+    }
+
+    /**
+     * События пакета передаются узлам-владельцам параллельно. Если узел недоступен, его записи возвращаются
+     * в списке ошибок, а записи остальных узлов сохраняются, поэтому клиент может повторить только отклонённые
+     * записи.
+     */
+    @Override
+    public HitBatchResultDto saveEvents(List<EndpointHitDto> events) {
+        if (events.size() > maxBatchSize) {
+            throw new BadParametersException("Размер пакета превышает " + maxBatchSize);
+        }
+        List<HitBatchErrorDto> failed = new ArrayList<>();
+        Map<Shard, List<Integer>> indexes = new LinkedHashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            String reason = HitValidator.validate(events.get(i));
+            if (reason != null) {
+                failed.add(new HitBatchErrorDto(i, reason));
+            } else {
+                indexes.computeIfAbsent(router.owner(events.get(i).getUri()), shard -> new ArrayList<>()).add(i);
+            }
+        }
+        List<HitBatchResultDto> results = router.fanOut(indexes.keySet(), shard -> {
+            List<Integer> batch = indexes.get(shard);
+            try {
+                return shard.postHits(batch.stream().map(events::get).toList());
+            } catch (ShardUnavailableException e) {
+                log.warn("Пакет из {} событий не передан: {}", batch.size(), e.getMessage());
+                return new HitBatchResultDto(0, IntStream.range(0, batch.size())
+                        .mapToObj(index -> new HitBatchErrorDto(index, "Узел статистики недоступен"))
+                        .toList(), List.of());
+            }
+        });
+        int saved = 0;
+        List<Integer> suppressed = new ArrayList<>();
+        int shardNumber = 0;
+        for (List<Integer> batch : indexes.values()) {
+            HitBatchResultDto result = results.get(shardNumber++);
+            saved += result.getSaved();
+            for (HitBatchErrorDto error : result.getFailed()) {
+                failed.add(new HitBatchErrorDto(batch.get(error.getIndex()), error.getReason()));
+            }
+            if (result.getSuppressed() != null) {
+                result.getSuppressed().forEach(index -> suppressed.add(batch.get(index)));
+            }
+        }
+        failed.sort(Comparator.comparing(HitBatchErrorDto::getIndex));
+        suppressed.sort(Comparator.naturalOrder());
+        log.info("Пакет событий передан узлам {}: сохранено {}, отклонено {}, повторов {}", indexes.keySet(), saved,
+                failed.size(), suppressed.size());
+        return new HitBatchResultDto(saved, failed, suppressed);
+    }
+
+    @Override
+    public List<StatsViewDto> getStatistics(String start, String end, List<String> uris, Boolean unique,
+                                            StatsPrecision precision, Boolean groupBySegment) {
+        if (uris != null && uris.isEmpty()) {
+            return List.of();
+        }
+        UriFilter filter = UriFilter.parse(uris);
+        boolean grouped = Boolean.TRUE.equals(groupBySegment) && !filter.prefixes().isEmpty();
+        if (grouped && Boolean.TRUE.equals(unique) && router.getShards().size() > 1) {
+            throw new BadParametersException("Уникальные обращения по группам URI не считаются маршрутизатором: " +
+                    "URI группы могут принадлежать разным узлам");
+        }
+        Map<Shard, List<String>> targets = new LinkedHashMap<>();
+        if (filter.uris() != null && filter.prefixes().isEmpty()) {
+            for (String uri : filter.uris()) {
+                targets.computeIfAbsent(router.owner(uri), shard -> new ArrayList<>()).add(uri);
+            }
+        } else {
+            router.getShards().forEach(shard -> targets.put(shard, uris));
+        }
+        log.info("Получена статистика за период между {} и {} с узлов {}", start, end, targets.keySet());
+        List<List<StatsViewDto>> parts = router.fanOut(targets.keySet(), shard ->
+                shard.getStatistics(start, end, targets.get(shard), unique, precision, groupBySegment));
+        if (!grouped) {
+            return merge(parts, null);
+        }
+        Map<HitKey, Long> groups = new LinkedHashMap<>();
+        parts.forEach(part -> part.forEach(row ->
+                groups.merge(new HitKey(row.getApp(), row.getUri()), row.getHits(), Long::sum)));
+        List<StatsViewDto> result = new ArrayList<>();
+        groups.forEach((key, hits) -> result.add(new StatsViewDto(key.app(), key.uri(), hits)));
+        result.sort(BY_HITS);
+        return result;
+    }
+
+    /**
+     * Запрос проверяется при выполнении; узлы сами ограничивают стоимость своих частей.
+     */
+    @Override
+    public boolean prepareStatistics(String start, String end, List<String> uris, Boolean unique,
+                                     StatsPrecision precision, Boolean groupBySegment) {
+        return false;
+    }
+
+    @Override
+    public void streamStatistics(String start, String end, List<String> uris, Boolean unique,
+                                 StatsPrecision precision, Boolean groupBySegment, Consumer<StatsViewDto> consumer) {
+        getStatistics(start, end, uris, unique, precision, groupBySegment).forEach(consumer);
+    }
+
+    /**
+     * Каждый узел возвращает не больше limit своих пар (app, uri); пары узлов не пересекаются, поэтому первые
+     * limit строк объединённого ответа совпадают с рейтингом по всем событиям.
+     */
+    @Override
+    public List<StatsViewDto> getTop(String start, String end, Integer limit, String prefix, Boolean unique,
+                                     StatsPrecision precision) {
+        log.info("Получен рейтинг посещаемости за период между {} и {} со всех узлов", start, end);
+        return merge(router.fanOut(router.getShards(), shard ->
+                shard.getTop(start, end, limit, prefix, unique, precision)), limit);
+    }
+
+    @Override
+    public List<TimeSeriesPointDto> getTimeSeries(String uri, String start, String end, String bucket,
+                                                  Boolean unique) {
+        UriFilter filter = UriFilter.parse(List.of(uri));
+        if (filter.prefixes().isEmpty()) {
+            return router.owner(uri).getTimeSeries(uri, start, end, bucket, unique);
+        }
+        if (Boolean.TRUE.equals(unique) && router.getShards().size() > 1) {
+            throw new BadParametersException("Временной ряд уникальных обращений по префиксу не считается " +
+                    "маршрутизатором: URI префикса могут принадлежать разным узлам");
+        }
+        Map<String, Long> points = new LinkedHashMap<>();
+        router.fanOut(router.getShards(), shard -> shard.getTimeSeries(uri, start, end, bucket, unique))
+                .forEach(part -> part.forEach(point -> points.merge(point.getBucket(), point.getHits(), Long::sum)));
+        List<TimeSeriesPointDto> result = new ArrayList<>();
+        points.forEach((time, hits) -> result.add(new TimeSeriesPointDto(time, hits)));
+        log.info("Получен временной ряд обращений к {} за период между {} и {} со всех узлов", uri, start, end);
+        return result;
+    }
+
+    @Override
+    public List<StatsViewDto> getTrending(String window, Integer limit, String prefix) {
+        return merge(router.fanOut(router.getShards(), shard -> shard.getTrending(window, limit, prefix)), limit);
+    }
+
+    /**
+     * Метод объединяет непересекающиеся ответы узлов в порядке убывания количества обращений.
+     *
+     * @param limit наибольшее количество строк результата или null.
+     */
+    private List<StatsViewDto> merge(List<List<StatsViewDto>> parts, Integer limit) {
+        List<StatsViewDto> result = new ArrayList<>();
+        parts.forEach(result::addAll);
+        result.sort(BY_HITS);
+        return limit == null || result.size() <= limit ? result : result.subList(0, limit);
+    }
+}
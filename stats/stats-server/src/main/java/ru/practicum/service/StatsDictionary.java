@@ -0,0 +1,113 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.EndpointHit;
+import ru.practicum.repository.DictionaryRepository;
+import ru.practicum.repository.DictionaryRepository.Dictionary;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Кэш словарей приложений и URI в памяти сервиса статистики.
+ * Хранит соответствие в обе стороны: строка в ключ для записи событий и ключ в строку для чтения.
+ * Словари загружаются целиком при старте; новые значения добавляются в отдельной транзакции, чтобы ключ
+ * не пропал при откате транзакции записи событий.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class StatsDictionary {
+    private final DictionaryRepository dictionaryRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Map<Dictionary, Map<String, Integer>> ids = new EnumMap<>(Dictionary.class);
+    private final Map<Dictionary, Map<Integer, String>> values = new EnumMap<>(Dictionary.class);
+    private TransactionTemplate dictionaryTransaction;
+
+    @PostConstruct
+    void load() {
+        dictionaryTransaction = new TransactionTemplate(transactionManager);
+        dictionaryTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        for (Dictionary dictionary : Dictionary.values()) {
+            ids.put(dictionary, new ConcurrentHashMap<>());
+            values.put(dictionary, new ConcurrentHashMap<>());
+            dictionaryRepository.findAll(dictionary, (id, value) -> put(dictionary, id, value));
+        }
+        log.info("Словари статистики загружены: {} приложений, {} URI", ids.get(Dictionary.APP).size(),
+                ids.get(Dictionary.URI).size());
+    }
+
+    /**
+     * Метод заполняет ключи приложения и URI у событий, добавляя в словари отсутствующие значения.
+     *
+     * @param hits события для записи.
+     */
+    public void encode(List<EndpointHit> hits) {
+        Set<String> missingApps = new TreeSet<>();
+        Set<String> missingUris = new TreeSet<>();
+        for (EndpointHit hit : hits) {
+            if (!ids.get(Dictionary.APP).containsKey(hit.getApp())) {
+                missingApps.add(hit.getApp());
+            }
+            if (!ids.get(Dictionary.URI).containsKey(hit.getUri())) {
+                missingUris.add(hit.getUri());
+            }
+        }
+        if (!missingApps.isEmpty() || !missingUris.isEmpty()) {
+            dictionaryTransaction.executeWithoutResult(status -> {
+                if (!missingApps.isEmpty()) {
+                    dictionaryRepository.saveAll(Dictionary.APP, missingApps,
+                            (id, value) -> put(Dictionary.APP, id, value));
+                }
+                if (!missingUris.isEmpty()) {
+                    dictionaryRepository.saveAll(Dictionary.URI, missingUris,
+                            (id, value) -> put(Dictionary.URI, id, value));
+                }
+            });
+        }
+        for (EndpointHit hit : hits) {
+            hit.setAppId(ids.get(Dictionary.APP).get(hit.getApp()));
+            hit.setUriId(ids.get(Dictionary.URI).get(hit.getUri()));
+        }
+    }
+
+    /**
+     * Метод возвращает имя приложения по ключу.
+     */
+    public String app(int id) {
+        return values.get(Dictionary.APP).get(id);
+    }
+
+    /**
+     * Метод возвращает URI по ключу.
+     */
+    public String uri(int id) {
+        return values.get(Dictionary.URI).get(id);
+    }
+
+    /**
+     * Метод передаёт получателю все пары (ключ, URI) словаря.
+     */
+    public void forEachUri(BiConsumer<Integer, String> consumer) {
+        values.get(Dictionary.URI).forEach(consumer);
+    }
+
+    private void put(Dictionary dictionary, int id, String value) {
+        values.get(dictionary).put(id, value);
+        ids.get(dictionary).put(value, id);
+    }
+}
@@ -0,0 +1,277 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.StatsViewDto;
+import ru.practicum.model.EndpointHit;
+import ru.practicum.model.StatsPrecision;
+import ru.practicum.model.UriFilter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кэш ответов getStatistics. Ключ — нормализованные параметры запроса: множество URI, unique, точность,
+ * группировка и границы периода.
+ * Период, конец которого позже now - stats.cache.settle-seconds, ещё пополняется событиями: конец такого
+ * периода в ключе округляется вниз до stats.cache.live-bucket-seconds (по умолчанию секунда — точность времени
+ * событий, так что округление не меняет ответ), а ответ хранится stats.cache.live-ttl-ms миллисекунд.
+ * Ответ за прошедший период хранится, пока начало периода не выйдет за срок хранения секций
+ * stats.partition.retention-days, или до записи запоздавшего события, время которого попадает в период, или до
+ * переноса границы сжатия событий за начало периода.
+ * Количество ответов ограничено stats.cache.max-entries с вытеснением давно не запрашивавшихся (LRU); ответы
+ * длиннее stats.cache.max-rows строк не кэшируются. Одновременные запросы с одним ключом ждут ответа первого
+ * из них, а не выполняют запрос к базе данных каждый.
+ * Метрики: stats.cache.gets (тег result=hit|miss), stats.cache.hit.ratio, stats.cache.size,
+ * stats.cache.evictions.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnExpression("${stats.cache.enabled:true} and '${stats.storage:jdbc}' == 'jdbc'")
+public class StatsResultCache implements HitListener {
+    private final MeterRegistry meterRegistry;
+    @Value("${stats.cache.max-entries:10000}")
+    private int maxEntries;
+    @Value("${stats.cache.max-rows:1000}")
+    private int maxRows;
+    @Value("${stats.cache.live-ttl-ms:1000}")
+    private long liveTtlMs;
+    @Value("${stats.cache.live-bucket-seconds:1}")
+    private int liveBucketSeconds;
+    @Value("${stats.cache.settle-seconds:60}")
+    private int settleSeconds;
+    @Value("${stats.partition.retention-days:0}")
+    private int retentionDays;
+
+    private final Map<Key, CompletableFuture<List<StatsViewDto>>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong changes = new AtomicLong();
+    private Map<Key, Entry> entries;
+    private LocalDateTime historicalEnd;
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter evictionCounter;
+
+    /**
+     * Ключ кэша.
+     *
+     * @param uris множество URI запроса или null для всех URI.
+     */
+    private record Key(Set<String> uris, boolean unique, StatsPrecision precision, boolean grouped,
+                       LocalDateTime start, LocalDateTime end) {
+    }
+
+    /**
+     * Ответ и срок его хранения в миллисекундах System.currentTimeMillis.
+     */
+    private record Entry(List<StatsViewDto> rows, long expiresAt, boolean historical, LocalDateTime start,
+                         LocalDateTime end) {
+    }
+
+    @PostConstruct
+    void init() {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= maxEntries) {
+                    return false;
+                }
+                evictionCounter.increment();
+                return true;
+            }
+        };
+        hitCounter = Counter.builder("stats.cache.gets")
+                .tag("result", "hit")
+                .description("Количество запросов статистики, получивших ответ из кэша")
+                .register(meterRegistry);
+        missCounter = Counter.builder("stats.cache.gets")
+                .tag("result", "miss")
+                .description("Количество запросов статистики, выполненных в базе данных")
+                .register(meterRegistry);
+        evictionCounter = Counter.builder("stats.cache.evictions")
+                .description("Количество ответов, вытесненных из кэша по размеру")
+                .register(meterRegistry);
+        Gauge.builder("stats.cache.size", this, StatsResultCache::size)
+                .description("Количество ответов в кэше")
+                .register(meterRegistry);
+        Gauge.builder("stats.cache.hit.ratio", this, StatsResultCache::hitRatio)
+                .description("Доля запросов статистики, получивших ответ из кэша")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Метод возвращает ответ из кэша или выполняет запрос и сохраняет его ответ.
+     *
+     * @param query запрос статистики; выполняется в потоке вызова.
+     */
+    public List<StatsViewDto> get(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                  StatsPrecision precision, boolean groupBySegment,
+                                  Supplier<List<StatsViewDto>> query) {
+        LocalDateTime now = LocalDateTime.now();
+        boolean historical = end.isBefore(now.minusSeconds(settleSeconds));
+        Key key = key(start, historical ? end : floor(end), uris, unique, precision, groupBySegment);
+        List<StatsViewDto> cached = lookup(key);
+        if (cached != null) {
+            hitCounter.increment();
+            return cached;
+        }
+        CompletableFuture<List<StatsViewDto>> leader = new CompletableFuture<>();
+        CompletableFuture<List<StatsViewDto>> running = inFlight.putIfAbsent(key, leader);
+        if (running != null) {
+            try {
+                List<StatsViewDto> rows = running.join();
+                hitCounter.increment();
+                return rows;
+            } catch (CompletionException e) {
+                // Запрос первого обращения мог быть отменён вместе с ним, поэтому запрос выполняется заново.
+                missCounter.increment();
+                return query.get();
+            }
+        }
+        missCounter.increment();
+        long generation = changes.get();
+        try {
+            List<StatsViewDto> rows = List.copyOf(query.get());
+            leader.complete(rows);
+            if (rows.size() <= maxRows) {
+                store(key, rows, historical, now, generation);
+            }
+            return rows;
+        } catch (RuntimeException e) {
+            leader.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, leader);
+        }
+    }
+
+    /**
+     * Метод удаляет ответы за прошедшие периоды, в которые попали записанные события. События текущего времени
+     * позже конца любого такого периода, поэтому проверка обычно ограничивается одним сравнением.
+     */
+    @Override
+    public void onHits(List<EndpointHit> hits) {
+        LocalDateTime[] times = hits.stream().map(EndpointHit::getTimestamp).sorted().toArray(LocalDateTime[]::new);
+        if (times.length == 0) {
+            return;
+        }
+        if (times[0].isBefore(LocalDateTime.now().minusSeconds(settleSeconds))) {
+            changes.incrementAndGet();
+        }
+        synchronized (this) {
+            if (historicalEnd == null || times[0].isAfter(historicalEnd)) {
+                return;
+            }
+            int removed = 0;
+            for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+                Entry entry = iterator.next();
+                if (entry.historical() && contains(times, entry.start(), entry.end())) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                log.debug("Из кэша удалено {} ответов за периоды с запоздавшими событиями", removed);
+            }
+        }
+    }
+
+    /**
+     * Метод удаляет ответы за прошедшие периоды, начинающиеся раньше момента before: после переноса границы
+     * сжатия событий такие периоды считаются по агрегатам.
+     */
+    public void invalidate(LocalDateTime before) {
+        changes.incrementAndGet();
+        synchronized (this) {
+            entries.values().removeIf(entry -> entry.historical() && entry.start().isBefore(before));
+        }
+    }
+
+    private synchronized List<StatsViewDto> lookup(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.rows();
+    }
+
+    private synchronized void store(Key key, List<StatsViewDto> rows, boolean historical, LocalDateTime now,
+                                    long generation) {
+        long expiresAt;
+        if (!historical) {
+            expiresAt = System.currentTimeMillis() + liveTtlMs;
+        } else if (changes.get() != generation) {
+            // Пока выполнялся запрос, могло записаться запоздавшее событие или перенестись граница сжатия.
+            return;
+        } else if (retentionDays > 0) {
+            expiresAt = System.currentTimeMillis()
+                    + Duration.between(now, key.start().plusDays(retentionDays)).toMillis();
+        } else {
+            expiresAt = Long.MAX_VALUE;
+        }
+        if (expiresAt <= System.currentTimeMillis()) {
+            return;
+        }
+        entries.put(key, new Entry(rows, expiresAt, historical, key.start(), key.end()));
+        if (historical && (historicalEnd == null || key.end().isAfter(historicalEnd))) {
+            historicalEnd = key.end();
+        }
+    }
+
+    private Key key(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                    StatsPrecision precision, boolean groupBySegment) {
+        boolean grouped = groupBySegment && !UriFilter.parse(uris).prefixes().isEmpty();
+        return new Key(uris == null ? null : new TreeSet<>(uris), unique,
+                unique && precision != null ? precision : StatsPrecision.EXACT, grouped, start, end);
+    }
+
+    private LocalDateTime floor(LocalDateTime time) {
+        long second = time.toEpochSecond(ZoneOffset.UTC);
+        return time.minusSeconds(Math.floorMod(second, liveBucketSeconds)).withNano(0);
+    }
+
+    /**
+     * Метод проверяет, есть ли среди упорядоченных моментов времени момент из отрезка [start, end].
+     */
+    private static boolean contains(LocalDateTime[] times, LocalDateTime start, LocalDateTime end) {
+        int index = Arrays.binarySearch(times, start);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < times.length && !times[index].isAfter(end);
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private double hitRatio() {
+        double hits = hitCounter.count();
+        double total = hits + missCounter.count();
+        return total == 0 ? 0 : hits / total;
+    }
+}
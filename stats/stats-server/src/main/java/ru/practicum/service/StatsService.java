@@ -1,29 +1,111 @@
 package ru.practicum.service;
 
 import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.HitBatchResultDto;
 import ru.practicum.dto.StatsViewDto;
+import ru.practicum.dto.TimeSeriesPointDto;
+import ru.practicum.model.StatsPrecision;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Интерфейс StatsService представляет сервис для работы со статистическими данными.
  */
 public interface StatsService {
     /**
-     * Метод сохраняет событие в базе данных.
+     * Метод сохраняет событие в базе данных. При stats.ingest.dedup.enabled=true событие, время которого отличается
+     * от времени записанного события с той же тройкой (app, uri, ip) меньше чем на окно HitDeduplicator,
+     * не сохраняется.
      *
      * @param event объект типа EndpointHitDto, который содержит информацию о событии
      */
     void saveEvent(EndpointHitDto event);
 
+    /**
+     * Метод сохраняет пакет событий в базе данных в рамках одной транзакции.
+     * Некорректные записи не прерывают сохранение пакета, а возвращаются в списке ошибок.
+     *
+     * @param events список объектов типа EndpointHitDto; null-элемент означает запись, которую не удалось разобрать
+     * @return количество сохранённых записей, описание отклонённых записей и номера записей, отброшенных
+     *         как повторы (stats.ingest.dedup.enabled)
+     */
+    HitBatchResultDto saveEvents(List<EndpointHitDto> events);
+
     /**
      * Метод для получения общей статистики из базы данных.
      *
      * @param start  начало временного диапазона, за который требуется статистика.
      * @param end    конец временного диапазона, за который требуется статистика.
-     * @param uris   список URI для которого был осуществлен запрос
-     * @param unique определяет, нужно ли выводить уникальные значения. Если он равен false (по умолчанию), выводятся
-     *               все значения.
+     * @param uris   список URI для которого был осуществлен запрос; значение с * в конце задаёт префикс URI
+     * @param unique    определяет, нужно ли выводить уникальные значения. Если он равен false (по умолчанию),
+     *                  выводятся все значения.
+     * @param precision точность подсчёта уникальных значений: EXACT (по умолчанию) или APPROX (по скетчам
+     *                  HyperLogLog с относительной ошибкой HyperLogLog.RELATIVE_ERROR).
+     * @param groupBySegment объединять ли URI, подходящие под шаблон вида /events/*, по первому сегменту пути
+     *                       после префикса.
+     */
+    List<StatsViewDto> getStatistics(String start, String end, List<String> uris, Boolean unique,
+                                     StatsPrecision precision, Boolean groupBySegment);
+
+    /**
+     * Метод проверяет параметры запроса общей статистики до начала ответа: ошибки проверки, в том числе отказ
+     * из-за слишком дорогого чтения необработанных событий, должны возвращаться клиенту статусом, пока ответ
+     * не зафиксирован. Параметры такие же, как у getStatistics.
+     *
+     * @return true, если запрос будет читать необработанные события и может выполняться долго.
+     */
+    boolean prepareStatistics(String start, String end, List<String> uris, Boolean unique, StatsPrecision precision,
+                              Boolean groupBySegment);
+
+    /**
+     * Метод передаёт строки общей статистики получателю по мере их чтения из базы данных, не собирая ответ
+     * целиком. Порядок и состав строк такие же, как у getStatistics.
+     *
+     * @param start     начало временного диапазона, за который требуется статистика.
+     * @param end       конец временного диапазона, за который требуется статистика.
+     * @param uris      список URI для которого был осуществлен запрос
+     * @param unique    определяет, нужно ли выводить уникальные значения.
+     * @param precision точность подсчёта уникальных значений.
+     * @param groupBySegment объединять ли URI по первому сегменту пути после префикса шаблона.
+     * @param consumer  получатель строк статистики.
+     */
+    void streamStatistics(String start, String end, List<String> uris, Boolean unique, StatsPrecision precision,
+                          Boolean groupBySegment, Consumer<StatsViewDto> consumer);
+
+    /**
+     * Метод возвращает самые посещаемые пары (app, uri) за период.
+     *
+     * @param start     начало временного диапазона.
+     * @param end       конец временного диапазона.
+     * @param limit     наибольшее количество строк ответа.
+     * @param prefix    префикс URI; если null, учитываются все URI.
+     * @param unique    определяет, нужно ли считать только уникальные IP-адреса.
+     * @param precision EXACT — точный подсчёт с LIMIT в запросе к базе данных; APPROX — рейтинг Space-Saving
+     *                  в памяти (для уникальных обращений — скетчи HyperLogLog).
+     */
+    List<StatsViewDto> getTop(String start, String end, Integer limit, String prefix, Boolean unique,
+                              StatsPrecision precision);
+
+    /**
+     * Метод возвращает временной ряд обращений к URI: количество обращений за каждый интервал длины bucket,
+     * пересекающийся с диапазоном, включая интервалы без обращений.
+     *
+     * @param uri    URI; значение с * в конце задаёт префикс URI, и ряд считается по всем подходящим URI.
+     * @param start  начало временного диапазона.
+     * @param end    конец временного диапазона.
+     * @param bucket длина интервала: 1m, 1h или 1d.
+     * @param unique считать ли уникальные IP-адреса в каждом интервале вместо всех обращений.
+     */
+    List<TimeSeriesPointDto> getTimeSeries(String uri, String start, String end, String bucket, Boolean unique);
+
+    /**
+     * Метод возвращает самые посещаемые пары (app, uri) за скользящее окно последних минут по счётчикам в памяти,
+     * без обращения к базе данных.
+     *
+     * @param window длина окна: число и единица s, m или h, например 15m.
+     * @param limit  наибольшее количество строк ответа.
+     * @param prefix префикс URI; если null, учитываются все URI.
      */
-    List<StatsViewDto> getStatistics(String start, String end, List<String> uris, Boolean unique);
+    List<StatsViewDto> getTrending(String window, Integer limit, String prefix);
 }
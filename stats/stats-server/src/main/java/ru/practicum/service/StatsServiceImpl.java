@@ -2,18 +2,46 @@ package ru.practicum.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.column.ColumnStore;
 import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.HitBatchErrorDto;
+import ru.practicum.dto.HitBatchResultDto;
 import ru.practicum.dto.StatsViewDto;
+import ru.practicum.dto.TimeSeriesPointDto;
 import ru.practicum.exception.BadParametersException;
 import ru.practicum.mapper.StatsMapper;
 import ru.practicum.model.EndpointHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.RollupResolution;
+import ru.practicum.model.StatsPrecision;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.model.UriFilter;
+import ru.practicum.repository.AllTimeRepository;
+import ru.practicum.repository.BitmapRepository;
+import ru.practicum.repository.RollupRepository;
+import ru.practicum.repository.SketchRepository;
 import ru.practicum.repository.StatsRepository;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.sketch.IpBitmap;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -22,41 +50,503 @@ import java.util.stream.Collectors;
 @Slf4j
 @Service
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
 public class StatsServiceImpl implements StatsService {
+    private static final Pattern WINDOW = Pattern.compile("(\\d{1,6})([smh])");
+
     private final StatsRepository repository;
+    private final RollupRepository rollupRepository;
+    private final SketchRepository sketchRepository;
+    private final BitmapRepository bitmapRepository;
+    private final AllTimeRepository allTimeRepository;
+    private final HitWriter hitWriter;
+    private final Optional<HitWriteBuffer> writeBuffer;
+    private final Optional<HitCounterIndex> counterIndex;
+    private final Optional<TopHitsTracker> topTracker;
+    private final Optional<ColumnStore> columnStore;
+    private final Optional<TrendingCounters> trendingCounters;
+    private final Optional<HitDeduplicator> deduplicator;
+    private final PartitionedQueryExecutor queryExecutor;
+    private final Optional<StatsResultCache> resultCache;
+    private final HitCompactor compactor;
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    @Value("${stats.ingest.max-batch-size:10000}")
+    private int maxBatchSize;
+    @Value("${stats.sketch.enabled:true}")
+    private boolean sketchEnabled;
+    @Value("${stats.top.max-limit:1000}")
+    private int maxTopLimit;
+    @Value("${stats.bitmap.enabled:true}")
+    private boolean bitmapEnabled;
+    @Value("${stats.all-time.enabled:true}")
+    private boolean allTimeEnabled;
+    @Value("${stats.timeseries.max-buckets:10000}")
+    private int maxTimeSeriesBuckets;
+    @Value("${stats.query.max-estimated-rows:10000000}")
+    private long maxEstimatedRows;
 
     @Override
     public void saveEvent(EndpointHitDto event) {
+        String reason = HitValidator.validate(event);
+        if (reason != null) {
+            throw new BadParametersException(reason);
+        }
         EndpointHit endpointHit = StatsMapper.toEndpointHit(event);
-        EndpointHit savedResult = repository.save(endpointHit);
-        log.info("Событие сохранено в общую статистику {}", savedResult);
+        if (deduplicator.isPresent() && !deduplicator.get().findDuplicates(List.of(endpointHit)).isEmpty()) {
+            log.info("Повторное событие отброшено {}", endpointHit);
+            return;
+        }
+        if (writeBuffer.isPresent()) {
+            writeBuffer.get().submit(endpointHit);
+            deduplicator.ifPresent(d -> d.remember(List.of(endpointHit)));
+            log.info("Событие передано в буфер записи общей статистики {}", endpointHit);
+            return;
+        }
+        hitWriter.write(List.of(endpointHit));
+        deduplicator.ifPresent(d -> d.remember(List.of(endpointHit)));
+        log.info("Событие сохранено в общую статистику {}", endpointHit);
+    }
+
+    @Override
+    @Transactional
+    public HitBatchResultDto saveEvents(List<EndpointHitDto> events) {
+        if (events.size() > maxBatchSize) {
+            throw new BadParametersException("Размер пакета превышает " + maxBatchSize);
+        }
+        List<EndpointHit> valid = new ArrayList<>(events.size());
+        List<Integer> indexes = new ArrayList<>(events.size());
+        List<HitBatchErrorDto> failed = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            String reason = HitValidator.validate(events.get(i));
+            if (reason != null) {
+                failed.add(new HitBatchErrorDto(i, reason));
+            } else {
+                valid.add(StatsMapper.toEndpointHit(events.get(i)));
+                indexes.add(i);
+            }
+        }
+        List<Integer> duplicates = deduplicator.map(d -> d.findDuplicates(valid)).orElse(List.of());
+        List<EndpointHit> hits = new ArrayList<>(valid.size());
+        List<Integer> suppressed = new ArrayList<>(duplicates.size());
+        for (int i = 0, next = 0; i < valid.size(); i++) {
+            if (next < duplicates.size() && duplicates.get(next) == i) {
+                suppressed.add(indexes.get(i));
+                next++;
+            } else {
+                hits.add(valid.get(i));
+            }
+        }
+        hitWriter.write(hits);
+        deduplicator.ifPresent(d -> d.remember(hits));
+        log.info("Пакет событий сохранён в общую статистику: сохранено {}, отклонено {}, повторов {}", hits.size(),
+                failed.size(), suppressed.size());
+        return new HitBatchResultDto(hits.size(), failed, suppressed);
     }
 
     @Override
-    public List<StatsViewDto> getStatistics(String start, String end, List<String> uris, Boolean unique) {
+    @Transactional(readOnly = true, timeoutString = "${stats.query.timeout-seconds:30}")
+    public List<StatsViewDto> getStatistics(String start, String end, List<String> uris, Boolean unique,
+                                            StatsPrecision precision, Boolean groupBySegment) {
+        Supplier<List<StatsViewDto>> query = () -> {
+            List<StatsViewDto> result = new ArrayList<>();
+            streamStatistics(start, end, uris, unique, precision, groupBySegment, result::add);
+            return result;
+        };
+        if (resultCache.isEmpty()) {
+            return query.get();
+        }
+        return resultCache.get().get(LocalDateTime.parse(start, formatter), LocalDateTime.parse(end, formatter), uris,
+                Boolean.TRUE.equals(unique), precision, Boolean.TRUE.equals(groupBySegment), query);
+    }
+
+    /**
+     * Необработанные события читаются только для точного подсчёта уникальных IP-адресов, если диапазон
+     * не покрыт счётчиками за всё время, колоночным хранилищем и дневными множествами IP-адресов.
+     */
+    @Override
+    @Transactional(readOnly = true, timeoutString = "${stats.query.timeout-seconds:30}")
+    public boolean prepareStatistics(String start, String end, List<String> uris, Boolean unique,
+                                     StatsPrecision precision, Boolean groupBySegment) {
         LocalDateTime parsedStart = LocalDateTime.parse(start, formatter);
         LocalDateTime parsedEnd = LocalDateTime.parse(end, formatter);
-        if (parsedStart.isAfter(parsedEnd)) {
-            throw new BadParametersException("Неверно заданы даты");
+        checkRange(parsedStart, parsedEnd);
+        LocalDateTime endExclusive = parsedEnd.plusSeconds(1);
+        if (uris != null && uris.isEmpty()) {
+            return false;
+        }
+        if (!Boolean.TRUE.equals(unique)) {
+            compactor.checkAligned(parsedStart, endExclusive, RollupResolution.MINUTE);
+            return false;
+        }
+        UriFilter filter = UriFilter.parse(uris);
+        boolean grouped = Boolean.TRUE.equals(groupBySegment) && !filter.prefixes().isEmpty();
+        if (!grouped && isAllTime(parsedStart, endExclusive)) {
+            return false;
+        }
+        if (precision == StatsPrecision.APPROX) {
+            if (!sketchEnabled) {
+                throw new BadParametersException("Приближённый подсчёт отключён");
+            }
+            compactor.checkAligned(parsedStart, endExclusive, RollupResolution.HOUR);
+            return false;
+        }
+        compactor.checkExact(parsedStart, endExclusive);
+        if (columnStore.map(store -> store.covers(parsedStart)).orElse(false)) {
+            return false;
         }
-        if (uris == null) {
-            log.info("Получена статистика за период между {} и {}", start, end);
-            return convertToViewStatsDto(repository.findAllElements(parsedStart, parsedEnd, unique));
+        if (bitmapEnabled && RollupPlanner.plan(parsedStart, endExclusive, List.of(BitmapRepository.RESOLUTION))
+                .stream().anyMatch(segment -> segment.resolution() != null)) {
+            return false;
+        }
+        checkCost(parsedStart, endExclusive, filter);
+        return true;
+    }
+
+    @Override
+    @Transactional(readOnly = true, timeoutString = "${stats.query.timeout-seconds:30}")
+    public void streamStatistics(String start, String end, List<String> uris, Boolean unique,
+                                 StatsPrecision precision, Boolean groupBySegment, Consumer<StatsViewDto> consumer) {
+        LocalDateTime parsedStart = LocalDateTime.parse(start, formatter);
+        LocalDateTime parsedEnd = LocalDateTime.parse(end, formatter);
+        checkRange(parsedStart, parsedEnd);
+        if (uris != null && uris.isEmpty()) {
+            return;
         }
+        UriFilter filter = UriFilter.parse(uris);
+        boolean grouped = Boolean.TRUE.equals(groupBySegment) && !filter.prefixes().isEmpty();
         log.info("Получена статистика за период между {} и {}", start, end);
-        return convertToViewStatsDto(repository.findAllElementsWithUris(parsedStart, parsedEnd, uris, unique));
+        BiConsumer<HitKey, Long> rows = (key, hits) -> consumer.accept(new StatsViewDto(key.app(), key.uri(), hits));
+        if (!Boolean.TRUE.equals(unique)) {
+            // Границы запроса включительные, а время событий хранится с точностью до секунды.
+            compactor.checkAligned(parsedStart, parsedEnd.plusSeconds(1), RollupResolution.MINUTE);
+            TimeSegment range = new TimeSegment(null, parsedStart, parsedEnd.plusSeconds(1));
+            Map<HitKey, Long> counts = counterIndex
+                    .map(index -> index.count(range.from(), range.to(), filter))
+                    .orElse(null);
+            if (counts == null && !grouped && isAllTime(parsedStart, parsedEnd.plusSeconds(1))) {
+                allTimeRepository.findHits(filter, false, null, rows);
+                return;
+            }
+            if (counts == null && !grouped) {
+                rollupRepository.findHits(RollupPlanner.plan(range.from(), range.to()), filter, null, rows);
+                return;
+            }
+            if (counts == null) {
+                counts = new HashMap<>();
+                rollupRepository.findHits(RollupPlanner.plan(range.from(), range.to()), filter, null, counts::put);
+            }
+            if (grouped) {
+                Map<HitKey, Long> groups = new HashMap<>();
+                counts.forEach((key, hits) -> groups.merge(group(key, filter), hits, Long::sum));
+                counts = groups;
+            }
+            convertCountsToViewStatsDto(counts).forEach(consumer);
+            return;
+        }
+        if (!grouped && isAllTime(parsedStart, parsedEnd.plusSeconds(1))) {
+            allTimeRepository.findHits(filter, true, null, rows);
+            return;
+        }
+        if (precision == StatsPrecision.APPROX) {
+            if (!sketchEnabled) {
+                throw new BadParametersException("Приближённый подсчёт отключён");
+            }
+            compactor.checkAligned(parsedStart, parsedEnd.plusSeconds(1), RollupResolution.HOUR);
+            TimeSegment range = new TimeSegment(null, parsedStart, parsedEnd.plusSeconds(1));
+            Map<HitKey, HyperLogLog> sketches = sketchRepository.collect(
+                    RollupPlanner.plan(range.from(), range.to(), RollupResolution.SKETCHED), filter);
+            if (grouped) {
+                Map<HitKey, HyperLogLog> groups = new HashMap<>();
+                sketches.forEach((key, sketch) ->
+                        groups.computeIfAbsent(group(key, filter), group -> new HyperLogLog()).merge(sketch));
+                sketches = groups;
+            }
+            convertSketchesToViewStatsDto(sketches).forEach(consumer);
+            return;
+        }
+        compactor.checkExact(parsedStart, parsedEnd.plusSeconds(1));
+        Map<HitKey, Long> counts = columnStore
+                .map(store -> store.count(parsedStart, parsedEnd.plusSeconds(1), filter, grouped, true))
+                .orElse(null);
+        if (counts == null) {
+            counts = countWithBitmaps(parsedStart, parsedEnd.plusSeconds(1), filter, grouped);
+        }
+        if (counts != null) {
+            convertCountsToViewStatsDto(counts).forEach(consumer);
+            return;
+        }
+        checkCost(parsedStart, parsedEnd.plusSeconds(1), filter);
+        if (queryExecutor.isParallel(parsedStart, parsedEnd.plusSeconds(1))) {
+            // COUNT(DISTINCT ip) частей нельзя сложить, поэтому части возвращают множества IP-адресов.
+            Map<HitKey, IpBitmap> bitmaps = queryExecutor.collect(parsedStart, parsedEnd.plusSeconds(1),
+                    (from, to) -> bitmapRepository.collect(List.of(new TimeSegment(null, from, to)), filter),
+                    StatsServiceImpl::union);
+            convertCountsToViewStatsDto(countBitmaps(bitmaps, filter, grouped)).forEach(consumer);
+            return;
+        }
+        if (filter.isAll()) {
+            repository.findAllElements(parsedStart, parsedEnd, unique, rows);
+            return;
+        }
+        repository.findAllElementsWithUris(parsedStart, parsedEnd, filter, unique, grouped, rows);
+    }
+
+    @Override
+    @Transactional(readOnly = true, timeoutString = "${stats.query.timeout-seconds:30}")
+    public List<StatsViewDto> getTop(String start, String end, Integer limit, String prefix, Boolean unique,
+                                     StatsPrecision precision) {
+        LocalDateTime parsedStart = LocalDateTime.parse(start, formatter);
+        LocalDateTime parsedEnd = LocalDateTime.parse(end, formatter);
+        checkRange(parsedStart, parsedEnd);
+        if (limit == null || limit <= 0 || limit > maxTopLimit) {
+            throw new BadParametersException("Параметр limit должен быть от 1 до " + maxTopLimit);
+        }
+        log.info("Получен рейтинг посещаемости за период между {} и {}", start, end);
+        UriFilter filter = UriFilter.prefix(prefix);
+        LocalDateTime endExclusive = parsedEnd.plusSeconds(1);
+        if (isAllTime(parsedStart, endExclusive)) {
+            List<StatsViewDto> result = new ArrayList<>(limit);
+            allTimeRepository.findHits(filter, Boolean.TRUE.equals(unique), limit,
+                    (key, hits) -> result.add(new StatsViewDto(key.app(), key.uri(), hits)));
+            return result;
+        }
+        if (Boolean.TRUE.equals(unique) && precision != StatsPrecision.APPROX) {
+            compactor.checkExact(parsedStart, endExclusive);
+        }
+        if (precision == StatsPrecision.APPROX) {
+            if (Boolean.TRUE.equals(unique)) {
+                if (!sketchEnabled) {
+                    throw new BadParametersException("Приближённый подсчёт отключён");
+                }
+                compactor.checkAligned(parsedStart, endExclusive, RollupResolution.HOUR);
+                TimeSegment range = new TimeSegment(null, parsedStart, endExclusive);
+                List<StatsViewDto> result = convertSketchesToViewStatsDto(sketchRepository.collect(
+                        RollupPlanner.plan(range.from(), range.to(), RollupResolution.SKETCHED), filter));
+                return result.subList(0, Math.min(limit, result.size()));
+            }
+            List<StatsViewDto> result = topTracker
+                    .map(tracker -> tracker.top(parsedStart, endExclusive, filter, limit))
+                    .orElse(null);
+            if (result != null) {
+                return result;
+            }
+            log.info("Диапазон рейтинга выходит за пределы хранимых в памяти часов, используется точный подсчёт");
+        }
+        Map<HitKey, Long> counts = Boolean.TRUE.equals(unique) ? columnStore
+                .map(store -> store.count(parsedStart, endExclusive, filter, false, true))
+                .orElse(null) : null;
+        if (counts == null && Boolean.TRUE.equals(unique)) {
+            counts = countWithBitmaps(parsedStart, endExclusive, filter, false);
+        }
+        if (counts != null) {
+            List<StatsViewDto> result = convertCountsToViewStatsDto(counts);
+            return result.subList(0, Math.min(limit, result.size()));
+        }
+        List<StatsViewDto> result = new ArrayList<>(limit);
+        BiConsumer<HitKey, Long> rows = (key, hits) -> result.add(new StatsViewDto(key.app(), key.uri(), hits));
+        if (Boolean.TRUE.equals(unique)) {
+            checkCost(parsedStart, endExclusive, filter);
+            repository.findTop(parsedStart, parsedEnd, filter, true, limit, rows);
+        } else {
+            compactor.checkAligned(parsedStart, endExclusive, RollupResolution.MINUTE);
+            TimeSegment range = new TimeSegment(null, parsedStart, endExclusive);
+            rollupRepository.findHits(RollupPlanner.plan(range.from(), range.to()), filter, limit, rows);
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional(readOnly = true, timeoutString = "${stats.query.timeout-seconds:30}")
+    public List<TimeSeriesPointDto> getTimeSeries(String uri, String start, String end, String bucket,
+                                                  Boolean unique) {
+        LocalDateTime parsedStart = LocalDateTime.parse(start, formatter);
+        LocalDateTime parsedEnd = LocalDateTime.parse(end, formatter);
+        checkRange(parsedStart, parsedEnd);
+        RollupResolution resolution = RollupResolution.fromBucket(bucket);
+        checkBuckets(resolution, parsedStart, parsedEnd);
+        UriFilter filter = UriFilter.parse(List.of(uri));
+        LocalDateTime endExclusive = parsedEnd.plusSeconds(1);
+        compactor.checkAligned(parsedStart, endExclusive, resolution);
+        TimeSegment range = new TimeSegment(null, parsedStart, endExclusive);
+        List<TimeSegment> plan = RollupPlanner.plan(range.from(), range.to(), List.of(resolution));
+        Map<LocalDateTime, Long> counts = new HashMap<>();
+        if (!Boolean.TRUE.equals(unique)) {
+            rollupRepository.findSeries(plan, resolution, filter, counts::put);
+        } else if (bitmapEnabled && resolution == BitmapRepository.RESOLUTION) {
+            bitmapRepository.collectSeries(plan, filter)
+                    .forEach((time, bitmap) -> counts.put(time, bitmap.cardinality()));
+        } else {
+            LocalDateTime watermark = compactor.getWatermark();
+            if (watermark != null && parsedStart.isBefore(watermark)) {
+                throw new BadParametersException("Уникальные обращения раньше " + watermark.format(formatter) +
+                        " хранятся только дневными множествами IP-адресов, используйте bucket=1d");
+            }
+            checkCost(parsedStart, endExclusive, filter);
+            repository.findUniqueSeries(parsedStart, endExclusive, resolution, filter, counts::put);
+        }
+        log.info("Получен временной ряд обращений к {} за период между {} и {}", uri, start, end);
+        return convertCountsToTimeSeries(resolution, parsedStart, parsedEnd, counts);
+    }
+
+    @Override
+    public List<StatsViewDto> getTrending(String window, Integer limit, String prefix) {
+        TrendingCounters counters = trendingCounters
+                .orElseThrow(() -> new BadParametersException("Счётчики скользящего окна отключены"));
+        if (limit == null || limit <= 0 || limit > maxTopLimit) {
+            throw new BadParametersException("Параметр limit должен быть от 1 до " + maxTopLimit);
+        }
+        Duration duration = parseWindow(window);
+        if (duration.compareTo(counters.getMaxWindow()) > 0) {
+            throw new BadParametersException("Окно не может быть больше " + counters.getMaxWindow().toMinutes() +
+                    " мин.");
+        }
+        log.info("Получен рейтинг посещаемости за последние {}", window);
+        return counters.top(duration, UriFilter.prefix(prefix), limit);
+    }
+
+    /**
+     * Метод проверяет, покрывает ли полуоткрытый диапазон [from, to) все сохранённые события. Такой диапазон
+     * (например, 2000-01-01 — 2100-01-01 у основного сервиса) читается из счётчиков за всё время. Границы
+     * событий хранятся в памяти HitWriter, поэтому проверка не обращается к базе данных.
+     */
+    private boolean isAllTime(LocalDateTime from, LocalDateTime to) {
+        if (!allTimeEnabled) {
+            return false;
+        }
+        TimeSegment bounds = hitWriter.getBounds();
+        return bounds == null || !from.isAfter(bounds.from()) && !to.isBefore(bounds.to());
+    }
+
+    /**
+     * Метод считает уникальные IP-адреса объединением дневных множеств statistics_bitmap_day; неполные дни
+     * на краях диапазона дочитываются из необработанных событий.
+     *
+     * @return количество уникальных IP-адресов по парам (app, uri) или null, если множества отключены
+     *         или диапазон не содержит ни одного полного дня.
+     */
+    private Map<HitKey, Long> countWithBitmaps(LocalDateTime from, LocalDateTime to, UriFilter filter,
+                                               boolean grouped) {
+        if (!bitmapEnabled) {
+            return null;
+        }
+        List<TimeSegment> plan = RollupPlanner.plan(from, to, List.of(BitmapRepository.RESOLUTION));
+        if (plan.stream().allMatch(segment -> segment.resolution() == null)) {
+            return null;
+        }
+        return countBitmaps(bitmapRepository.collect(plan, filter), filter, grouped);
+    }
+
+    /**
+     * Метод считает уникальные IP-адреса по множествам пар (app, uri), при группировке объединяя множества группы.
+     */
+    private Map<HitKey, Long> countBitmaps(Map<HitKey, IpBitmap> bitmaps, UriFilter filter, boolean grouped) {
+        if (grouped) {
+            Map<HitKey, IpBitmap> groups = new HashMap<>();
+            bitmaps.forEach((key, bitmap) ->
+                    groups.computeIfAbsent(group(key, filter), group -> new IpBitmap()).merge(bitmap));
+            bitmaps = groups;
+        }
+        Map<HitKey, Long> counts = new HashMap<>();
+        bitmaps.forEach((key, bitmap) -> counts.put(key, bitmap.cardinality()));
+        return counts;
+    }
+
+    private static IpBitmap union(IpBitmap bitmap, IpBitmap other) {
+        bitmap.merge(other);
+        return bitmap;
+    }
+
+    private HitKey group(HitKey key, UriFilter filter) {
+        return new HitKey(key.app(), filter.group(key.uri()));
+    }
+
+    /**
+     * Метод разбирает длину окна вида 30s, 15m или 1h.
+     */
+    private Duration parseWindow(String window) {
+        Matcher matcher = WINDOW.matcher(window);
+        if (!matcher.matches()) {
+            throw new BadParametersException("Неверно задано окно " + window);
+        }
+        long amount = Long.parseLong(matcher.group(1));
+        Duration duration = switch (matcher.group(2)) {
+            case "s" -> Duration.ofSeconds(amount);
+            case "m" -> Duration.ofMinutes(amount);
+            default -> Duration.ofHours(amount);
+        };
+        if (duration.isZero()) {
+            throw new BadParametersException("Неверно задано окно " + window);
+        }
+        return duration;
+    }
+
+    private void checkBuckets(RollupResolution resolution, LocalDateTime start, LocalDateTime end) {
+        if (resolution.between(resolution.floor(start), resolution.floor(end)) >= maxTimeSeriesBuckets) {
+            throw new BadParametersException("Количество интервалов временного ряда превышает " +
+                    maxTimeSeriesBuckets);
+        }
+    }
+
+    /**
+     * Метод проверяет, что запрос к необработанным событиям диапазона [from, to) укладывается в бюджет
+     * stats.query.max-estimated-rows строк по оценке планировщика; 0 отключает проверку.
+     */
+    private void checkCost(LocalDateTime from, LocalDateTime to, UriFilter filter) {
+        if (maxEstimatedRows <= 0) {
+            return;
+        }
+        long estimated = repository.estimateHits(from, to, filter);
+        if (estimated > maxEstimatedRows) {
+            log.warn("Запрос отклонён: оценка {} строк за период между {} и {} превышает {}", estimated, from, to,
+                    maxEstimatedRows);
+            throw new BadParametersException("Запрос слишком дорогой: оценка " + estimated + " строк превышает " +
+                    maxEstimatedRows + "; сократите период, укажите uris или используйте precision=approx");
+        }
+    }
+
+    private void checkRange(LocalDateTime start, LocalDateTime end) {
+        if (start.isAfter(end)) {
+            throw new BadParametersException("Неверно заданы даты");
+        }
+    }
+
+    /**
+     * Метод convertCountsToTimeSeries строит временной ряд по всем интервалам от интервала start до интервала end;
+     * интервалы, которых нет в counts, получают нулевое количество обращений.
+     *
+     * @param counts количество обращений по началу интервала.
+     */
+    private List<TimeSeriesPointDto> convertCountsToTimeSeries(RollupResolution resolution, LocalDateTime start,
+                                                               LocalDateTime end, Map<LocalDateTime, Long> counts) {
+        List<TimeSeriesPointDto> result = new ArrayList<>();
+        for (LocalDateTime time = resolution.floor(start); !time.isAfter(end); time = resolution.next(time)) {
+            result.add(new TimeSeriesPointDto(time.format(formatter), counts.getOrDefault(time, 0L)));
+        }
+        return result;
+    }
+
+    /**
+     * Метод convertSketchesToViewStatsDto преобразует скетчи уникальных IP-адресов в список объектов StatsViewDto,
+     * упорядоченный по убыванию оценки количества обращений.
+     *
+     * @param sketches скетчи по парам (app, uri).
+     */
+    private List<StatsViewDto> convertSketchesToViewStatsDto(Map<HitKey, HyperLogLog> sketches) {
+        Map<HitKey, Long> counts = new HashMap<>();
+        sketches.forEach((key, sketch) -> counts.put(key, sketch.estimate()));
+        return convertCountsToViewStatsDto(counts);
     }
 
     /**
-     * Метод convertToViewStatsDto преобразует список карт с данными статистики в список объектов StatsViewDto.
+     * Метод convertCountsToViewStatsDto преобразует количество обращений по парам (app, uri) в список объектов
+     * StatsViewDto, упорядоченный по убыванию количества обращений.
      *
-     * @param result список карт result, где каждая карта содержит поля app, uri и hits.
+     * @param counts количество обращений по парам (app, uri).
      */
-    private List<StatsViewDto> convertToViewStatsDto(List<Map<String, Object>> result) {
-        return result.stream()
-                .map(map -> new StatsViewDto((String) map.get("app"), (String) map.get("uri"),
-                        (Long) map.get("hits")))
+    private List<StatsViewDto> convertCountsToViewStatsDto(Map<HitKey, Long> counts) {
+        return counts.entrySet().stream()
+                .map(entry -> new StatsViewDto(entry.getKey().app(), entry.getKey().uri(), entry.getValue()))
+                .sorted(Comparator.comparing(StatsViewDto::getHits).reversed())
                 .collect(Collectors.toList());
     }
 }
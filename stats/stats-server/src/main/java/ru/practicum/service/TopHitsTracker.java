@@ -0,0 +1,127 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.StatsViewDto;
+import ru.practicum.model.EndpointHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.RollupResolution;
+import ru.practicum.model.UriFilter;
+import ru.practicum.repository.RollupRepository;
+import ru.practicum.sketch.SpaceSaving;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Приближённый рейтинг самых посещаемых пар (app, uri) в памяти сервиса статистики.
+ * Для каждого часа за последние stats.top.retention-hours часов хранится структура Space-Saving
+ * на stats.top.capacity счётчиков; структура обновляется слушателем HitListener и восстанавливается при старте
+ * из таблицы statistics_hour. Запрос складывает счётчики часов, пересекающих диапазон, поэтому неполные часы
+ * на краях учитываются целиком, а пары вне первых capacity в часе могут не попасть в ответ.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnExpression("${stats.top.enabled:true} and '${stats.storage:jdbc}' == 'jdbc'")
+public class TopHitsTracker implements HitListener {
+    private static final RollupResolution RESOLUTION = RollupResolution.HOUR;
+
+    private final RollupRepository rollupRepository;
+    private final StatsDictionary dictionary;
+    @Value("${stats.top.capacity:1000}")
+    private int capacity;
+    @Value("${stats.top.retention-hours:24}")
+    private int retentionHours;
+
+    private final ConcurrentSkipListMap<LocalDateTime, SpaceSaving<HitKey>> buckets = new ConcurrentSkipListMap<>();
+    private volatile LocalDateTime horizon;
+
+    @PostConstruct
+    void rebuild() {
+        horizon = RESOLUTION.floor(LocalDateTime.now()).minusHours(retentionHours - 1);
+        rollupRepository.scan(RESOLUTION, horizon, (key, hits) -> {
+            SpaceSaving<HitKey> bucket = bucket(key.bucket());
+            synchronized (bucket) {
+                bucket.offer(new HitKey(dictionary.app(key.appId()), dictionary.uri(key.uriId())), hits);
+            }
+        });
+        log.info("Рейтинг посещаемости восстановлен: {} ч., до {} счётчиков в часе", buckets.size(), capacity);
+    }
+
+    @Override
+    public void onHits(List<EndpointHit> hits) {
+        LocalDateTime current = RESOLUTION.floor(LocalDateTime.now()).minusHours(retentionHours - 1);
+        if (current.isAfter(horizon)) {
+            horizon = current;
+            buckets.headMap(current).clear();
+        }
+        Map<LocalDateTime, Map<HitKey, Long>> counts = new HashMap<>();
+        for (EndpointHit hit : hits) {
+            LocalDateTime bucket = RESOLUTION.floor(hit.getTimestamp());
+            if (!bucket.isBefore(horizon)) {
+                counts.computeIfAbsent(bucket, key -> new HashMap<>())
+                        .merge(new HitKey(hit.getApp(), hit.getUri()), 1L, Long::sum);
+            }
+        }
+        counts.forEach((time, keys) -> {
+            SpaceSaving<HitKey> bucket = bucket(time);
+            synchronized (bucket) {
+                keys.forEach(bucket::offer);
+            }
+        });
+    }
+
+    /**
+     * Метод возвращает приближённый рейтинг пар (app, uri) за полуоткрытый диапазон [from, to).
+     *
+     * @param from   начало диапазона (включительно).
+     * @param to     конец диапазона (не включительно).
+     * @param filter условие отбора URI.
+     * @param limit  наибольшее количество строк.
+     * @return строки в порядке убывания количества обращений или null, если диапазон начинается раньше
+     *         хранимых часов.
+     */
+    public List<StatsViewDto> top(LocalDateTime from, LocalDateTime to, UriFilter filter, int limit) {
+        if (from.isBefore(horizon)) {
+            return null;
+        }
+        Map<LocalDateTime, SpaceSaving<HitKey>> range = buckets.subMap(RESOLUTION.floor(from), true, to, false);
+        if (range.size() == 1) {
+            SpaceSaving<HitKey> bucket = range.values().iterator().next();
+            synchronized (bucket) {
+                return bucket.top(limit, key -> filter.matches(key.uri())).stream()
+                        .map(counter -> new StatsViewDto(counter.key().app(), counter.key().uri(), counter.count()))
+                        .toList();
+            }
+        }
+        Map<HitKey, Long> counts = new HashMap<>();
+        for (SpaceSaving<HitKey> bucket : range.values()) {
+            synchronized (bucket) {
+                bucket.forEach((key, count, error) -> {
+                    if (filter.matches(key.uri())) {
+                        counts.merge(key, count, Long::sum);
+                    }
+                });
+            }
+        }
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<HitKey, Long>comparingByValue().reversed()
+                        .thenComparing(entry -> entry.getKey().app())
+                        .thenComparing(entry -> entry.getKey().uri()))
+                .limit(limit)
+                .map(entry -> new StatsViewDto(entry.getKey().app(), entry.getKey().uri(), entry.getValue()))
+                .toList();
+    }
+
+    private SpaceSaving<HitKey> bucket(LocalDateTime time) {
+        return buckets.computeIfAbsent(time, key -> new SpaceSaving<>(capacity));
+    }
+}
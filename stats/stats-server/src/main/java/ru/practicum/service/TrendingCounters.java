@@ -0,0 +1,138 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.StatsViewDto;
+import ru.practicum.model.EndpointHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.UriFilter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики обращений к парам (app, uri) за скользящее окно последних минут для рейтинга «сейчас популярно».
+ * Время разбито на корзины по stats.trending.bucket-seconds секунд; последние корзины, покрывающие
+ * stats.trending.max-window-minutes минут, хранятся в кольце, и корзина, время которой прошло, заменяется новой
+ * при первом событии нового интервала. Счётчики увеличиваются без блокировок, база данных не читается:
+ * после перезапуска сервиса окно заполняется заново.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${stats.trending.enabled:true} and '${stats.storage:jdbc}' == 'jdbc'")
+public class TrendingCounters implements HitListener {
+    @Value("${stats.trending.bucket-seconds:10}")
+    private int bucketSeconds;
+    @Value("${stats.trending.max-window-minutes:60}")
+    private int maxWindowMinutes;
+
+    private AtomicReferenceArray<Bucket> ring;
+
+    @PostConstruct
+    void init() {
+        if (bucketSeconds <= 0 || maxWindowMinutes * 60 % bucketSeconds != 0) {
+            throw new IllegalStateException("Длина окна stats.trending.max-window-minutes должна делиться на " +
+                    "длину корзины stats.trending.bucket-seconds");
+        }
+        ring = new AtomicReferenceArray<>(maxWindowMinutes * 60 / bucketSeconds);
+        log.info("Счётчики скользящего окна: {} корзин по {} с", ring.length(), bucketSeconds);
+    }
+
+    public Duration getMaxWindow() {
+        return Duration.ofMinutes(maxWindowMinutes);
+    }
+
+    /**
+     * Событие учитывается в корзине своего времени; события из будущего относятся к текущей корзине, события
+     * старше кольца не учитываются.
+     */
+    @Override
+    public void onHits(List<EndpointHit> hits) {
+        long current = epoch(LocalDateTime.now());
+        for (EndpointHit hit : hits) {
+            long epoch = Math.min(epoch(hit.getTimestamp()), current);
+            if (epoch > current - ring.length()) {
+                increment(epoch, new HitKey(hit.getApp(), hit.getUri()));
+            }
+        }
+    }
+
+    /**
+     * Метод возвращает самые посещаемые пары (app, uri) за последние window секунд с точностью до длины корзины:
+     * текущая неполная корзина учитывается целиком.
+     *
+     * @param window длина окна, не больше getMaxWindow().
+     * @param filter условие отбора URI.
+     * @param limit  наибольшее количество строк.
+     * @return строки в порядке убывания количества обращений.
+     */
+    public List<StatsViewDto> top(Duration window, UriFilter filter, int limit) {
+        long current = epoch(LocalDateTime.now());
+        long buckets = Math.max(1, Math.min(ring.length(), window.toSeconds() / bucketSeconds));
+        Map<HitKey, Long> counts = new HashMap<>();
+        for (long epoch = current - buckets + 1; epoch <= current; epoch++) {
+            Bucket bucket = ring.get(slot(epoch));
+            if (bucket == null || bucket.epoch != epoch) {
+                continue;
+            }
+            bucket.counts.forEach((key, count) -> {
+                if (filter.matches(key.uri())) {
+                    counts.merge(key, count.sum(), Long::sum);
+                }
+            });
+        }
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<HitKey, Long>comparingByValue().reversed()
+                        .thenComparing(entry -> entry.getKey().app())
+                        .thenComparing(entry -> entry.getKey().uri()))
+                .limit(limit)
+                .map(entry -> new StatsViewDto(entry.getKey().app(), entry.getKey().uri(), entry.getValue()))
+                .toList();
+    }
+
+    private void increment(long epoch, HitKey key) {
+        int slot = slot(epoch);
+        Bucket bucket = ring.get(slot);
+        while (bucket == null || bucket.epoch < epoch) {
+            Bucket fresh = new Bucket(epoch);
+            if (ring.compareAndSet(slot, bucket, fresh)) {
+                bucket = fresh;
+            } else {
+                bucket = ring.get(slot);
+            }
+        }
+        if (bucket.epoch == epoch) {
+            bucket.counts.computeIfAbsent(key, k -> new LongAdder()).increment();
+        }
+    }
+
+    private long epoch(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), bucketSeconds);
+    }
+
+    private int slot(long epoch) {
+        return (int) Math.floorMod(epoch, ring.length());
+    }
+
+    /**
+     * Счётчики одной корзины; epoch — номер интервала времени длиной bucketSeconds.
+     */
+    private static final class Bucket {
+        private final long epoch;
+        private final ConcurrentHashMap<HitKey, LongAdder> counts = new ConcurrentHashMap<>();
+
+        private Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package ru.practicum.sketch;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Скетч HyperLogLog для приближённого подсчёта количества уникальных значений.
+ * Используются 2^12 регистров, поэтому относительная стандартная ошибка оценки составляет около 1.6%.
+ * Скетчи одного размера объединяются поэлементным максимумом регистров, что позволяет хранить их по интервалам
+ * времени и складывать при чтении.
+ * В сериализованном виде скетч с небольшим количеством заполненных регистров хранится разреженно.
+ */
+public final class HyperLogLog {
+    public static final int PRECISION = 12;
+    public static final double RELATIVE_ERROR = 1.04 / Math.sqrt(1 << PRECISION);
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+    private static final byte DENSE = 0;
+    private static final byte SPARSE = 1;
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[REGISTERS];
+    }
+
+    /**
+     * Метод добавляет значение в скетч.
+     *
+     * @param value добавляемое значение.
+     * @return true, если состояние скетча изменилось.
+     */
+    public boolean add(String value) {
+        return addHash(hash(value));
+    }
+
+    /**
+     * Метод добавляет в скетч IP-адрес. Один адрес может быть записан по-разному (например, IPv6 с нулями
+     * и в сокращённом виде), поэтому хешируется не переданная строка, а адрес: IPv4 — в десятичной записи
+     * с точками, как и до нормализации, чтобы сохранённые скетчи оставались совместимыми, IPv6 — 16 байт адреса.
+     *
+     * @param ip IPv4 или IPv6-адрес в текстовом виде.
+     * @return true, если состояние скетча изменилось.
+     */
+    public boolean addIp(String ip) {
+        InetAddress address;
+        try {
+            address = InetAddress.getByName(ip);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Некорректный ip " + ip, e);
+        }
+        if (address instanceof Inet4Address) {
+            return add(address.getHostAddress());
+        }
+        return addHash(hash(address.getAddress()));
+    }
+
+    /**
+     * Метод добавляет в скетч значение по его 64-битному хешу.
+     *
+     * @param hash хеш значения.
+     * @return true, если состояние скетча изменилось.
+     */
+    public boolean addHash(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Метод объединяет скетч с другим скетчем.
+     *
+     * @param other скетч, значения которого добавляются к текущему.
+     * @return true, если состояние скетча изменилось.
+     */
+    public boolean merge(HyperLogLog other) {
+        boolean changed = false;
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Метод объединяет скетч с сериализованным скетчем без создания промежуточного объекта.
+     *
+     * @param data скетч в формате toBytes.
+     * @return true, если состояние скетча изменилось.
+     */
+    public boolean merge(byte[] data) {
+        boolean changed = false;
+        if (data[0] == DENSE) {
+            for (int i = 0; i < REGISTERS; i++) {
+                if (data[i + 1] > registers[i]) {
+                    registers[i] = data[i + 1];
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1);
+        while (buffer.hasRemaining()) {
+            int index = buffer.getShort();
+            byte rank = buffer.get();
+            if (rank > registers[index]) {
+                registers[index] = rank;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Метод возвращает оценку количества уникальных значений, добавленных в скетч.
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : registers) {
+            sum += Math.scalb(1.0, -rank);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Метод сериализует скетч: первый байт задаёт формат, далее следуют либо все регистры,
+     * либо пары (номер регистра, значение) для заполненных регистров.
+     */
+    public byte[] toBytes() {
+        int filled = 0;
+        for (byte rank : registers) {
+            if (rank != 0) {
+                filled++;
+            }
+        }
+        if (filled * 3 >= REGISTERS) {
+            byte[] data = new byte[REGISTERS + 1];
+            data[0] = DENSE;
+            System.arraycopy(registers, 0, data, 1, REGISTERS);
+            return data;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 + filled * 3);
+        buffer.put(SPARSE);
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] != 0) {
+                buffer.putShort((short) i);
+                buffer.put(registers[i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Метод восстанавливает скетч из сериализованного вида.
+     *
+     * @param data скетч в формате toBytes.
+     */
+    public static HyperLogLog fromBytes(byte[] data) {
+        HyperLogLog sketch = new HyperLogLog();
+        sketch.merge(data);
+        return sketch;
+    }
+
+    /**
+     * Метод вычисляет 64-битный хеш строки (FNV-1a с финальным перемешиванием MurmurHash3).
+     */
+    static long hash(String value) {
+        return hash(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long hash(byte[] value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,373 @@
+package ru.practicum.sketch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Сжатое множество IP-адресов для точного подсчёта уникальных значений.
+ * IPv4-адрес рассматривается как 32-битное число и хранится по схеме Roaring: старшие 16 бит выбирают контейнер,
+ * младшие хранятся в контейнере — упорядоченным массивом, пока их не больше ARRAY_LIMIT, иначе битовой картой
+ * на 2^16 значений. При сериализации каждый контейнер записывается в самом коротком из трёх видов: массив,
+ * битовая карта или список отрезков подряд идущих значений. IPv6-адреса встречаются редко и хранятся
+ * отдельным множеством.
+ * Множества объединяются без распаковки адресов, поэтому их можно хранить по интервалам времени и объединять
+ * при чтении.
+ */
+public final class IpBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = 1 << 10;
+    private static final byte ARRAY = 0;
+    private static final byte BITMAP = 1;
+    private static final byte RUN = 2;
+
+    private final TreeMap<Character, Container> containers = new TreeMap<>();
+    private final Set<Ipv6> ipv6 = new HashSet<>();
+
+    /**
+     * Метод добавляет IP-адрес в множество.
+     *
+     * @param ip IPv4 или IPv6-адрес в текстовом виде.
+     * @return true, если адреса ещё не было в множестве.
+     */
+    public boolean add(String ip) {
+        byte[] address;
+        try {
+            address = InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Некорректный ip " + ip, e);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(address);
+        if (address.length == 4) {
+            return add(buffer.getInt());
+        }
+        return ipv6.add(new Ipv6(buffer.getLong(), buffer.getLong()));
+    }
+
+    /**
+     * Метод добавляет IPv4-адрес, заданный числом.
+     *
+     * @return true, если адреса ещё не было в множестве.
+     */
+    public boolean add(int ip) {
+        return containers.computeIfAbsent((char) (ip >>> 16), key -> new Container()).add((char) ip);
+    }
+
+    /**
+     * Метод объединяет множество с другим множеством.
+     *
+     * @param other множество, адреса которого добавляются к текущему.
+     * @return true, если множество изменилось.
+     */
+    public boolean merge(IpBitmap other) {
+        boolean changed = false;
+        for (Map.Entry<Character, Container> entry : other.containers.entrySet()) {
+            Container container = containers.get(entry.getKey());
+            if (container == null) {
+                containers.put(entry.getKey(), entry.getValue().copy());
+                changed = true;
+            } else {
+                changed |= container.merge(entry.getValue());
+            }
+        }
+        return ipv6.addAll(other.ipv6) || changed;
+    }
+
+    /**
+     * Метод возвращает количество адресов в множестве.
+     */
+    public long cardinality() {
+        long cardinality = ipv6.size();
+        for (Container container : containers.values()) {
+            cardinality += container.cardinality;
+        }
+        return cardinality;
+    }
+
+    /**
+     * Метод сериализует множество: количество контейнеров, затем для каждого старшие 16 бит, вид и содержимое
+     * контейнера, затем количество и сами IPv6-адреса.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(containers.size());
+            for (Map.Entry<Character, Container> entry : containers.entrySet()) {
+                output.writeChar(entry.getKey());
+                entry.getValue().write(output);
+            }
+            output.writeInt(ipv6.size());
+            for (Ipv6 address : ipv6) {
+                output.writeLong(address.high());
+                output.writeLong(address.low());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Метод восстанавливает множество из сериализованного вида.
+     *
+     * @param data множество в формате toBytes.
+     */
+    public static IpBitmap fromBytes(byte[] data) {
+        IpBitmap bitmap = new IpBitmap();
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            char key = buffer.getChar();
+            bitmap.containers.put(key, Container.read(buffer));
+        }
+        int addresses = buffer.getInt();
+        for (int i = 0; i < addresses; i++) {
+            bitmap.ipv6.add(new Ipv6(buffer.getLong(), buffer.getLong()));
+        }
+        return bitmap;
+    }
+
+    /**
+     * Младшие 16 бит адресов с одинаковыми старшими битами: упорядоченный массив array или битовая карта bits.
+     */
+    private static final class Container {
+        private char[] array = new char[4];
+        private long[] bits;
+        private int cardinality;
+
+        boolean add(char value) {
+            if (bits != null) {
+                long before = bits[value >>> 6];
+                bits[value >>> 6] |= 1L << value;
+                if (bits[value >>> 6] == before) {
+                    return false;
+                }
+                cardinality++;
+                return true;
+            }
+            int index = Arrays.binarySearch(array, 0, cardinality, value);
+            if (index >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                toBitmap();
+                return add(value);
+            }
+            index = -index - 1;
+            if (cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_LIMIT, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(array, index, array, index + 1, cardinality - index);
+            array[index] = value;
+            cardinality++;
+            return true;
+        }
+
+        boolean merge(Container other) {
+            int before = cardinality;
+            if (bits == null && other.bits == null && cardinality + other.cardinality <= ARRAY_LIMIT) {
+                mergeArrays(other);
+                return cardinality != before;
+            }
+            if (bits == null) {
+                toBitmap();
+            }
+            if (other.bits != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    bits[i] |= other.bits[i];
+                }
+            } else {
+                for (int i = 0; i < other.cardinality; i++) {
+                    bits[other.array[i] >>> 6] |= 1L << other.array[i];
+                }
+            }
+            cardinality = 0;
+            for (long word : bits) {
+                cardinality += Long.bitCount(word);
+            }
+            return cardinality != before;
+        }
+
+        Container copy() {
+            Container copy = new Container();
+            copy.array = array != null ? Arrays.copyOf(array, cardinality) : null;
+            copy.bits = bits != null ? bits.clone() : null;
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            int runs = runs();
+            int arraySize = 2 * cardinality;
+            int runSize = 4 * runs;
+            if (runSize < Math.min(arraySize, WORDS * Long.BYTES)) {
+                output.writeByte(RUN);
+                output.writeChar(runs - 1);
+                forEachRun((start, length) -> {
+                    output.writeChar(start);
+                    output.writeChar(length - 1);
+                });
+            } else if (arraySize < WORDS * Long.BYTES) {
+                output.writeByte(ARRAY);
+                output.writeChar(cardinality - 1);
+                if (bits != null) {
+                    forEachRun((start, length) -> {
+                        for (int value = start; value < start + length; value++) {
+                            output.writeChar(value);
+                        }
+                    });
+                } else {
+                    for (int i = 0; i < cardinality; i++) {
+                        output.writeChar(array[i]);
+                    }
+                }
+            } else {
+                output.writeByte(BITMAP);
+                long[] words = bits;
+                if (words == null) {
+                    words = new long[WORDS];
+                    for (int i = 0; i < cardinality; i++) {
+                        words[array[i] >>> 6] |= 1L << array[i];
+                    }
+                }
+                for (long word : words) {
+                    output.writeLong(word);
+                }
+            }
+        }
+
+        static Container read(ByteBuffer buffer) {
+            Container container = new Container();
+            byte type = buffer.get();
+            if (type == BITMAP) {
+                container.bits = new long[WORDS];
+                for (int i = 0; i < WORDS; i++) {
+                    container.bits[i] = buffer.getLong();
+                    container.cardinality += Long.bitCount(container.bits[i]);
+                }
+                container.array = null;
+            } else if (type == ARRAY) {
+                int count = buffer.getChar() + 1;
+                container.array = new char[count];
+                for (int i = 0; i < count; i++) {
+                    container.array[i] = buffer.getChar();
+                }
+                container.cardinality = count;
+            } else {
+                int runs = buffer.getChar() + 1;
+                for (int i = 0; i < runs; i++) {
+                    int start = buffer.getChar();
+                    int length = buffer.getChar() + 1;
+                    for (int value = start; value < start + length; value++) {
+                        container.add((char) value);
+                    }
+                }
+            }
+            return container;
+        }
+
+        private void mergeArrays(Container other) {
+            char[] merged = new char[cardinality + other.cardinality];
+            int i = 0;
+            int j = 0;
+            int size = 0;
+            while (i < cardinality && j < other.cardinality) {
+                char left = array[i];
+                char right = other.array[j];
+                if (left == right) {
+                    i++;
+                    j++;
+                }
+                if (left < right) {
+                    i++;
+                } else if (left > right) {
+                    j++;
+                }
+                merged[size++] = left <= right ? left : right;
+            }
+            while (i < cardinality) {
+                merged[size++] = array[i++];
+            }
+            while (j < other.cardinality) {
+                merged[size++] = other.array[j++];
+            }
+            array = merged;
+            cardinality = size;
+        }
+
+        private void toBitmap() {
+            bits = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        private int runs() {
+            int[] runs = new int[1];
+            try {
+                forEachRun((start, length) -> runs[0]++);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return runs[0];
+        }
+
+        private void forEachRun(RunConsumer consumer) throws IOException {
+            int start = -1;
+            int previous = -2;
+            for (int value = next(0); value >= 0; value = next(value + 1)) {
+                if (value != previous + 1) {
+                    if (start >= 0) {
+                        consumer.accept(start, previous - start + 1);
+                    }
+                    start = value;
+                }
+                previous = value;
+            }
+            if (start >= 0) {
+                consumer.accept(start, previous - start + 1);
+            }
+        }
+
+        /**
+         * Метод возвращает наименьшее значение контейнера не меньше from или -1, если такого нет.
+         */
+        private int next(int from) {
+            if (from > Character.MAX_VALUE) {
+                return -1;
+            }
+            if (bits == null) {
+                int index = Arrays.binarySearch(array, 0, cardinality, (char) from);
+                index = index >= 0 ? index : -index - 1;
+                return index < cardinality ? array[index] : -1;
+            }
+            int word = from >>> 6;
+            long bitsLeft = bits[word] & (-1L << from);
+            while (bitsLeft == 0) {
+                if (++word == WORDS) {
+                    return -1;
+                }
+                bitsLeft = bits[word];
+            }
+            return (word << 6) + Long.numberOfTrailingZeros(bitsLeft);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RunConsumer {
+        void accept(int start, int length) throws IOException;
+    }
+
+    private record Ipv6(long high, long low) {
+    }
+}
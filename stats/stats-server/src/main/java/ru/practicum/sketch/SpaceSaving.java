@@ -0,0 +1,119 @@
+package ru.practicum.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Структура Space-Saving для приближённого поиска самых частых ключей потока.
+ * Хранит не более capacity счётчиков. Новый ключ при заполненной структуре вытесняет ключ с наименьшим счётчиком
+ * и наследует его значение, поэтому счётчик ключа завышен не больше чем на error, а любой ключ с частотой выше
+ * N / capacity гарантированно присутствует в структуре. Обновление стоит O(log capacity), чтение первых
+ * n ключей — O(capacity). Класс не потокобезопасен.
+ *
+ * @param <K> тип ключа.
+ */
+public final class SpaceSaving<K> {
+    private static final Comparator<Slot<?>> ORDER = Comparator.<Slot<?>>comparingLong(slot -> slot.count)
+            .thenComparingLong(slot -> slot.sequence);
+
+    private final int capacity;
+    private final Map<K, Slot<K>> slots = new HashMap<>();
+    private final TreeSet<Slot<K>> ordered = new TreeSet<>(ORDER);
+    private long sequence;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ёмкость должна быть положительной");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Метод увеличивает счётчик ключа.
+     *
+     * @param key       ключ.
+     * @param increment прирост счётчика.
+     */
+    public void offer(K key, long increment) {
+        Slot<K> slot = slots.get(key);
+        if (slot != null) {
+            ordered.remove(slot);
+            slot.count += increment;
+        } else if (slots.size() < capacity) {
+            slot = new Slot<>(key, increment, 0);
+            slots.put(key, slot);
+        } else {
+            Slot<K> min = ordered.pollFirst();
+            slots.remove(min.key);
+            slot = new Slot<>(key, min.count + increment, min.count);
+            slots.put(key, slot);
+        }
+        slot.sequence = sequence++;
+        ordered.add(slot);
+    }
+
+    /**
+     * Метод передаёт получателю все счётчики структуры.
+     */
+    public void forEach(CounterConsumer<K> consumer) {
+        for (Slot<K> slot : ordered) {
+            consumer.accept(slot.key, slot.count, slot.error);
+        }
+    }
+
+    /**
+     * Метод возвращает не более limit ключей с наибольшими счётчиками среди ключей, подходящих под условие.
+     *
+     * @param limit  наибольшее количество ключей.
+     * @param filter условие отбора ключей.
+     * @return счётчики в порядке убывания.
+     */
+    public List<Counter<K>> top(int limit, Predicate<K> filter) {
+        List<Counter<K>> result = new ArrayList<>(Math.min(limit, slots.size()));
+        Iterator<Slot<K>> iterator = ordered.descendingIterator();
+        while (iterator.hasNext() && result.size() < limit) {
+            Slot<K> slot = iterator.next();
+            if (filter.test(slot.key)) {
+                result.add(new Counter<>(slot.key, slot.count, slot.error));
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Счётчик ключа: оценка частоты count и наибольшее завышение оценки error.
+     */
+    public record Counter<K>(K key, long count, long error) {
+    }
+
+    /**
+     * Получатель счётчика ключа.
+     */
+    @FunctionalInterface
+    public interface CounterConsumer<K> {
+        void accept(K key, long count, long error);
+    }
+
+    private static final class Slot<K> {
+        private final K key;
+        private final long error;
+        private long count;
+        private long sequence;
+
+        private Slot(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.practicum.udp;
+
+import ru.practicum.dto.EndpointHitDto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Разбор строкового формата событий для UdpHitReceiver: одно событие на строку вида
+ * app|uri|ip|timestamp, где timestamp — время события в секундах Unix-эпохи (необязательно; без него событие
+ * получает время приёма). Строки разбираются прямо из буфера датаграммы, без промежуточных строк и массивов.
+ */
+final class HitRecordParser {
+    private static final byte SEPARATOR = '|';
+
+    private HitRecordParser() {
+    }
+
+    /**
+     * Метод разбирает строку data[from, to).
+     *
+     * @return событие или null, если строка не соответствует формату.
+     */
+    static EndpointHitDto parse(byte[] data, int from, int to, ZoneId zone) {
+        int appEnd = indexOf(data, from, to);
+        int uriEnd = indexOf(data, appEnd + 1, to);
+        if (appEnd == to || uriEnd == to) {
+            return null;
+        }
+        int ipEnd = indexOf(data, uriEnd + 1, to);
+        LocalDateTime timestamp;
+        if (ipEnd == to) {
+            timestamp = LocalDateTime.now(zone);
+        } else {
+            long seconds = parseSeconds(data, ipEnd + 1, to);
+            if (seconds < 0) {
+                return null;
+            }
+            timestamp = LocalDateTime.ofInstant(Instant.ofEpochSecond(seconds), zone);
+        }
+        return new EndpointHitDto(null, string(data, from, appEnd), string(data, appEnd + 1, uriEnd),
+                string(data, uriEnd + 1, ipEnd), timestamp);
+    }
+
+    private static int indexOf(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == SEPARATOR) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Метод разбирает неотрицательное десятичное число не длиннее 12 цифр или возвращает -1.
+     */
+    private static long parseSeconds(byte[] data, int from, int to) {
+        if (from == to || to - from > 12) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static String string(byte[] data, int from, int to) {
+        return new String(data, from, to - from, StandardCharsets.UTF_8);
+    }
+}
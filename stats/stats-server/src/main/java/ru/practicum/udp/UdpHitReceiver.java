@@ -0,0 +1,194 @@
+package ru.practicum.udp;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.HitBatchResultDto;
+import ru.practicum.service.StatsService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Приём событий по UDP для производителей с большим потоком событий, которым дорог даже пакетный HTTP.
+ * Датаграмма содержит одну или несколько строк формата HitRecordParser, например:
+ * echo "ewm-main-service|/events/1|192.168.0.1|1718000000" | nc -u -w0 localhost 9091
+ * Один поток с селектором читает датаграммы в переиспользуемый буфер и копит разобранные события; пачка
+ * из stats.udp.batch-size событий или накопленная за stats.udp.flush-interval-ms передаётся отдельному потоку
+ * записи, который сохраняет её через StatsService.saveEvents, как /hit/batch. Ответа отправитель не получает:
+ * если очередь пачек на запись заполнена или запись не удалась, пачка отбрасывается. Принятые, отброшенные
+ * и неразобранные события считаются метриками stats.udp.*. Включается свойством stats.udp.enabled=true.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.udp.enabled", havingValue = "true")
+public class UdpHitReceiver {
+    private static final int MAX_DATAGRAM = 65_507;
+
+    private final StatsService service;
+    private final MeterRegistry meterRegistry;
+    @Value("${stats.udp.host:0.0.0.0}")
+    private String host;
+    @Value("${stats.udp.port:9091}")
+    private int port;
+    @Value("${stats.udp.receive-buffer-bytes:4194304}")
+    private int receiveBufferBytes;
+    @Value("${stats.udp.batch-size:1000}")
+    private int batchSize;
+    @Value("${stats.udp.flush-interval-ms:50}")
+    private long flushIntervalMs;
+    @Value("${stats.udp.queue-capacity:64}")
+    private int queueCapacity;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+    private final ZoneId zone = ZoneId.systemDefault();
+    private DatagramChannel channel;
+    private Selector selector;
+    private ThreadPoolExecutor writer;
+    private Thread receiver;
+    private volatile boolean running;
+    private Counter receivedCounter;
+    private Counter malformedCounter;
+    private Counter droppedCounter;
+    private List<EndpointHitDto> batch;
+    private long batchStarted;
+    private long flushIntervalNanos;
+
+    @PostConstruct
+    void start() throws IOException {
+        receivedCounter = Counter.builder("stats.udp.received")
+                .description("Количество событий, принятых по UDP")
+                .register(meterRegistry);
+        malformedCounter = Counter.builder("stats.udp.malformed")
+                .description("Количество строк UDP, которые не удалось разобрать или сохранить")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("stats.udp.dropped")
+                .description("Количество событий UDP, отброшенных из-за переполнения очереди или ошибки записи")
+                .register(meterRegistry);
+        writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "udp-hit-writer"), new ThreadPoolExecutor.AbortPolicy());
+        selector = Selector.open();
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferBytes);
+        channel.bind(new InetSocketAddress(host, port));
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        batch = new ArrayList<>(batchSize);
+        flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        running = true;
+        receiver = new Thread(this::receiveLoop, "udp-hit-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+        log.info("Приём событий по UDP запущен на {}:{}", host, port);
+    }
+
+    @PreDestroy
+    void stop() throws IOException, InterruptedException {
+        running = false;
+        selector.wakeup();
+        receiver.join(TimeUnit.SECONDS.toMillis(5));
+        channel.close();
+        selector.close();
+        writer.shutdown();
+        if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Не все пачки событий UDP записаны до остановки сервиса");
+        }
+    }
+
+    private void receiveLoop() {
+        while (running) {
+            try {
+                selector.select(flushIntervalMs);
+                selector.selectedKeys().clear();
+                while (channel.receive(buffer) != null) {
+                    buffer.flip();
+                    parse(buffer.array(), buffer.limit());
+                    buffer.clear();
+                }
+                if (!batch.isEmpty() && System.nanoTime() - batchStarted >= flushIntervalNanos) {
+                    flush();
+                }
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Ошибка приёма событий по UDP", e);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush();
+        }
+    }
+
+    private void parse(byte[] data, int length) {
+        int from = 0;
+        while (from < length) {
+            int to = from;
+            while (to < length && data[to] != '\n') {
+                to++;
+            }
+            int end = to > from && data[to - 1] == '\r' ? to - 1 : to;
+            if (end > from) {
+                EndpointHitDto hit = HitRecordParser.parse(data, from, end, zone);
+                if (hit == null) {
+                    malformedCounter.increment();
+                } else {
+                    add(hit);
+                }
+            }
+            from = to + 1;
+        }
+    }
+
+    private void add(EndpointHitDto hit) {
+        if (batch.isEmpty()) {
+            batchStarted = System.nanoTime();
+        }
+        batch.add(hit);
+        receivedCounter.increment();
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        List<EndpointHitDto> hits = batch;
+        batch = new ArrayList<>(batchSize);
+        try {
+            writer.execute(() -> save(hits));
+        } catch (RejectedExecutionException e) {
+            droppedCounter.increment(hits.size());
+        }
+    }
+
+    private void save(List<EndpointHitDto> hits) {
+        try {
+            HitBatchResultDto result = service.saveEvents(hits);
+            if (!result.getFailed().isEmpty()) {
+                malformedCounter.increment(result.getFailed().size());
+            }
+        } catch (RuntimeException e) {
+            droppedCounter.increment(hits.size());
+            log.warn("Не удалось сохранить пачку из {} событий, принятых по UDP", hits.size(), e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+CREATE TABLE IF NOT EXISTS statistics_app (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS statistics_uri (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    uri VARCHAR(255) COLLATE "C" NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS statistics (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip INET NOT NULL,
+    "creation date" TIMESTAMP NOT NULL,
+    PRIMARY KEY (id, "creation date")
+) PARTITION BY RANGE ("creation date");
+CREATE TABLE IF NOT EXISTS statistics_default PARTITION OF statistics DEFAULT;
+CREATE INDEX IF NOT EXISTS statistics_creation_date_idx ON statistics ("creation date");
+CREATE INDEX IF NOT EXISTS statistics_uri_id_creation_date_idx ON statistics (uri_id, "creation date");
+
+CREATE TABLE IF NOT EXISTS statistics_minute (
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (uri_id, bucket, app_id)
+);
+CREATE INDEX IF NOT EXISTS statistics_minute_bucket_idx ON statistics_minute (bucket);
+
+CREATE TABLE IF NOT EXISTS statistics_hour (
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (uri_id, bucket, app_id)
+);
+CREATE INDEX IF NOT EXISTS statistics_hour_bucket_idx ON statistics_hour (bucket);
+
+CREATE TABLE IF NOT EXISTS statistics_day (
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (uri_id, bucket, app_id)
+);
+CREATE INDEX IF NOT EXISTS statistics_day_bucket_idx ON statistics_day (bucket);
+
+CREATE TABLE IF NOT EXISTS statistics_sketch_hour (
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (uri_id, bucket, app_id)
+);
+CREATE INDEX IF NOT EXISTS statistics_sketch_hour_bucket_idx ON statistics_sketch_hour (bucket);
+
+CREATE TABLE IF NOT EXISTS statistics_sketch_day (
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (uri_id, bucket, app_id)
+);
+CREATE INDEX IF NOT EXISTS statistics_sketch_day_bucket_idx ON statistics_sketch_day (bucket);
+
+CREATE TABLE IF NOT EXISTS statistics_pending (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip INET NOT NULL,
+    "creation date" TIMESTAMP NOT NULL
+);
+CREATE INDEX IF NOT EXISTS statistics_pending_date_idx ON statistics_pending ("creation date");
+
+CREATE TABLE IF NOT EXISTS statistics_bitmap_day (
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    bitmap BYTEA NOT NULL,
+    PRIMARY KEY (uri_id, bucket, app_id)
+);
+CREATE INDEX IF NOT EXISTS statistics_bitmap_day_bucket_idx ON statistics_bitmap_day (bucket);
+
+CREATE TABLE IF NOT EXISTS statistics_all_time (
+    uri_id INTEGER NOT NULL,
+    app_id INTEGER NOT NULL,
+    hits BIGINT NOT NULL,
+    unique_hits BIGINT NOT NULL,
+    PRIMARY KEY (uri_id, app_id)
+);
+
+CREATE TABLE IF NOT EXISTS statistics_first_seen (
+    uri_id INTEGER NOT NULL,
+    app_id INTEGER NOT NULL,
+    ip INET NOT NULL,
+    PRIMARY KEY (uri_id, app_id, ip)
+);
+
+CREATE TABLE IF NOT EXISTS statistics_compaction (
+    id INTEGER PRIMARY KEY CHECK (id = 1),
+    watermark TIMESTAMP NOT NULL
+);
@@ -0,0 +1,85 @@
+package ru.practicum.column;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.practicum.model.EndpointHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.UriFilter;
+import ru.practicum.repository.StatsRepository;
+import ru.practicum.service.StatsDictionary;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Проверка колоночного хранилища: словарь IPv6-адресов освобождается вместе с вытесненными сегментами.
+ */
+class ColumnStoreTest {
+    private ColumnStore store;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        StatsDictionary dictionary = mock(StatsDictionary.class);
+        when(dictionary.app(anyInt())).thenReturn("ewm");
+        doAnswer(invocation -> {
+            invocation.<BiConsumer<Integer, String>>getArgument(0).accept(1, "/events/1");
+            return null;
+        }).when(dictionary).forEachUri(any());
+        store = new ColumnStore(mock(StatsRepository.class), dictionary, mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(store, "retentionHours", 24);
+        ReflectionTestUtils.setField(store, "segmentSize", 2);
+        ReflectionTestUtils.setField(store, "maxSegments", 2);
+        ReflectionTestUtils.setField(store, "parallelism", 1);
+        store.rebuild();
+        now = LocalDateTime.now().withNano(0);
+    }
+
+    @Test
+    void ipv6AddressesOfEvictedSegmentsAreForgotten() {
+        for (int i = 0; i < 100; i++) {
+            store.onHits(List.of(hit("2001:db8::" + Integer.toHexString(i), now.minusMinutes(10).plusSeconds(i))));
+        }
+
+        assertEquals(4, ipv6Size());
+    }
+
+    @Test
+    void ipv6AddressSharedBySegmentsIsKeptUntilLastSegmentIsEvicted() {
+        store.onHits(List.of(hit("2001:db8::1", now.minusMinutes(30)), hit("2001:db8::2", now.minusMinutes(30)),
+                hit("2001:db8::1", now.minusMinutes(20)), hit("10.0.0.1", now.minusMinutes(20))));
+        assertEquals(2, ipv6Size());
+
+        store.onHits(List.of(hit("2001:db8::3", now.minusMinutes(10))));
+
+        assertEquals(2, ipv6Size());
+        Map<HitKey, Long> unique = store.count(now.minusMinutes(25), now, UriFilter.parse(null), false, true);
+        assertEquals(Map.of(new HitKey("ewm", "/events/1"), 3L), unique);
+    }
+
+    private int ipv6Size() {
+        return ((Map<?, ?>) ReflectionTestUtils.getField(store, "ipv6")).size();
+    }
+
+    private static EndpointHit hit(String ip, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app("ewm")
+                .uri("/events/1")
+                .ip(ip)
+                .timestamp(timestamp)
+                .appId(1)
+                .uriId(1)
+                .build();
+    }
+}
@@ -0,0 +1,201 @@
+package ru.practicum.router;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestClient;
+import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.HitBatchErrorDto;
+import ru.practicum.dto.HitBatchResultDto;
+import ru.practicum.dto.HitCodec;
+import ru.practicum.dto.StatsViewDto;
+import ru.practicum.model.StatsPrecision;
+import ru.practicum.service.ShardedStatsService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка маршрутизатора статистики с тремя узлами-заглушками на HttpServer: распределение URI по узлам,
+ * передача событий владельцам и объединение ответов узлов ShardedStatsService.
+ */
+class ShardRouterTest {
+    private static final String START = "2024-01-01 00:00:00";
+    private static final String END = "2024-12-31 23:59:59";
+
+    private final List<StubShard> stubs = new ArrayList<>();
+    private ShardRouter router;
+    private ShardedStatsService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            stubs.add(new StubShard());
+        }
+        router = router(stubs.stream().map(StubShard::url).toList());
+        service = new ShardedStatsService(router);
+        ReflectionTestUtils.setField(service, "maxBatchSize", 10000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.stop();
+        stubs.forEach(stub -> stub.server.stop(0));
+    }
+
+    @Test
+    void urisAreSpreadEvenlyAndOwnedByTheSameShardOnEveryRouter() {
+        ShardRouter other = router(stubs.stream().map(StubShard::url).toList());
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            String uri = "/events/" + i;
+            assertEquals(router.owner(uri).getUrl(), other.owner(uri).getUrl());
+            owned.merge(router.owner(uri).getUrl(), 1, Integer::sum);
+        }
+        other.stop();
+
+        assertEquals(3, owned.size());
+        owned.values().forEach(count -> assertTrue(count > 800 && count < 1200, "Неравномерно: " + owned));
+    }
+
+    @Test
+    void hitsAreSentToTheirOwners() {
+        List<EndpointHitDto> hits = IntStream.range(0, 60)
+                .mapToObj(i -> hit("/events/" + i))
+                .toList();
+
+        HitBatchResultDto result = service.saveEvents(hits);
+
+        assertEquals(60, result.getSaved());
+        assertEquals(List.of(), result.getFailed());
+        for (StubShard stub : stubs) {
+            List<String> expected = hits.stream()
+                    .map(EndpointHitDto::getUri)
+                    .filter(uri -> router.owner(uri).getUrl().equals(stub.url()))
+                    .toList();
+            assertEquals(expected, stub.hits.stream().map(EndpointHitDto::getUri).toList());
+        }
+    }
+
+    @Test
+    void hitsOfUnavailableShardAreReturnedAsFailed() {
+        StubShard down = stubs.get(0);
+        down.server.stop(0);
+        List<EndpointHitDto> hits = IntStream.range(0, 30)
+                .mapToObj(i -> hit("/events/" + i))
+                .toList();
+
+        HitBatchResultDto result = service.saveEvents(hits);
+
+        List<Integer> expected = IntStream.range(0, hits.size())
+                .filter(i -> router.owner(hits.get(i).getUri()).getUrl().equals(down.url()))
+                .boxed()
+                .toList();
+        assertEquals(expected, result.getFailed().stream().map(HitBatchErrorDto::getIndex).toList());
+        assertEquals(hits.size() - expected.size(), (int) result.getSaved());
+    }
+
+    @Test
+    void statisticsOfAllShardsAreMergedByHits() {
+        stubs.get(0).rows = "[{\"app\":\"ewm\",\"uri\":\"/events/1\",\"hits\":5}," +
+                "{\"app\":\"ewm\",\"uri\":\"/events/4\",\"hits\":1}]";
+        stubs.get(1).rows = "[{\"app\":\"ewm\",\"uri\":\"/events/2\",\"hits\":7}]";
+        stubs.get(2).rows = "[{\"app\":\"ewm\",\"uri\":\"/events/3\",\"hits\":3}]";
+
+        List<StatsViewDto> statistics = service.getStatistics(START, END, null, false, StatsPrecision.EXACT, false);
+        List<StatsViewDto> top = service.getTop(START, END, 2, null, false, StatsPrecision.EXACT);
+
+        assertEquals(List.of(row("/events/2", 7), row("/events/1", 5), row("/events/3", 3), row("/events/4", 1)),
+                statistics);
+        assertEquals(List.of(row("/events/2", 7), row("/events/1", 5)), top);
+        stubs.forEach(stub -> assertEquals(2, stub.queries.size()));
+    }
+
+    @Test
+    void statisticsByUrisAreRequestedOnlyFromOwners() {
+        String uri = "/events/42";
+        StubShard owner = stubs.stream()
+                .filter(stub -> stub.url().equals(router.owner(uri).getUrl()))
+                .findFirst()
+                .orElseThrow();
+        owner.rows = "[{\"app\":\"ewm\",\"uri\":\"/events/42\",\"hits\":9}]";
+
+        List<StatsViewDto> statistics = service.getStatistics(START, END, List.of(uri), false,
+                StatsPrecision.EXACT, false);
+
+        assertEquals(List.of(row(uri, 9)), statistics);
+        for (StubShard stub : stubs) {
+            assertEquals(stub == owner ? 1 : 0, stub.queries.size());
+        }
+        assertTrue(owner.queries.get(0).contains("uris=/events/42"), owner.queries.get(0));
+    }
+
+    private static ShardRouter router(List<String> urls) {
+        ShardRouter router = new ShardRouter(RestClient.builder());
+        ReflectionTestUtils.setField(router, "urls", urls);
+        ReflectionTestUtils.setField(router, "connectTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(router, "readTimeoutMs", 5000L);
+        router.init();
+        return router;
+    }
+
+    private static EndpointHitDto hit(String uri) {
+        return new EndpointHitDto(null, "ewm", uri, "192.168.0.1", LocalDateTime.of(2024, 6, 1, 12, 0));
+    }
+
+    private static StatsViewDto row(String uri, long hits) {
+        return new StatsViewDto("ewm", uri, hits);
+    }
+
+    /**
+     * Узел-заглушка: сохраняет события /hit/batch и отвечает на /stats и /stats/top строками rows.
+     */
+    private static class StubShard {
+        private final HttpServer server;
+        private final List<EndpointHitDto> hits = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+        private volatile String rows = "[]";
+
+        StubShard() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/hit/batch", exchange -> {
+                List<EndpointHitDto> batch = HitCodec.decode(exchange.getRequestBody().readAllBytes());
+                hits.addAll(batch);
+                respond(exchange, "{\"saved\":" + batch.size() + ",\"failed\":[],\"suppressed\":[]}");
+            });
+            server.createContext("/stats", exchange -> {
+                queries.add(exchange.getRequestURI().getQuery());
+                respond(exchange, rows);
+            });
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        private static void respond(HttpExchange exchange, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.model.EndpointHit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Проверка подавления повторных событий по времени самих событий.
+ */
+class HitDeduplicatorTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 6, 1, 12, 0);
+
+    private SimpleMeterRegistry meterRegistry;
+    private HitDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        deduplicator = new HitDeduplicator(meterRegistry);
+        ReflectionTestUtils.setField(deduplicator, "windowMs", 1000L);
+        ReflectionTestUtils.setField(deduplicator, "maxKeys", 1000);
+        deduplicator.init();
+    }
+
+    @Test
+    void visitsFarApartInOneBatchAreKept() {
+        List<EndpointHit> hits = List.of(hit("/events/1", TIME), hit("/events/1", TIME.plusMinutes(5)),
+                hit("/events/1", TIME.plusDays(1)));
+
+        assertEquals(List.of(), deduplicator.findDuplicates(hits));
+    }
+
+    @Test
+    void repeatsWithinWindowInOneBatchAreSuppressed() {
+        List<EndpointHit> hits = List.of(hit("/events/1", TIME), hit("/events/1", TIME.plusNanos(300_000_000)),
+                hit("/events/2", TIME), hit("/events/1", TIME.plusSeconds(2)));
+
+        assertEquals(List.of(1), deduplicator.findDuplicates(hits));
+        assertEquals(1, meterRegistry.counter("stats.ingest.dedup.suppressed").count());
+    }
+
+    @Test
+    void hitsAreSuppressedOnlyAfterTheyAreRemembered() {
+        List<EndpointHit> hits = List.of(hit("/events/1", TIME));
+
+        assertEquals(List.of(), deduplicator.findDuplicates(hits));
+        assertEquals(List.of(), deduplicator.findDuplicates(hits));
+
+        deduplicator.remember(hits);
+
+        assertEquals(List.of(0), deduplicator.findDuplicates(List.of(hit("/events/1", TIME.plusNanos(500_000_000)))));
+        assertEquals(List.of(), deduplicator.findDuplicates(List.of(hit("/events/1", TIME.plusSeconds(1)))));
+    }
+
+    private static EndpointHit hit(String uri, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("192.168.0.1")
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,154 @@
+package ru.practicum.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.repository.PartitionRepository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Проверка секционирования таблицы statistics на локальном PostgreSQL (H2 не поддерживает PARTITION BY).
+ * Таблица создаётся в отдельной схеме partition_test; если PostgreSQL недоступен, тесты пропускаются.
+ */
+class PartitionManagerTest {
+    private static final String SCHEMA = "partition_test";
+    private static final String URL = System.getProperty("stats.test.datasource.url",
+            "jdbc:postgresql://localhost:5432/postgres") + "?currentSchema=" + SCHEMA;
+
+    private JdbcTemplate jdbcTemplate;
+    private HitCompactor compactor;
+    private PartitionManager manager;
+    private LocalDateTime currentMonth;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, "postgres", "postgres");
+        try (Connection connection = dataSource.getConnection()) {
+            Assumptions.assumeTrue(connection.isValid(1), "PostgreSQL недоступен");
+        } catch (SQLException e) {
+            Assumptions.abort("PostgreSQL недоступен: " + e.getMessage());
+        }
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA " + SCHEMA);
+        jdbcTemplate.execute("CREATE TABLE statistics (id BIGINT GENERATED BY DEFAULT AS IDENTITY, " +
+                "app_id INTEGER NOT NULL, uri_id INTEGER NOT NULL, ip INET NOT NULL, " +
+                "\"creation date\" TIMESTAMP NOT NULL, PRIMARY KEY (id, \"creation date\")) " +
+                "PARTITION BY RANGE (\"creation date\")");
+        jdbcTemplate.execute("CREATE TABLE statistics_default PARTITION OF statistics DEFAULT");
+        jdbcTemplate.execute("CREATE INDEX ON statistics (\"creation date\")");
+        compactor = mock(HitCompactor.class);
+        manager = new PartitionManager(new PartitionRepository(jdbcTemplate),
+                new DataSourceTransactionManager(dataSource), Optional.of(compactor));
+        ReflectionTestUtils.setField(manager, "interval", ChronoUnit.MONTHS);
+        ReflectionTestUtils.setField(manager, "premake", 1);
+        ReflectionTestUtils.setField(manager, "retentionAction", PartitionManager.RetentionAction.DROP);
+        currentMonth = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (jdbcTemplate != null) {
+            jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        }
+    }
+
+    @Test
+    void maintenanceMovesHitsOutOfDefaultPartition() {
+        insert(LocalDateTime.of(1970, 1, 2, 10, 0));
+        insert(currentMonth.plusHours(5));
+        insert(currentMonth.plusMonths(1).plusHours(5));
+
+        manager.init();
+
+        assertEquals("statistics_default", partitionOf(LocalDateTime.of(1970, 1, 2, 10, 0)));
+        assertEquals(name(currentMonth), partitionOf(currentMonth.plusHours(5)));
+        assertEquals(name(currentMonth.plusMonths(1)), partitionOf(currentMonth.plusMonths(1).plusHours(5)));
+        assertEquals(3, count("statistics"));
+    }
+
+    @Test
+    void hitsWithoutPartitionAreWrittenToDefaultPartition() {
+        manager.init();
+
+        insert(LocalDateTime.of(2999, 1, 1, 0, 0));
+
+        assertEquals("statistics_default", partitionOf(LocalDateTime.of(2999, 1, 1, 0, 0)));
+        assertEquals(List.of("statistics_default", name(currentMonth), name(currentMonth.plusMonths(1))),
+                partitions());
+    }
+
+    @Test
+    void splitFollowsExistingPartitions() {
+        manager.init();
+        LocalDateTime from = LocalDateTime.of(2000, 1, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2100, 1, 1, 0, 0);
+
+        List<TimeSegment> ranges = manager.split(from, to);
+
+        assertEquals(List.of(new TimeSegment(null, from, currentMonth),
+                new TimeSegment(null, currentMonth, currentMonth.plusMonths(1)),
+                new TimeSegment(null, currentMonth.plusMonths(1), currentMonth.plusMonths(2)),
+                new TimeSegment(null, currentMonth.plusMonths(2), to)), ranges);
+    }
+
+    @Test
+    void retentionDropsOldPartitionsAndDefaultRows() {
+        LocalDateTime oldMonth = currentMonth.minusMonths(6);
+        jdbcTemplate.execute(String.format("CREATE TABLE %s PARTITION OF statistics FOR VALUES FROM ('%s') TO ('%s')",
+                name(oldMonth), oldMonth, oldMonth.plusMonths(1)));
+        insert(oldMonth.plusDays(3));
+        insert(LocalDateTime.of(1970, 1, 2, 10, 0));
+        insert(currentMonth.plusHours(1));
+        ReflectionTestUtils.setField(manager, "retentionDays", 60);
+
+        manager.init();
+
+        LocalDateTime boundary = LocalDateTime.now().minusDays(60).truncatedTo(ChronoUnit.DAYS);
+        verify(compactor).retire(boundary);
+        assertFalse(partitions().contains(name(oldMonth)));
+        assertEquals(0, count("statistics_default"));
+        assertEquals(1, count("statistics"));
+    }
+
+    private void insert(LocalDateTime time) {
+        jdbcTemplate.update("INSERT INTO statistics (app_id, uri_id, ip, \"creation date\") " +
+                "VALUES (1, 1, '10.0.0.1', ?)", Timestamp.valueOf(time));
+    }
+
+    private String partitionOf(LocalDateTime time) {
+        return jdbcTemplate.queryForObject("SELECT tableoid::regclass::text FROM statistics " +
+                "WHERE \"creation date\" = ?", String.class, Timestamp.valueOf(time));
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = 'statistics'::regclass ORDER BY c.relname", String.class);
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+
+    private String name(LocalDateTime start) {
+        return String.format("statistics_p%04d%02d", start.getYear(), start.getMonthValue());
+    }
+}
@@ -0,0 +1,136 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка скетча HyperLogLog: скетчи хранятся в таблицах statistics_sketch_* и объединяются со скетчами,
+ * записанными предыдущими версиями, поэтому проверяются хеш, сериализация, объединение и точность оценки.
+ */
+class HyperLogLogTest {
+
+    @Test
+    void hashAndSerializedFormatAreStable() {
+        HyperLogLog sketch = new HyperLogLog();
+        sketch.addIp("192.168.0.1");
+        sketch.addIp("2001:db8::1");
+
+        assertEquals(0x49bc1b8ed85dd527L, HyperLogLog.hash("192.168.0.1"));
+        assertEquals(0xefd01f60ba992926L, HyperLogLog.hash(""));
+        assertArrayEquals(new byte[]{1, 0x04, (byte) 0x9b, 1, 0x08, (byte) 0xde, 1}, sketch.toBytes());
+    }
+
+    @Test
+    void sparseSketchSurvivesRoundTrip() {
+        HyperLogLog sketch = sketch(0, 500);
+
+        byte[] data = sketch.toBytes();
+
+        assertEquals(1, data[0]);
+        assertRoundTrip(sketch);
+    }
+
+    @Test
+    void denseSketchSurvivesRoundTrip() {
+        HyperLogLog sketch = sketch(0, 100_000);
+
+        byte[] data = sketch.toBytes();
+
+        assertEquals(0, data[0]);
+        assertEquals((1 << HyperLogLog.PRECISION) + 1, data.length);
+        assertRoundTrip(sketch);
+    }
+
+    @Test
+    void emptySketchSurvivesRoundTrip() {
+        HyperLogLog sketch = new HyperLogLog();
+
+        assertArrayEquals(new byte[]{1}, sketch.toBytes());
+        assertEquals(0, HyperLogLog.fromBytes(sketch.toBytes()).estimate());
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        HyperLogLog union = sketch(0, 75_000);
+        for (int[] parts : new int[][]{{0, 50_000, 25_000, 75_000}, {0, 300, 300, 75_000}, {0, 75_000, 10, 20}}) {
+            HyperLogLog left = sketch(parts[0], parts[1]);
+            HyperLogLog right = sketch(parts[2], parts[3]);
+            HyperLogLog fromBytes = HyperLogLog.fromBytes(left.toBytes());
+
+            left.merge(right);
+            fromBytes.merge(right.toBytes());
+
+            assertArrayEquals(union.toBytes(), left.toBytes());
+            assertArrayEquals(union.toBytes(), fromBytes.toBytes());
+        }
+    }
+
+    @Test
+    void mergeReportsChangesAndIsIdempotent() {
+        HyperLogLog sketch = sketch(0, 1000);
+        HyperLogLog copy = HyperLogLog.fromBytes(sketch.toBytes());
+
+        assertFalse(sketch.merge(copy));
+        assertFalse(sketch.merge(copy.toBytes()));
+        assertTrue(sketch.merge(sketch(1000, 2000)));
+        assertTrue(copy.merge(sketch.toBytes()));
+        assertArrayEquals(sketch.toBytes(), copy.toBytes());
+    }
+
+    @Test
+    void estimateIsCloseToExactCount() {
+        Random random = new Random(4);
+        for (int size : new int[]{10, 1000, 10_000, 50_000, 200_000}) {
+            Set<String> exact = new HashSet<>();
+            HyperLogLog sketch = new HyperLogLog();
+            while (exact.size() < size) {
+                String ip = "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+                exact.add(ip);
+                sketch.add(ip);
+            }
+            double error = Math.abs(sketch.estimate() - size) / (double) size;
+
+            assertTrue(error < 4 * HyperLogLog.RELATIVE_ERROR, "Ошибка " + error + " для " + size + " значений");
+        }
+    }
+
+    @Test
+    void ipAddressesAreNormalizedBeforeHashing() {
+        HyperLogLog full = new HyperLogLog();
+        HyperLogLog compact = new HyperLogLog();
+        HyperLogLog text = new HyperLogLog();
+
+        full.addIp("2001:0db8:0000:0000:0000:0000:0000:0001");
+        compact.addIp("2001:db8::1");
+        full.addIp("192.168.0.1");
+        compact.addIp("192.168.0.1");
+        text.add("192.168.0.1");
+
+        assertArrayEquals(full.toBytes(), compact.toBytes());
+        assertFalse(compact.merge(text));
+    }
+
+    private static HyperLogLog sketch(int from, int to) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = from; i < to; i++) {
+            sketch.add("value-" + i);
+        }
+        return sketch;
+    }
+
+    private static void assertRoundTrip(HyperLogLog sketch) {
+        byte[] data = sketch.toBytes();
+        HyperLogLog restored = HyperLogLog.fromBytes(data);
+
+        assertArrayEquals(data, restored.toBytes());
+        assertEquals(sketch.estimate(), restored.estimate());
+    }
+}
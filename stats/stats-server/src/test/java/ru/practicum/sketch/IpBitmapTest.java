@@ -0,0 +1,145 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка множества IP-адресов IpBitmap: формат хранится в statistics_bitmap_day и объединяется при чтении,
+ * поэтому проверяются сериализация всех видов контейнеров, объединение и точность мощности.
+ */
+class IpBitmapTest {
+
+    @Test
+    void serializedFormatIsStable() {
+        IpBitmap bitmap = new IpBitmap();
+        bitmap.add("10.0.0.1");
+        bitmap.add("10.0.0.3");
+        bitmap.add("::1");
+
+        ByteBuffer expected = ByteBuffer.allocate(4 + 2 + 1 + 2 + 4 + 4 + 16);
+        expected.putInt(1).putChar((char) 0x0a00).put((byte) 0).putChar((char) 1).putChar((char) 1)
+                .putChar((char) 3).putInt(1).putLong(0).putLong(1);
+
+        assertArrayEquals(expected.array(), bitmap.toBytes());
+    }
+
+    @Test
+    void sparseArrayContainerSurvivesRoundTrip() {
+        Set<Integer> expected = new HashSet<>();
+        IpBitmap bitmap = new IpBitmap();
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            int ip = random.nextInt();
+            expected.add(ip);
+            bitmap.add(ip);
+        }
+
+        assertRoundTrip(bitmap, expected.size());
+    }
+
+    @Test
+    void denseBitmapContainerSurvivesRoundTrip() {
+        IpBitmap bitmap = new IpBitmap();
+        Random random = new Random(2);
+        Set<Integer> expected = new HashSet<>();
+        while (expected.size() < 20_000) {
+            int ip = 0x0a000000 | random.nextInt(1 << 16);
+            expected.add(ip);
+            bitmap.add(ip);
+        }
+
+        IpBitmap restored = assertRoundTrip(bitmap, 20_000);
+        for (int ip : expected) {
+            assertFalse(restored.add(ip));
+        }
+    }
+
+    @Test
+    void runContainerSurvivesRoundTrip() {
+        IpBitmap bitmap = new IpBitmap();
+        for (int i = 0; i < 1 << 16; i++) {
+            bitmap.add(0xc0a80000 | i);
+        }
+        for (int i = 100; i < 200; i++) {
+            bitmap.add(0x0a000000 | i);
+        }
+
+        byte[] data = assertRoundTrip(bitmap, (1 << 16) + 100).toBytes();
+
+        assertTrue(data.length < 64, "Отрезки должны храниться компактно: " + data.length);
+    }
+
+    @Test
+    void containerChangesOnAddAndMergeKeepAllAddresses() {
+        IpBitmap left = new IpBitmap();
+        IpBitmap right = new IpBitmap();
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 4096; i += 2) {
+            left.add(i);
+            expected.add(i);
+        }
+        for (int i = 1; i < 4096; i += 2) {
+            right.add(i);
+            expected.add(i);
+        }
+
+        assertTrue(left.merge(right));
+        assertEquals(expected.size(), left.cardinality());
+        assertTrue(left.add(5000));
+        assertFalse(left.add(4095));
+        assertEquals(expected.size() + 1, assertRoundTrip(left, expected.size() + 1).cardinality());
+    }
+
+    @Test
+    void mergeMatchesExactUnion() {
+        Random random = new Random(3);
+        Set<String> expected = new HashSet<>();
+        IpBitmap merged = new IpBitmap();
+        for (int part = 0; part < 5; part++) {
+            IpBitmap bitmap = new IpBitmap();
+            int size = part == 0 ? 10 : 3000 * part;
+            for (int i = 0; i < size; i++) {
+                String ip = random.nextInt(4) == 0
+                        ? "2001:db8::" + Integer.toHexString(random.nextInt(5000))
+                        : "10." + random.nextInt(3) + "." + random.nextInt(256) + "." + random.nextInt(256);
+                expected.add(ip);
+                bitmap.add(ip);
+            }
+            merged.merge(IpBitmap.fromBytes(bitmap.toBytes()));
+            assertEquals(expected.size(), merged.cardinality());
+        }
+
+        assertFalse(merged.merge(IpBitmap.fromBytes(merged.toBytes())));
+        assertRoundTrip(merged, expected.size());
+    }
+
+    @Test
+    void sameAddressInDifferentNotationIsCountedOnce() {
+        IpBitmap bitmap = new IpBitmap();
+
+        assertTrue(bitmap.add("2001:db8:0:0:0:0:0:1"));
+        assertFalse(bitmap.add("2001:db8::1"));
+        assertTrue(bitmap.add("192.168.0.1"));
+        assertFalse(bitmap.add(0xc0a80001));
+        assertEquals(2, bitmap.cardinality());
+    }
+
+    private static IpBitmap assertRoundTrip(IpBitmap bitmap, long cardinality) {
+        byte[] data = bitmap.toBytes();
+        IpBitmap restored = IpBitmap.fromBytes(data);
+
+        assertEquals(cardinality, bitmap.cardinality());
+        assertEquals(cardinality, restored.cardinality());
+        assertArrayEquals(data, restored.toBytes());
+        return restored;
+    }
+}
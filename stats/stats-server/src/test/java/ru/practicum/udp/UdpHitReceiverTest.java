@@ -0,0 +1,104 @@
+package ru.practicum.udp;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.HitBatchResultDto;
+import ru.practicum.service.StatsService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Проверка приёма событий по UDP: датаграммы отправляются через DatagramChannel на локальный порт приёмника,
+ * а разобранные события проверяются в пачке, переданной StatsService.saveEvents.
+ */
+class UdpHitReceiverTest {
+    private StatsService service;
+    private SimpleMeterRegistry meterRegistry;
+    private UdpHitReceiver receiver;
+    private DatagramChannel sender;
+    private SocketAddress address;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        service = mock(StatsService.class);
+        when(service.saveEvents(anyList())).thenAnswer(invocation ->
+                new HitBatchResultDto(invocation.<List<?>>getArgument(0).size(), List.of(), List.of()));
+        meterRegistry = new SimpleMeterRegistry();
+        receiver = new UdpHitReceiver(service, meterRegistry);
+        ReflectionTestUtils.setField(receiver, "host", "127.0.0.1");
+        ReflectionTestUtils.setField(receiver, "port", 0);
+        ReflectionTestUtils.setField(receiver, "receiveBufferBytes", 65536);
+        ReflectionTestUtils.setField(receiver, "batchSize", 3);
+        ReflectionTestUtils.setField(receiver, "flushIntervalMs", 50L);
+        ReflectionTestUtils.setField(receiver, "queueCapacity", 4);
+        receiver.start();
+        DatagramChannel channel = (DatagramChannel) ReflectionTestUtils.getField(receiver, "channel");
+        address = new InetSocketAddress("127.0.0.1", ((InetSocketAddress) channel.getLocalAddress()).getPort());
+        sender = DatagramChannel.open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException, InterruptedException {
+        sender.close();
+        receiver.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void receivedHitsAreSavedInBatches() throws IOException {
+        send("ewm-main-service|/events/1|192.168.0.1|1718000000\n" +
+                "ewm-main-service|/events/2|192.168.0.2|1718000001\r\n");
+        send("ewm-main-service|/events|10.0.0.1|1718000002");
+
+        ArgumentCaptor<List<EndpointHitDto>> captor = ArgumentCaptor.forClass(List.class);
+        verify(service, timeout(5000)).saveEvents(captor.capture());
+
+        assertEquals(List.of(hit("/events/1", "192.168.0.1", 1718000000),
+                hit("/events/2", "192.168.0.2", 1718000001),
+                hit("/events", "10.0.0.1", 1718000002)), captor.getValue());
+        assertEquals(3, meterRegistry.counter("stats.udp.received").count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void partialBatchIsFlushedAfterIntervalAndMalformedLinesAreCounted() throws IOException {
+        send("broken line\newm-main-service|/events/7|10.1.1.1|1718000000\newm-main-service|/events|1.1.1.1|x");
+
+        ArgumentCaptor<List<EndpointHitDto>> captor = ArgumentCaptor.forClass(List.class);
+        verify(service, timeout(5000)).saveEvents(captor.capture());
+
+        assertEquals(List.of(hit("/events/7", "10.1.1.1", 1718000000)), captor.getValue());
+        assertEquals(1, meterRegistry.counter("stats.udp.received").count());
+        assertEquals(2, meterRegistry.counter("stats.udp.malformed").count());
+    }
+
+    private void send(String datagram) throws IOException {
+        sender.send(ByteBuffer.wrap(datagram.getBytes(StandardCharsets.UTF_8)), address);
+    }
+
+    private static EndpointHitDto hit(String uri, String ip, long seconds) {
+        return new EndpointHitDto(null, "ewm-main-service", uri, ip,
+                LocalDateTime.ofInstant(Instant.ofEpochSecond(seconds), ZoneId.systemDefault()));
+    }
+}
@@ -0,0 +1,36 @@
+package ru.practicum.column;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import ru.practicum.segment.HitAggregator;
+
+/**
+ * Проверка времени событий сегмента векторными инструкциями через инкубаторный модуль jdk.incubator.vector.
+ * За один шаг сравнивается столько секунд, сколько помещается в вектор процессора, а подсчёту передаются только
+ * события из маски совпадений. Класс компилируется только с профилем Maven vector, чтобы обычная сборка
+ * и запуск не выводили предупреждений об инкубаторном модуле, и загружается ColumnScan.loadVectorScan, только
+ * если свойство stats.columnar.vector.enabled включено и JVM запущена с параметром
+ * --add-modules jdk.incubator.vector.
+ */
+final class VectorScan implements RangeScan {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public void scan(ColumnSegment segment, int total, long from, long to, HitAggregator aggregator) {
+        long[] seconds = segment.seconds();
+        int bound = SPECIES.loopBound(total);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            LongVector vector = LongVector.fromArray(SPECIES, seconds, i);
+            long matches = vector.compare(VectorOperators.GE, from)
+                    .and(vector.compare(VectorOperators.LT, to))
+                    .toLong();
+            while (matches != 0) {
+                segment.visit(i + Long.numberOfTrailingZeros(matches), aggregator);
+                matches &= matches - 1;
+            }
+        }
+        segment.scan(i, total, from, to, aggregator);
+    }
+}